@@ -0,0 +1,68 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per event of counting events in the aggregation stage, for a few devices and
+ * for as many devices as the table holds. The allocation rate from the gc profiler shows whether
+ * counting allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int EVENT_COUNT = 1 << 18;
+    private static final int MAX_KEYS = 100000;
+
+    @Param({"100", "100000"})
+    public int devices;
+
+    private BusinessEvent[] events;
+    private AggregatingEventHandler aggregator;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        JsonObject template = BusinessEvent.parse(SampleEvents.HARDWARE_EVENT_JSON).getPayload();
+        events = new BusinessEvent[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            int device = i % devices;
+            JsonObject payload = template.deepCopy();
+            payload.add(BusinessEvent.PANEL_ID, new JsonPrimitive(device / 64));
+            payload.add(BusinessEvent.DEVICE_ID, new JsonPrimitive(device % 64));
+            payload.add(BusinessEvent.SERIAL_NUMBER, new JsonPrimitive(i));
+            events[i] = new BusinessEvent(payload);
+        }
+
+        // Long intervals, so no summaries are passed on while measuring
+        aggregator = new AggregatingEventHandler(new EventDispatchBenchmark.CountingEventHandler(), TimeUnit.HOURS.toMillis(1),
+            5, MAX_KEYS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        aggregator.close();
+    }
+
+    @Benchmark
+    public void countEvent() {
+        aggregator.onBusinessEvent(events[next]);
+        next = (next + 1) & (EVENT_COUNT - 1);
+    }
+}
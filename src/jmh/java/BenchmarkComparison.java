@@ -0,0 +1,80 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, typically from two commits, and reports benchmarks whose
+ * score got worse by more than a threshold. Exits with status 1 if any regression was found.
+ */
+public class BenchmarkComparison {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkComparison <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+
+        Map<String, JsonObject> baseline = readResults(Paths.get(args[0]));
+        Map<String, JsonObject> current = readResults(Paths.get(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonObject> result : current.entrySet()) {
+            JsonObject baselineResult = baseline.get(result.getKey());
+            if (baselineResult == null) {
+                System.out.format("%-80s new%n", result.getKey());
+                continue;
+            }
+
+            double before = score(baselineResult);
+            double after = score(result.getValue());
+            double change = (after - before) / before * 100.0;
+            boolean higherIsBetter = "thrpt".equals(result.getValue().get("mode").getAsString());
+            boolean regressed = higherIsBetter ? change < -threshold : change > threshold;
+            if (regressed)
+                regressions++;
+
+            System.out.format("%-80s %14.3f -> %14.3f %s (%+.1f%%)%s%n", result.getKey(), before, after,
+                unit(result.getValue()), change, regressed ? "  REGRESSION" : "");
+        }
+
+        System.out.format("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        if (regressions > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Reads a JMH JSON result file, keyed by benchmark name and parameters.
+     */
+    private static Map<String, JsonObject> readResults(Path path) throws IOException {
+        Map<String, JsonObject> results = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonArray array = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : array) {
+                JsonObject result = element.getAsJsonObject();
+                String key = result.get("benchmark").getAsString();
+                if (result.has("params"))
+                    key += " " + result.get("params");
+                results.put(key, result);
+            }
+        }
+        return results;
+    }
+
+    private static double score(JsonObject result) {
+        return result.getAsJsonObject("primaryMetric").get("score").getAsDouble();
+    }
+
+    private static String unit(JsonObject result) {
+        return result.getAsJsonObject("primaryMetric").get("scoreUnit").getAsString();
+    }
+}
@@ -0,0 +1,72 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per event of the deduplication stage, for a stream of new events that keeps
+ * the table full and evicting, and for a stream of replayed events that are all dropped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeduplicationBenchmark {
+    private static final int EVENT_COUNT = 1 << 18;
+
+    @Param({"1000", "100000"})
+    public int maxEntries;
+
+    private BusinessEvent[] events;
+    private DeduplicatingEventHandler deduplicator;
+    private EventDispatchBenchmark.CountingEventHandler handler;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        JsonObject template = BusinessEvent.parse(SampleEvents.HARDWARE_EVENT_JSON).getPayload();
+        events = new BusinessEvent[EVENT_COUNT];
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            JsonObject payload = template.deepCopy();
+            payload.add(BusinessEvent.PANEL_ID, new JsonPrimitive(i % 64));
+            payload.add(BusinessEvent.SERIAL_NUMBER, new JsonPrimitive(i));
+            events[i] = new BusinessEvent(payload);
+        }
+
+        handler = new EventDispatchBenchmark.CountingEventHandler();
+        deduplicator = new DeduplicatingEventHandler(handler, TimeUnit.HOURS.toMillis(1), maxEntries);
+    }
+
+    /**
+     * Passes events that were not seen within the last <code>maxEntries</code> events, so every
+     * event is inserted and, once the table is full, evicts the oldest entry.
+     */
+    @Benchmark
+    public long newEvents() {
+        deduplicator.onBusinessEvent(events[next]);
+        next = (next + 1) & (EVENT_COUNT - 1);
+        return handler.count;
+    }
+
+    /**
+     * Replays the most recently seen event, which is dropped.
+     */
+    @Benchmark
+    public long replayedEvents() {
+        deduplicator.onBusinessEvent(events[0]);
+        return handler.count;
+    }
+}
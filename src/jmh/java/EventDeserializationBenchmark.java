@@ -0,0 +1,79 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import microsoft.aspnet.signalr.client.hubs.HubInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steps the SignalR client takes to turn a received hub message into the
+ * <code>Map</code> passed to <code>IEventHandler.onBusinessEvent</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDeserializationBenchmark {
+    private static final Type EVENT_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    private final Gson gson = new Gson();
+    private String messageText;
+    private JsonElement message;
+    private JsonElement eventElement;
+
+    @Setup
+    public void setUp() {
+        message = InProcessHubConnection.businessEventMessage(SampleEvents.HARDWARE_EVENT_JSON);
+        messageText = message.toString();
+        eventElement = JsonParser.parseString(SampleEvents.HARDWARE_EVENT_JSON);
+    }
+
+    /**
+     * Parses the message text received by the transport into a JSON tree.
+     */
+    @Benchmark
+    public JsonElement parseMessage() {
+        return JsonParser.parseString(messageText);
+    }
+
+    /**
+     * Converts the JSON tree into a hub invocation, as <code>HubConnection.onReceived</code> does.
+     */
+    @Benchmark
+    public HubInvocation readInvocation() {
+        return gson.fromJson(message, HubInvocation.class);
+    }
+
+    /**
+     * Converts the event argument into the property map, as <code>HubProxy</code> does for the
+     * subscribed callback.
+     */
+    @Benchmark
+    public Map<String, Object> convertToMap() {
+        return gson.fromJson(eventElement, EVENT_TYPE);
+    }
+
+    /**
+     * All of the steps above, from message text to property map.
+     */
+    @Benchmark
+    public Map<String, Object> textToMap() {
+        HubInvocation invocation = gson.fromJson(JsonParser.parseString(messageText), HubInvocation.class);
+        return gson.fromJson(invocation.getArgs()[0], EVENT_TYPE);
+    }
+}
@@ -0,0 +1,122 @@
+import com.google.gson.JsonElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end delivery of a hub message through <code>WebEventSubscriber</code> to an
+ * event handler, using an in-process hub connection instead of a live bridge.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDispatchBenchmark {
+    /**
+     * A handler that only counts events, so the benchmark measures the pipeline itself.
+     */
+    static class CountingEventHandler implements IEventHandler {
+        long count;
+
+        @Override
+        public void onBusinessEvent(Map<String, Object> businessEvent) { count++; }
+
+        @Override
+        public void onExceptionRaised(String serviceException) {}
+
+        @Override
+        public void onManagementEvent(String message) {}
+
+        @Override
+        public void onConnectionToMessageBusEstablished() {}
+
+        @Override
+        public void onConnectionToMessageBusLost() {}
+    }
+
+    /**
+     * A handler that reads the event class from the typed view, without building the map.
+     */
+    static class TypedEventHandler extends CountingEventHandler {
+        @Override
+        public void onBusinessEvent(BusinessEvent businessEvent) {
+            if (businessEvent.getBusinessEventClass() != null)
+                count++;
+        }
+    }
+
+    /**
+     * The handler chain behind the subscriber: <code>direct</code> counts events on the receive
+     * thread from the property map, <code>typed</code> reads the typed view instead,
+     * <code>dispatched</code> hands them to a worker through a blocking queue, and
+     * <code>buffered-output</code> formats them with <code>BufferedOutputEventHandler</code>.
+     */
+    @Param({"direct", "typed", "dispatched", "buffered-output"})
+    public String pipeline;
+
+    private InProcessHubConnection connection;
+    private JsonElement message;
+    private DispatchingEventHandler dispatcher;
+    private BufferedOutputEventHandler output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        IEventHandler handler;
+        switch (pipeline) {
+            case "typed":
+                handler = new TypedEventHandler();
+                break;
+            case "dispatched":
+                dispatcher = new DispatchingEventHandler(new CountingEventHandler(), 1024, 1, BackpressurePolicy.BLOCK);
+                handler = dispatcher;
+                break;
+            case "buffered-output":
+                output = new BufferedOutputEventHandler(OutputStream.nullOutputStream(), 64 * 1024, 0);
+                handler = output;
+                break;
+            default:
+                handler = new CountingEventHandler();
+                break;
+        }
+
+        EventSubscription subscription = new EventSubscription();
+        subscription.filter = "business_event_class eq 'hardware_event'";
+        WebEventSubscriber subscriber = new WebEventSubscriber(
+            "http://localhost/eventbridge/", "session-token", "application-id", subscription, handler);
+
+        connection = new InProcessHubConnection();
+        subscriber.attach(connection);
+        connection.markConnected();
+        message = InProcessHubConnection.businessEventMessage(SampleEvents.HARDWARE_EVENT_JSON);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (dispatcher != null)
+            dispatcher.close();
+        if (output != null)
+            output.close();
+    }
+
+    @Benchmark
+    public void receive() {
+        connection.deliver(message);
+    }
+}
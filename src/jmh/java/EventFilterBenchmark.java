@@ -0,0 +1,73 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per event of evaluating compiled filters, and of routing an event through an
+ * <code>EventRouter</code> with a dozen routes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventFilterBenchmark {
+    @Param({
+        "business_event_class eq 'hardware_event'",
+        "business_event_class eq 'hardware_event' and panel_id eq 12 and device_id ge 3",
+        "(panel_id eq 12 or panel_id eq 13) and not startswith(source, 'Lobby') and temperature lt 30.0"
+    })
+    public String filter;
+
+    private BusinessEvent businessEvent;
+    private EventFilter compiledFilter;
+    private EventRouter router;
+    private EventDispatchBenchmark.CountingEventHandler handler;
+
+    @Setup
+    public void setUp() {
+        businessEvent = BusinessEvent.parse(SampleEvents.HARDWARE_EVENT_JSON);
+        compiledFilter = EventFilter.compile(filter);
+
+        // Eleven routes for other classes and devices, and the measured filter
+        handler = new EventDispatchBenchmark.CountingEventHandler();
+        router = new EventRouter();
+        String[] otherClasses = {"access_event", "alarm_event", "fire_event", "intercom_event", "video_event"};
+        for (String otherClass : otherClasses)
+            router.addRoute("business_event_class eq '" + otherClass + "'", handler);
+        for (int panel = 1; panel <= 6; panel++)
+            router.addRoute("business_event_class eq 'hardware_event' and panel_id eq " + panel, handler);
+        router.addRoute(filter, handler);
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return compiledFilter.matches(businessEvent);
+    }
+
+    /**
+     * Evaluates the filter on a fresh view of the event, as happens for each received event,
+     * including reading the properties from the JSON payload for the first time.
+     */
+    @Benchmark
+    public boolean evaluateFreshEvent() {
+        return compiledFilter.matches(new BusinessEvent(businessEvent.getPayload()));
+    }
+
+    @Benchmark
+    public long route() {
+        router.onBusinessEvent(businessEvent);
+        return handler.count;
+    }
+}
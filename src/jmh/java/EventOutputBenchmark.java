@@ -0,0 +1,55 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares formatting and writing a business event with <code>StreamOutputEventHandler</code> and
+ * <code>BufferedOutputEventHandler</code>. Run with the gc profiler to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventOutputBenchmark {
+    private Map<String, Object> businessEvent;
+    private StreamOutputEventHandler streamHandler;
+    private BufferedOutputEventHandler bufferedHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        businessEvent = SampleEvents.hardwareEvent();
+        streamHandler = new StreamOutputEventHandler(OutputStream.nullOutputStream());
+        bufferedHandler = new BufferedOutputEventHandler(OutputStream.nullOutputStream(), 64 * 1024, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bufferedHandler.close();
+    }
+
+    @Benchmark
+    public void streamOutput() {
+        streamHandler.onBusinessEvent(businessEvent);
+    }
+
+    @Benchmark
+    public void bufferedOutput() {
+        bufferedHandler.onBusinessEvent(businessEvent);
+    }
+}
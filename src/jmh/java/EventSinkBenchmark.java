@@ -0,0 +1,97 @@
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the events per second and bytes per event of the output formats, with and without
+ * compression, writing to a channel that discards and counts the bytes. The bytes per event are
+ * printed at the end of each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventSinkBenchmark {
+    private static final int EVENT_COUNT = 1024;
+
+    @Param({"TEXT", "NDJSON", "BINARY"})
+    public OutputFormat format;
+
+    @Param({"NONE", "GZIP"})
+    public OutputCompression compression;
+
+    private final BusinessEvent[] events = new BusinessEvent[EVENT_COUNT];
+    private CountingChannel sink;
+    private ChannelOutputEventHandler handler;
+    private long written;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Vary the fields that differ between real events, so compression is not flattered
+        JsonObject template = BusinessEvent.parse(SampleEvents.HARDWARE_EVENT_JSON).getPayload();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            JsonObject payload = template.deepCopy();
+            payload.addProperty(BusinessEvent.SERIAL_NUMBER, 1048576 + i);
+            payload.addProperty(BusinessEvent.PANEL_ID, 1 + i % 16);
+            payload.addProperty(BusinessEvent.DEVICE_ID, 1 + i % 8);
+            payload.addProperty("timestamp", String.format("2023-06-01T12:%02d:%02d.%03d-07:00", i / 600 % 60, i / 10 % 60, i % 10 * 100));
+            events[i] = new BusinessEvent(payload);
+        }
+
+        sink = new CountingChannel();
+        handler = format.createHandler(compression.wrap(sink), 64 * 1024, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        handler.close();
+        System.out.format("%n%s %s: %.1f bytes/event%n", format, compression, (double)sink.count / written);
+    }
+
+    @Benchmark
+    public void writeEvent() {
+        handler.onBusinessEvent(events[(int)(written++ % EVENT_COUNT)]);
+    }
+
+    /**
+     * A channel that discards the bytes written to it, counting them.
+     */
+    private static final class CountingChannel implements WritableByteChannel {
+        long count;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            count += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
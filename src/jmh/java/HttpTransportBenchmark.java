@@ -0,0 +1,69 @@
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures OpenAccess requests per second through each HTTP transport, against a local stub of
+ * the authentication resource. The stub speaks HTTP/1.1 only, so this compares connection reuse
+ * and per-request overhead rather than HTTP/2 multiplexing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Dsun.net.httpserver.nodelay=true")
+public class HttpTransportBenchmark {
+    private static final byte[] LOGIN_RESPONSE = ("{\"session_token\":\"0123456789abcdef\","
+        + "\"token_expiration_time\":\"2030-01-01T00:00:00Z\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"NET_HTTP", "POOLED"})
+    public HttpTransportMode transportMode;
+
+    private HttpServer server;
+    private OpenAccessService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/authentication", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, LOGIN_RESPONSE.length);
+            exchange.getResponseBody().write(LOGIN_RESPONSE);
+            exchange.close();
+        });
+        server.start();
+
+        String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+        service = new OpenAccessService(url, "benchmark", transportMode.createTransport());
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String login() throws Exception {
+        return service.login("benchmark", "password");
+    }
+}
@@ -0,0 +1,45 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import microsoft.aspnet.signalr.client.ConnectionState;
+import microsoft.aspnet.signalr.client.hubs.HubConnection;
+
+/**
+ * An in-process stand-in for the event bridge hub. Hub messages are handed straight to the
+ * connection as if a transport had received them, so benchmarks measure only client-side work.
+ */
+class InProcessHubConnection extends HubConnection {
+    /**
+     * Creates a new <code>InProcessHubConnection</code> instance.
+     */
+    InProcessHubConnection() {
+        super("http://localhost/eventbridge/", false);
+    }
+
+    /**
+     * Marks the connection as connected without starting a transport. Hub proxies must be created
+     * before this is called.
+     */
+    void markConnected() {
+        mState = ConnectionState.Connected;
+    }
+
+    /**
+     * Delivers a hub message to the connection.
+     *
+     * @param message the hub message
+     */
+    void deliver(JsonElement message) {
+        onReceived(message);
+    }
+
+    /**
+     * Creates the hub message the bridge sends for a business event.
+     *
+     * @param businessEventJson the event properties as JSON
+     * @return the hub message
+     */
+    static JsonElement businessEventMessage(String businessEventJson) {
+        return JsonParser.parseString(
+            "{\"H\":\"Outbound\",\"M\":\"OnBusinessEventReceived\",\"A\":[" + businessEventJson + "]}");
+    }
+}
@@ -0,0 +1,66 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per event of latency tracing, through the receiving and handling stages of a
+ * <code>LatencyTracer</code> with no stage between them, against the handler alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LatencyTracerBenchmark {
+    @Param({"1", "100", "10000"})
+    public int sampleEvery;
+
+    private BusinessEvent event;
+    private EventDispatchBenchmark.CountingEventHandler handler;
+    private LatencyTracer tracer;
+    private IEventHandler traced;
+
+    @Setup
+    public void setUp() {
+        event = BusinessEvent.parse(SampleEvents.HARDWARE_EVENT_JSON);
+        handler = new EventDispatchBenchmark.CountingEventHandler();
+        tracer = new LatencyTracer(sampleEvery, 20);
+        traced = tracer.receiving(tracer.handling(handler));
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracer.close();
+    }
+
+    /**
+     * Passes an event to the handler directly, as the baseline.
+     */
+    @Benchmark
+    public long untraced() {
+        handler.onBusinessEvent(event);
+        return handler.count;
+    }
+
+    /**
+     * Passes an event through the tracing stages, which trace one event in
+     * <code>sampleEvery</code>.
+     */
+    @Benchmark
+    public long traced() {
+        traced.onBusinessEvent(event);
+        return handler.count;
+    }
+}
@@ -0,0 +1,42 @@
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Sample business events for the benchmarks, shaped like the hardware events sent by the bridge.
+ */
+final class SampleEvents {
+    static final String HARDWARE_EVENT_JSON = "{"
+        + "\"business_event_class\":\"hardware_event\","
+        + "\"version\":\"1.0\","
+        + "\"description\":\"Access Granted\","
+        + "\"timestamp\":\"2023-06-01T12:34:56.789-07:00\","
+        + "\"panel_id\":12,"
+        + "\"device_id\":3,"
+        + "\"secondary_device_id\":0,"
+        + "\"serial_number\":1048576,"
+        + "\"event_type\":0,"
+        + "\"event_subtype\":20,"
+        + "\"source\":\"Main Entrance Reader\","
+        + "\"access_result\":1,"
+        + "\"cardholder_key\":4711,"
+        + "\"badge_id\":123456789,"
+        + "\"is_readable_card\":true,"
+        + "\"temperature\":21.5"
+        + "}";
+
+    private static final Type EVENT_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    private SampleEvents() {}
+
+    /**
+     * Creates a sample hardware event the same way the SignalR client does, through Gson.
+     *
+     * @return the event properties
+     */
+    static Map<String, Object> hardwareEvent() {
+        return new Gson().fromJson(HARDWARE_EVENT_JSON, EVENT_TYPE);
+    }
+}
@@ -0,0 +1,97 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures event delivery through each event bridge transport, from publishing on a local
+ * <code>StandInEventBridge</code> to the event handler: events per second with a batch in flight,
+ * and the latency of single events, whose p99 JMH reports as a percentile. The stand-in cannot
+ * offer WebSockets, so those are not measured.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Dsun.net.httpserver.nodelay=true")
+public class TransportBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"LONG_POLLING", "SERVER_SENT_EVENTS"})
+    public TransportMode transportMode;
+
+    private final Semaphore received = new Semaphore(0);
+    private StandInEventBridge bridge;
+    private WebEventSubscriber subscriber;
+    private String eventJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        bridge = new StandInEventBridge(0);
+        eventJson = LoadGenerator.createHardwareEvent(12, 3, 1048576, 0);
+
+        EventSubscription subscription = new EventSubscription();
+        subscription.description = "Transport benchmark";
+        subscriber = new WebEventSubscriber(bridge.getBridgeUrl(), bridge.createSessionToken(), "benchmark",
+            subscription, new IEventHandler() {
+                @Override
+                public void onBusinessEvent(Map<String, Object> businessEvent) {
+                    received.release();
+                }
+
+                @Override
+                public void onBusinessEvent(BusinessEvent businessEvent) {
+                    received.release();
+                }
+
+                @Override
+                public void onExceptionRaised(String serviceException) {}
+
+                @Override
+                public void onManagementEvent(String message) {}
+
+                @Override
+                public void onConnectionToMessageBusEstablished() {}
+
+                @Override
+                public void onConnectionToMessageBusLost() {}
+            }, transportMode);
+        subscriber.startReceiving();
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriber.close();
+        bridge.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void deliverBatch() throws InterruptedException {
+        for (int i = 0; i < BATCH_SIZE; i++)
+            bridge.publish(eventJson);
+        received.acquire(BATCH_SIZE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void deliverOne() throws InterruptedException {
+        bridge.publish(eventJson);
+        received.acquire();
+    }
+}
@@ -0,0 +1,377 @@
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An <code>IEventHandler</code> decorator that counts business events per event class, panel and
+ * device, and passes on periodic summaries instead of the events.
+ *
+ * Time is divided into intervals aligned to the clock. At the end of each interval, every key that
+ * had events within the window of the last intervals is passed on as one
+ * <code>event_summary</code> event holding its count for the interval (a tumbling window), its
+ * count and rate for the window (a sliding window), and the interval start and end. Events are
+ * counted by arrival time.
+ *
+ * The keys are packed into primitive longs in an open-addressing table, each with a ring of
+ * per-interval counts in one pre-allocated array, so memory use is fixed by the maximum number of
+ * keys. Keys without events in the window are removed when an interval ends. Events of new keys
+ * once the table is full, and of event classes beyond the first few thousand, are counted under
+ * the event class <code>other</code>, as are events without a class. Panel and device ids that
+ * are missing or out of range are left out of the key. All other callbacks are forwarded
+ * directly.
+ */
+public class AggregatingEventHandler implements IEventHandler, Closeable {
+    public static final String SUMMARY_EVENT_CLASS = "event_summary";
+    public static final String EVENT_CLASS = "event_class";
+    public static final String INTERVAL_START = "interval_start";
+    public static final String INTERVAL_END = "interval_end";
+    public static final String COUNT = "count";
+    public static final String WINDOW_COUNT = "window_count";
+    public static final String WINDOW_SECONDS = "window_seconds";
+    public static final String RATE = "rate";
+    public static final String OTHER_EVENT_CLASS = "other";
+
+    private static final long EMPTY = 0;
+    private static final int MAX_EVENT_CLASSES = 4095;
+    private static final int OTHER_CLASS_ID = MAX_EVENT_CLASSES;
+    private static final long NO_ID = 0xFFFFFF;
+    private static final long OTHER_KEY = pack(OTHER_CLASS_ID, NO_ID, NO_ID);
+
+    private final IEventHandler handler;
+    private final long intervalMillis;
+    private final int windowIntervals;
+    private final int maxKeys;
+
+    // Hash table of keys; a slot holds EMPTY when free. The counts of the key in slot s are
+    // counts[s * windowIntervals + i], one per interval in a ring.
+    private final long[] keys;
+    private final int mask;
+    private final int[] counts;
+    private int size;
+
+    // The ring position and start time of the current interval, and the start time of each interval
+    private int current;
+    private final long[] intervalStartMillis;
+
+    // Event class ids are their position in the list plus one, so that no key is EMPTY
+    private final Map<String, Integer> eventClassIds = new HashMap<>();
+    private final List<String> eventClasses = new ArrayList<>();
+
+    // Summaries are copied here under the lock and passed on after it is released
+    private final Object summaryLock = new Object();
+    private final long[] summaryKeys;
+    private final int[] summaryCounts;
+    private final long[] summaryWindowCounts;
+    private final ScheduledExecutorService summaryTimer;
+    private boolean closed;
+
+    private long eventCount;
+    private long summaryCount;
+
+    /**
+     * Creates a new <code>AggregatingEventHandler</code> instance and starts passing on summaries
+     * at the end of each interval.
+     *
+     * @param handler the event handler that will process the summaries
+     * @param intervalMillis the length of an interval
+     * @param windowIntervals the number of intervals in the sliding window, including the one
+     *     that just ended
+     * @param maxKeys the maximum number of keys counted separately
+     */
+    public AggregatingEventHandler(IEventHandler handler, long intervalMillis, int windowIntervals, int maxKeys) {
+        if (intervalMillis < 1 || windowIntervals < 1 || maxKeys < 1)
+            throw new IllegalArgumentException("The interval, window and number of keys must be positive");
+
+        this.handler = handler;
+        this.intervalMillis = intervalMillis;
+        this.windowIntervals = windowIntervals;
+        this.maxKeys = maxKeys;
+
+        // Keep the table at most half full so probe sequences stay short, with room for the overflow key
+        int capacity = Integer.highestOneBit(Math.max(maxKeys + 1, 2) * 2 - 1) << 1;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        counts = new int[capacity * windowIntervals];
+        summaryKeys = new long[maxKeys + 1];
+        summaryCounts = new int[maxKeys + 1];
+        summaryWindowCounts = new long[maxKeys + 1];
+
+        long nowMillis = System.currentTimeMillis();
+        intervalStartMillis = new long[windowIntervals];
+        Arrays.fill(intervalStartMillis, nowMillis);
+
+        summaryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-aggregation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // End the intervals on the clock boundaries the timer fires closest to
+        long firstEndMillis = (nowMillis / intervalMillis + 1) * intervalMillis;
+        summaryTimer.scheduleAtFixedRate(
+            () -> passOnSummaries(Math.round((double)System.currentTimeMillis() / intervalMillis) * intervalMillis),
+            firstEndMillis - nowMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        long panelId = businessEvent.getLong(BusinessEvent.PANEL_ID, NO_ID);
+        long deviceId = businessEvent.getLong(BusinessEvent.DEVICE_ID, NO_ID);
+        count(businessEvent.getBusinessEventClass(), panelId < 0 || panelId > NO_ID ? NO_ID : panelId,
+            deviceId < 0 || deviceId > NO_ID ? NO_ID : deviceId);
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the number of events counted.
+     *
+     * @return the event count
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Gets the number of summaries passed on.
+     *
+     * @return the summary count
+     */
+    public long getSummaryCount() {
+        synchronized (summaryLock) {
+            return summaryCount;
+        }
+    }
+
+    /**
+     * Gets the number of keys with events in the current window.
+     *
+     * @return the key count
+     */
+    public synchronized int getKeyCount() {
+        return size;
+    }
+
+    /**
+     * Stops the summary schedule and passes on the summaries of the interval so far. Events
+     * received afterwards are counted but never passed on.
+     */
+    @Override
+    public void close() {
+        summaryTimer.shutdownNow();
+        passOnSummaries(System.currentTimeMillis());
+        synchronized (summaryLock) {
+            closed = true;
+        }
+    }
+
+    private synchronized void count(String eventClass, long panelId, long deviceId) {
+        eventCount++;
+        long key = pack(eventClassId(eventClass), panelId, deviceId);
+
+        int slot = (int)mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                if (size >= maxKeys && key != OTHER_KEY) {
+                    // The table is full; count the event under the overflow key instead
+                    key = OTHER_KEY;
+                    slot = (int)mix(key) & mask;
+                    continue;
+                }
+                keys[slot] = key;
+                size++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        counts[slot * windowIntervals + current]++;
+    }
+
+    private int eventClassId(String eventClass) {
+        if (eventClass == null)
+            return OTHER_CLASS_ID;
+
+        Integer id = eventClassIds.get(eventClass);
+        if (id == null) {
+            if (eventClasses.size() >= MAX_EVENT_CLASSES - 1)
+                return OTHER_CLASS_ID;
+            eventClasses.add(eventClass);
+            id = eventClasses.size();
+            eventClassIds.put(eventClass, id);
+        }
+        return id;
+    }
+
+    /**
+     * Ends the current interval and passes on a summary for every key with events in the window.
+     *
+     * @param endMillis the end of the interval
+     */
+    private void passOnSummaries(long endMillis) {
+        synchronized (summaryLock) {
+            if (closed)
+                return;
+
+            int summaries = 0;
+            long startMillis;
+            long windowStartMillis;
+            synchronized (this) {
+                startMillis = intervalStartMillis[current];
+                windowStartMillis = intervalStartMillis[(current + 1) % windowIntervals];
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (keys[slot] == EMPTY)
+                        continue;
+
+                    int row = slot * windowIntervals;
+                    long windowCount = 0;
+                    for (int i = 0; i < windowIntervals; i++)
+                        windowCount += counts[row + i];
+                    summaryKeys[summaries] = keys[slot];
+                    summaryCounts[summaries] = counts[row + current];
+                    summaryWindowCounts[summaries] = windowCount;
+                    summaries++;
+                }
+
+                // Start the next interval in the oldest position of the ring, dropping keys left without events
+                current = (current + 1) % windowIntervals;
+                intervalStartMillis[current] = endMillis;
+                for (int i = 0; i < summaries; i++) {
+                    int slot = find(summaryKeys[i]);
+                    int row = slot * windowIntervals;
+                    counts[row + current] = 0;
+
+                    long remaining = 0;
+                    for (int j = 0; j < windowIntervals; j++)
+                        remaining += counts[row + j];
+                    if (remaining == 0)
+                        remove(slot);
+                }
+            }
+
+            double windowSeconds = Math.max(endMillis - windowStartMillis, 1) / 1000.0;
+            String start = Instant.ofEpochMilli(startMillis).toString();
+            String end = Instant.ofEpochMilli(endMillis).toString();
+            for (int i = 0; i < summaries; i++) {
+                try {
+                    handler.onBusinessEvent(createSummary(summaryKeys[i], summaryCounts[i], summaryWindowCounts[i], start, end,
+                        windowSeconds));
+                    summaryCount++;
+                }
+                catch (RuntimeException e) {
+                    System.err.format("Error: could not pass on an event summary: %s%n", e);
+                }
+            }
+        }
+    }
+
+    private BusinessEvent createSummary(long key, int count, long windowCount, String start, String end, double windowSeconds) {
+        int classId = (int)(key >>> 48);
+        long panelId = (key >>> 24) & NO_ID;
+        long deviceId = key & NO_ID;
+
+        JsonObject summary = new JsonObject();
+        summary.addProperty(BusinessEvent.BUSINESS_EVENT_CLASS, SUMMARY_EVENT_CLASS);
+        summary.addProperty(BusinessEvent.TIMESTAMP, end);
+        String eventClass;
+        synchronized (this) {
+            eventClass = classId == OTHER_CLASS_ID ? OTHER_EVENT_CLASS : eventClasses.get(classId - 1);
+        }
+        summary.addProperty(EVENT_CLASS, eventClass);
+        if (panelId != NO_ID)
+            summary.addProperty(BusinessEvent.PANEL_ID, panelId);
+        if (deviceId != NO_ID)
+            summary.addProperty(BusinessEvent.DEVICE_ID, deviceId);
+        summary.addProperty(INTERVAL_START, start);
+        summary.addProperty(INTERVAL_END, end);
+        summary.addProperty(COUNT, count);
+        summary.addProperty(WINDOW_COUNT, windowCount);
+        summary.addProperty(WINDOW_SECONDS, windowSeconds);
+        summary.addProperty(RATE, Math.round(windowCount / windowSeconds * 1000) / 1000.0);
+        return new BusinessEvent(summary);
+    }
+
+    private int find(long key) {
+        int slot = (int)mix(key) & mask;
+        while (keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Removes the key in a slot, shifting back later keys of the same probe sequence, with their
+     * counts, so that no tombstones are needed.
+     */
+    private void remove(int slot) {
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = (int)mix(keys[next]) & mask;
+            // Move the key back if its home slot is not between the free slot and where it is
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                System.arraycopy(counts, next * windowIntervals, counts, free * windowIntervals, windowIntervals);
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = EMPTY;
+        Arrays.fill(counts, free * windowIntervals, (free + 1) * windowIntervals, 0);
+        size--;
+    }
+
+    /**
+     * Packs an event class id into the top 16 bits of a key, the panel id into the next 24 and the
+     * device id into the lowest 24.
+     */
+    private static long pack(int eventClassId, long panelId, long deviceId) {
+        return (long)eventClassId << 48 | panelId << 24 | deviceId;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * What a <code>DispatchingEventHandler</code> does with a new event when its queue is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Block the receiving thread until a worker frees a slot. No events are lost, but a slow
+     * handler eventually slows down the transport.
+     */
+    BLOCK,
+
+    /**
+     * Discard the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Write the event to a spill file on disk, and feed it back to the workers once the queue has
+     * room again.
+     */
+    SPILL
+}
@@ -0,0 +1,176 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An <code>IEventHandler</code> that collects business events into batches for an
+ * <code>IBatchEventHandler</code>. A batch is delivered when it reaches the maximum size, or when
+ * its first event has waited for the maximum linger time, whichever comes first.
+ *
+ * Batches are delivered in order, either on the thread that filled the batch or on the linger
+ * timer thread. Events received after <code>close</code> are dropped and counted. All other
+ * callbacks are forwarded directly on the calling thread.
+ */
+public class BatchingEventHandler implements IEventHandler, Closeable {
+    private final IBatchEventHandler handler;
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+    private final ScheduledExecutorService lingerTimer;
+
+    private final Object bufferLock = new Object();
+    private final Object deliveryLock = new Object();
+    private List<BusinessEvent> buffer;
+    private long batchNumber;
+    private boolean closed;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Creates a new <code>BatchingEventHandler</code> instance.
+     *
+     * @param handler the batch handler that will process the events
+     * @param maxBatchSize the number of events that triggers a delivery
+     * @param maxLingerMillis the longest time an event waits for its batch to fill
+     */
+    public BatchingEventHandler(IBatchEventHandler handler, int maxBatchSize, long maxLingerMillis) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("The batch size must be at least 1");
+
+        this.handler = handler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMillis = maxLingerMillis;
+        this.buffer = new ArrayList<>(maxBatchSize);
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a new <code>BatchingEventHandler</code> instance for a per-event handler.
+     *
+     * @param handler the per-event handler that will process the events
+     * @param maxBatchSize the number of events that triggers a delivery
+     * @param maxLingerMillis the longest time an event waits for its batch to fill
+     */
+    public BatchingEventHandler(IEventHandler handler, int maxBatchSize, long maxLingerMillis) {
+        this(handler instanceof IBatchEventHandler ? (IBatchEventHandler)handler : new EventHandlerBatchAdapter(handler),
+            maxBatchSize, maxLingerMillis);
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        boolean full;
+        synchronized (bufferLock) {
+            if (closed) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            buffer.add(businessEvent);
+            full = buffer.size() >= maxBatchSize;
+            if (buffer.size() == 1 && !full) {
+                long lingeringBatch = batchNumber;
+                lingerTimer.schedule(() -> flush(lingeringBatch), maxLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full)
+            flush();
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Delivers the events collected so far, if any.
+     */
+    public void flush() {
+        flush(-1);
+    }
+
+    /**
+     * Gets the number of events dropped because they arrived after <code>close</code>.
+     *
+     * @return the dropped event count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Delivers any remaining events and stops the linger timer. Events received afterwards are
+     * dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (bufferLock) {
+            closed = true;
+        }
+        lingerTimer.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Delivers the current batch.
+     *
+     * @param expectedBatchNumber the batch a linger timer was started for, or -1 to deliver
+     *     whatever batch is current
+     */
+    private void flush(long expectedBatchNumber) {
+        synchronized (deliveryLock) {
+            List<BusinessEvent> batch;
+            synchronized (bufferLock) {
+                if (buffer.isEmpty() || (expectedBatchNumber >= 0 && expectedBatchNumber != batchNumber))
+                    return;
+
+                batch = buffer;
+                buffer = new ArrayList<>(maxBatchSize);
+                batchNumber++;
+            }
+
+            try {
+                handler.onBusinessEventBatch(batch);
+            }
+            catch (RuntimeException e) {
+                System.err.format("Error: batch handler failed: %s%n", e);
+            }
+        }
+    }
+}
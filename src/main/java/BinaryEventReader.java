@@ -0,0 +1,162 @@
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads business events written by <code>BinaryOutputEventHandler</code>. Compressed files must
+ * be decompressed first, for example through <code>GZIPInputStream</code>.
+ */
+public class BinaryEventReader implements Closeable {
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private final DataInputStream in;
+    private final List<String> fields = new ArrayList<>();
+    private byte[] bytes = new byte[1024];
+    private boolean headerRead;
+
+    /**
+     * Creates a new <code>BinaryEventReader</code> instance.
+     *
+     * @param in the stream to read from
+     */
+    public BinaryEventReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /**
+     * Reads the next business event.
+     *
+     * @return the event, or <code>null</code> at the end of the stream
+     * @exception IOException if the stream could not be read or is not in the binary format
+     */
+    public BusinessEvent read() throws IOException {
+        while (true) {
+            int first = in.read();
+            if (first < 0)
+                return null;
+
+            int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+            if (length < 1 || length > MAX_RECORD_LENGTH)
+                throw new StreamCorruptedException("Invalid record length " + length);
+            if (length > bytes.length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            in.readFully(bytes, 0, length);
+
+            ByteBuffer body = ByteBuffer.wrap(bytes, 0, length);
+            try {
+                byte type = body.get();
+                if (type == BinaryOutputEventHandler.HEADER_RECORD)
+                    readHeader(body);
+                else if (!headerRead)
+                    throw new StreamCorruptedException("The stream does not start with a header");
+                else if (type == BinaryOutputEventHandler.FIELD_RECORD)
+                    readField(body);
+                else if (type == BinaryOutputEventHandler.EVENT_RECORD)
+                    return readEvent(body);
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new StreamCorruptedException("Truncated record");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readHeader(ByteBuffer body) throws IOException {
+        byte[] magic = new byte[BinaryOutputEventHandler.MAGIC.length];
+        body.get(magic);
+        if (!Arrays.equals(magic, BinaryOutputEventHandler.MAGIC))
+            throw new StreamCorruptedException("Not a binary event stream");
+        int version = body.get();
+        if (version != BinaryOutputEventHandler.VERSION)
+            throw new StreamCorruptedException("Unsupported binary event version " + version);
+
+        fields.clear();
+        headerRead = true;
+    }
+
+    private void readField(ByteBuffer body) throws IOException {
+        int id = (int)readVarLong(body);
+        if (id != fields.size())
+            throw new StreamCorruptedException("Field " + id + " is out of sequence");
+        fields.add(readString(body));
+    }
+
+    private BusinessEvent readEvent(ByteBuffer body) throws IOException {
+        JsonObject payload = new JsonObject();
+        long count = readVarLong(body);
+        for (long i = 0; i < count; i++) {
+            int id = (int)readVarLong(body);
+            if (id < 0 || id >= fields.size())
+                throw new StreamCorruptedException("Undefined field " + id);
+
+            String name = fields.get(id);
+            int tag = body.get();
+            switch (tag) {
+                case BinaryOutputEventHandler.NULL_VALUE:
+                    payload.add(name, JsonNull.INSTANCE);
+                    break;
+                case BinaryOutputEventHandler.FALSE_VALUE:
+                    payload.add(name, new JsonPrimitive(false));
+                    break;
+                case BinaryOutputEventHandler.TRUE_VALUE:
+                    payload.add(name, new JsonPrimitive(true));
+                    break;
+                case BinaryOutputEventHandler.INTEGER_VALUE:
+                    long zigZag = readVarLong(body);
+                    payload.add(name, new JsonPrimitive((zigZag >>> 1) ^ -(zigZag & 1)));
+                    break;
+                case BinaryOutputEventHandler.DOUBLE_VALUE:
+                    payload.add(name, new JsonPrimitive(body.getDouble()));
+                    break;
+                case BinaryOutputEventHandler.STRING_VALUE:
+                    payload.add(name, new JsonPrimitive(readString(body)));
+                    break;
+                case BinaryOutputEventHandler.JSON_VALUE:
+                    payload.add(name, JsonParser.parseString(readString(body)));
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown value tag " + tag);
+            }
+        }
+        return new BusinessEvent(payload);
+    }
+
+    private static String readString(ByteBuffer body) throws IOException {
+        int length = (int)readVarLong(body);
+        if (length < 0 || length > body.remaining())
+            throw new StreamCorruptedException("Invalid string length " + length);
+
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    private static long readVarLong(ByteBuffer body) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = body.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Invalid varint");
+    }
+}
@@ -0,0 +1,284 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An implementation of <code>IEventHandler</code> that writes business events in a compact
+ * binary format, read back by <code>BinaryEventReader</code>.
+ *
+ * The output is a sequence of records, each a 32-bit big-endian length followed by that many
+ * bytes: a type byte and a body. Integers in bodies are unsigned base 128 varints.
+ * <ul>
+ * <li><code>H</code>, header: the bytes <code>OAEV</code> and a version byte. Starts every file
+ * and every session appending to one, and clears the field dictionary.</li>
+ * <li><code>F</code>, field: the field id, the next in sequence from 0, then the name as a
+ * length and UTF-8 bytes.</li>
+ * <li><code>E</code>, event: the property count, then for each property its field id, a value
+ * tag and the value. Tag 0 is null, 1 false, 2 true, 3 an integer as a zigzag varint, 4 a
+ * big-endian double, 5 a string as a length and UTF-8 bytes, and 6 an object or array as a
+ * length and UTF-8 JSON text.</li>
+ * </ul>
+ * A property name is written once per file, in a field record before the first event that has it.
+ * Readers skip records of unknown types. The other callbacks are not written; they flush the
+ * output.
+ */
+public class BinaryOutputEventHandler extends ChannelOutputEventHandler {
+    static final byte HEADER_RECORD = 'H';
+    static final byte FIELD_RECORD = 'F';
+    static final byte EVENT_RECORD = 'E';
+    static final byte[] MAGIC = { 'O', 'A', 'E', 'V' };
+    static final int VERSION = 1;
+
+    static final int NULL_VALUE = 0;
+    static final int FALSE_VALUE = 1;
+    static final int TRUE_VALUE = 2;
+    static final int INTEGER_VALUE = 3;
+    static final int DOUBLE_VALUE = 4;
+    static final int STRING_VALUE = 5;
+    static final int JSON_VALUE = 6;
+
+    /**
+     * Starts a new dictionary when it would grow beyond this, in case property names vary.
+     */
+    private static final int MAX_FIELDS = 4096;
+
+    private final RecordBuffer record = new RecordBuffer(1024);
+    private final RecordBuffer nested = new RecordBuffer(256);
+    private final Map<String, Integer> fields = new HashMap<>();
+    private boolean headerWritten;
+
+    /**
+     * Creates a new <code>BinaryOutputEventHandler</code> instance that writes to a stream. The
+     * stream is flushed, but not closed, by <code>close</code>.
+     *
+     * @param out the output stream
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public BinaryOutputEventHandler(OutputStream out, int bufferSize, long flushIntervalMillis) {
+        super(Channels.newChannel(out), false, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    /**
+     * Creates a new <code>BinaryOutputEventHandler</code> instance that writes to a channel, such
+     * as a <code>RollingFileChannel</code>. The channel is closed by <code>close</code>.
+     *
+     * @param channel the output channel
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public BinaryOutputEventHandler(WritableByteChannel channel, int bufferSize, long flushIntervalMillis) {
+        super(channel, true, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    @Override
+    public OutputFormat getFormat() {
+        return OutputFormat.BINARY;
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        lock.lock();
+        try {
+            rollIfDue();
+            record.reset();
+            defineFields(businessEvent.keySet());
+
+            int start = startRecord(EVENT_RECORD);
+            record.putVarLong(businessEvent.size());
+            for (Map.Entry<String, Object> property : businessEvent.entrySet()) {
+                record.putVarLong(fields.get(property.getKey()));
+                appendValue(property.getValue());
+            }
+            endRecord(start);
+            writeRecord(record);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        JsonObject payload = businessEvent.getPayload();
+        if (payload == null) {
+            onBusinessEvent(businessEvent.toMap());
+            return;
+        }
+
+        lock.lock();
+        try {
+            rollIfDue();
+            record.reset();
+            defineFields(payload.keySet());
+
+            int start = startRecord(EVENT_RECORD);
+            record.putVarLong(payload.size());
+            for (Map.Entry<String, JsonElement> property : payload.entrySet()) {
+                record.putVarLong(fields.get(property.getKey()));
+                appendValue(property.getValue());
+            }
+            endRecord(start);
+            writeRecord(record);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the header again at the start of the next file.
+     */
+    @Override
+    void onFileStarted() {
+        headerWritten = false;
+    }
+
+    /**
+     * Adds field records for the names not yet in the dictionary, after a header record if this
+     * is the first event of the file or the dictionary is full.
+     */
+    private void defineFields(Iterable<String> names) {
+        if (!headerWritten || fields.size() >= MAX_FIELDS) {
+            int start = startRecord(HEADER_RECORD);
+            record.putBytes(MAGIC, 0, MAGIC.length);
+            record.putByte(VERSION);
+            endRecord(start);
+            fields.clear();
+            headerWritten = true;
+        }
+
+        for (String name : names) {
+            if (fields.containsKey(name))
+                continue;
+
+            int id = fields.size();
+            fields.put(name, id);
+            int start = startRecord(FIELD_RECORD);
+            record.putVarLong(id);
+            appendString(record, name);
+            endRecord(start);
+        }
+    }
+
+    private void appendValue(JsonElement value) {
+        if (value.isJsonPrimitive()) {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isString()) {
+                record.putByte(STRING_VALUE);
+                appendString(record, primitive.getAsString());
+            }
+            else if (primitive.isBoolean())
+                record.putByte(primitive.getAsBoolean() ? TRUE_VALUE : FALSE_VALUE);
+            else
+                appendNumber(primitive.getAsString());
+        }
+        else if (value.isJsonNull())
+            record.putByte(NULL_VALUE);
+        else {
+            nested.reset();
+            NdjsonOutputEventHandler.appendJson(nested, value);
+            appendJsonText();
+        }
+    }
+
+    private void appendValue(Object value) {
+        if (value == null)
+            record.putByte(NULL_VALUE);
+        else if (value instanceof String) {
+            record.putByte(STRING_VALUE);
+            appendString(record, (String)value);
+        }
+        else if (value instanceof Boolean)
+            record.putByte((Boolean)value ? TRUE_VALUE : FALSE_VALUE);
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            record.putByte(INTEGER_VALUE);
+            record.putZigZagLong(((Number)value).longValue());
+        }
+        else if (value instanceof Number) {
+            // Gson converts every number to a double; keep whole numbers as integers
+            double doubleValue = ((Number)value).doubleValue();
+            long longValue = (long)doubleValue;
+            if (doubleValue == longValue) {
+                record.putByte(INTEGER_VALUE);
+                record.putZigZagLong(longValue);
+            }
+            else {
+                record.putByte(DOUBLE_VALUE);
+                record.putDouble(doubleValue);
+            }
+        }
+        else if (value instanceof JsonElement)
+            appendValue((JsonElement)value);
+        else {
+            nested.reset();
+            NdjsonOutputEventHandler.appendJson(nested, value);
+            appendJsonText();
+        }
+    }
+
+    /**
+     * Appends a JSON number from its text, as an integer if it has no fraction or exponent and
+     * fits in a long.
+     */
+    private void appendNumber(String text) {
+        boolean integral = true;
+        for (int i = 0; i < text.length() && integral; i++) {
+            char c = text.charAt(i);
+            integral = c != '.' && c != 'e' && c != 'E';
+        }
+
+        if (integral) {
+            try {
+                long value = Long.parseLong(text);
+                record.putByte(INTEGER_VALUE);
+                record.putZigZagLong(value);
+                return;
+            }
+            catch (NumberFormatException e) {
+                // Too large for a long
+            }
+        }
+        record.putByte(DOUBLE_VALUE);
+        record.putDouble(Double.parseDouble(text));
+    }
+
+    private void appendJsonText() {
+        record.putByte(JSON_VALUE);
+        record.putVarLong(nested.length());
+        record.putBytes(nested.array(), 0, nested.length());
+    }
+
+    private static void appendString(RecordBuffer record, String value) {
+        record.putVarLong(RecordBuffer.utf8Length(value));
+        record.putUtf8(value);
+    }
+
+    private int startRecord(byte type) {
+        int start = record.length();
+        record.putInt(0);
+        record.putByte(type);
+        return start;
+    }
+
+    private void endRecord(int start) {
+        record.setInt(start, record.length() - start - 4);
+    }
+}
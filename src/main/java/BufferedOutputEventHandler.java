@@ -0,0 +1,271 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * A high-throughput implementation of <code>IEventHandler</code> that writes the same text as
+ * <code>StreamOutputEventHandler</code>.
+ *
+ * Each event is formatted into a reusable buffer without <code>Formatter</code> or boxing, reading
+ * the JSON payload directly when the event arrives as a <code>BusinessEvent</code>. It is then
+ * written to a large output buffer that is flushed when it fills up, when the flush interval
+ * elapses, and after every non-business callback. The output is locked once per event rather
+ * than once per line.
+ */
+public class BufferedOutputEventHandler extends ChannelOutputEventHandler {
+    private static final String SEPARATOR = "===========================================";
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final CharsetEncoder encoder;
+    private final StringBuilder text = new StringBuilder(1024);
+    private char[] chars = new char[1024];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+    /**
+     * Creates a new <code>BufferedOutputEventHandler</code> instance that writes to a stream. The
+     * stream is flushed, but not closed, by <code>close</code>.
+     *
+     * @param out the output stream
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public BufferedOutputEventHandler(OutputStream out, int bufferSize, long flushIntervalMillis) {
+        this(Channels.newChannel(out), false, ByteBuffer.allocate(bufferSize), flushIntervalMillis);
+    }
+
+    /**
+     * Creates a new <code>BufferedOutputEventHandler</code> instance that appends to a file.
+     *
+     * @param file the output file, created if it does not exist
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     * @exception IOException if the file could not be opened
+     */
+    public BufferedOutputEventHandler(Path file, int bufferSize, long flushIntervalMillis) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+            true, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    /**
+     * Creates a new <code>BufferedOutputEventHandler</code> instance that writes to a channel,
+     * such as a <code>RollingFileChannel</code>. The channel is closed by <code>close</code>.
+     *
+     * @param channel the output channel
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public BufferedOutputEventHandler(WritableByteChannel channel, int bufferSize, long flushIntervalMillis) {
+        this(channel, true, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    private BufferedOutputEventHandler(WritableByteChannel channel, boolean ownsChannel, ByteBuffer output, long flushIntervalMillis) {
+        super(channel, ownsChannel, output, flushIntervalMillis);
+        this.encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public OutputFormat getFormat() {
+        return OutputFormat.TEXT;
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        lock.lock();
+        try {
+            rollIfDue();
+            text.setLength(0);
+            text.append(SEPARATOR).append(NEW_LINE);
+            for (Map.Entry<String, Object> property : businessEvent.entrySet()) {
+                text.append(property.getKey()).append(": ");
+                appendPropertyValue(text, property.getValue());
+                text.append(NEW_LINE);
+            }
+            write(text);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        JsonObject payload = businessEvent.getPayload();
+        if (payload == null) {
+            onBusinessEvent(businessEvent.toMap());
+            return;
+        }
+
+        lock.lock();
+        try {
+            rollIfDue();
+            text.setLength(0);
+            text.append(SEPARATOR).append(NEW_LINE);
+            for (Map.Entry<String, JsonElement> property : payload.entrySet()) {
+                text.append(property.getKey()).append(": ");
+                appendPropertyValue(text, property.getValue());
+                text.append(NEW_LINE);
+            }
+            write(text);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        writeLine("Error: " + serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        writeLine("ManagementEvent: " + message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        writeLine("Connection to message bus established.");
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        writeLine("Connection to message bus lost.");
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        writeLine("Connection to event bridge lost. Reconnecting...");
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        writeLine("Connection to event bridge restored after " + downtimeMillis + " ms.");
+    }
+
+    /**
+     * Appends an event property value in the same representation as
+     * <code>StreamOutputEventHandler</code>.
+     *
+     * @param text the text to append to
+     * @param value the event property value
+     */
+    static void appendPropertyValue(StringBuilder text, Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double doubleValue = ((Number)value).doubleValue();
+            long longValue = (long)doubleValue;
+            if (doubleValue == longValue)
+                text.append(longValue);
+            else
+                text.append(doubleValue);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            text.append(((Number)value).longValue());
+        else if (value instanceof Number) {
+            Number numberValue = (Number)value;
+            if (numberValue.doubleValue() == numberValue.longValue())
+                text.append(numberValue.longValue());
+            else
+                text.append(numberValue.doubleValue());
+        }
+        else
+            text.append(value);
+    }
+
+    /**
+     * Appends a JSON event property value in the same representation as
+     * <code>StreamOutputEventHandler</code> gives the converted value.
+     *
+     * @param text the text to append to
+     * @param value the event property value
+     */
+    static void appendPropertyValue(StringBuilder text, JsonElement value) {
+        if (value.isJsonPrimitive()) {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                double doubleValue = primitive.getAsDouble();
+                long longValue = (long)doubleValue;
+                if (doubleValue == longValue)
+                    text.append(longValue);
+                else
+                    text.append(doubleValue);
+            }
+            else if (primitive.isBoolean())
+                text.append(primitive.getAsBoolean());
+            else
+                text.append(primitive.getAsString());
+        }
+        else if (value.isJsonNull())
+            text.append("null");
+        else
+            text.append(BusinessEvent.toObject(value));
+    }
+
+    private void writeLine(String line) {
+        lock.lock();
+        try {
+            text.setLength(0);
+            text.append(line).append(NEW_LINE);
+            write(text);
+            drain();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes text into the output buffer, draining the buffer to the channel whenever it fills.
+     */
+    private void write(StringBuilder text) throws IOException {
+        int length = text.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        text.getChars(0, length, chars, 0);
+        charBuffer.clear().limit(length);
+
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, output, true);
+            if (result.isOverflow())
+                drain();
+            else if (result.isUnderflow())
+                break;
+            else
+                result.throwException();
+        }
+        while (encoder.flush(output).isOverflow())
+            drain();
+    }
+}
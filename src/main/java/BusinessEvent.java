@@ -0,0 +1,334 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * A read-only view of a business event received from the bridge.
+ *
+ * The view reads properties straight from the JSON tree the SignalR client already parsed, so
+ * properties that are never read are never converted, and numbers are read as primitives without
+ * boxing. The property map passed to <code>IEventHandler.onBusinessEvent(Map)</code> is only built
+ * when <code>toMap</code> is called. A view can also wrap an existing property map.
+ */
+public class BusinessEvent {
+    // Well-known OpenAccess business event properties
+    public static final String BUSINESS_EVENT_CLASS = "business_event_class";
+    public static final String VERSION = "version";
+    public static final String DESCRIPTION = "description";
+    public static final String TIMESTAMP = "timestamp";
+    public static final String SERIAL_NUMBER = "serial_number";
+    public static final String PANEL_ID = "panel_id";
+    public static final String DEVICE_ID = "device_id";
+    public static final String SECONDARY_DEVICE_ID = "secondary_device_id";
+    public static final String EVENT_TYPE = "event_type";
+    public static final String EVENT_SUBTYPE = "event_subtype";
+    public static final String CARDHOLDER_KEY = "cardholder_key";
+    public static final String BADGE_ID = "badge_id";
+
+    /**
+     * Returned by <code>getTimestampMillis</code> when the event has no readable timestamp.
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final Gson GSON = new Gson();
+    private static final Type EVENT_TYPE_TOKEN = new TypeToken<Map<String, Object>>() {}.getType();
+
+    private final JsonObject json;
+    private Map<String, Object> map;
+    private String businessEventClass;
+    private long timestampMillis = NO_TIMESTAMP;
+    private boolean timestampParsed;
+    private LatencyTracer.Trace trace;
+
+    /**
+     * Creates a new <code>BusinessEvent</code> view of a JSON event payload.
+     *
+     * @param json the event payload
+     */
+    public BusinessEvent(JsonObject json) {
+        this.json = json;
+    }
+
+    /**
+     * Creates a new <code>BusinessEvent</code> view of an event property map.
+     *
+     * @param map the event properties
+     */
+    public BusinessEvent(Map<String, Object> map) {
+        this.json = null;
+        this.map = map;
+    }
+
+    /**
+     * Parses a business event from JSON text.
+     *
+     * @param text the event payload as JSON
+     * @return the business event
+     */
+    public static BusinessEvent parse(String text) {
+        return new BusinessEvent(GSON.fromJson(text, JsonObject.class));
+    }
+
+    /**
+     * Determines whether the event has a non-null property.
+     *
+     * @param name the property name
+     * @return true if the property is present and not null
+     */
+    public boolean has(String name) {
+        if (json != null) {
+            JsonElement element = json.get(name);
+            return element != null && !element.isJsonNull();
+        }
+        return map.get(name) != null;
+    }
+
+    /**
+     * Gets a property as a string.
+     *
+     * @param name the property name
+     * @return the property value, or <code>null</code> if it is missing or null
+     */
+    public String getString(String name) {
+        if (json != null) {
+            JsonElement element = json.get(name);
+            if (element == null || element.isJsonNull())
+                return null;
+            return element.isJsonPrimitive() ? element.getAsString() : element.toString();
+        }
+
+        Object value = map.get(name);
+        if (value instanceof Number)
+            return numberToString((Number)value);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Gets a numeric property as a <code>long</code>.
+     *
+     * @param name the property name
+     * @param defaultValue the value to return if the property is missing or not a number
+     * @return the property value
+     */
+    public long getLong(String name, long defaultValue) {
+        if (json != null) {
+            JsonPrimitive primitive = getPrimitive(name);
+            if (primitive == null)
+                return defaultValue;
+            try {
+                return primitive.isNumber() ? primitive.getAsNumber().longValue() : Long.parseLong(primitive.getAsString());
+            }
+            catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        Object value = map.get(name);
+        if (value instanceof Number)
+            return ((Number)value).longValue();
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String)value);
+            }
+            catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets a numeric property as a <code>double</code>.
+     *
+     * @param name the property name
+     * @param defaultValue the value to return if the property is missing or not a number
+     * @return the property value
+     */
+    public double getDouble(String name, double defaultValue) {
+        if (json != null) {
+            JsonPrimitive primitive = getPrimitive(name);
+            if (primitive == null)
+                return defaultValue;
+            try {
+                return primitive.getAsDouble();
+            }
+            catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        Object value = map.get(name);
+        return value instanceof Number ? ((Number)value).doubleValue() : defaultValue;
+    }
+
+    /**
+     * Gets a boolean property.
+     *
+     * @param name the property name
+     * @param defaultValue the value to return if the property is missing
+     * @return the property value
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        if (json != null) {
+            JsonPrimitive primitive = getPrimitive(name);
+            return primitive == null ? defaultValue : primitive.getAsBoolean();
+        }
+
+        Object value = map.get(name);
+        return value instanceof Boolean ? (Boolean)value : defaultValue;
+    }
+
+    /**
+     * Gets the class of the event, such as <code>hardware_event</code>.
+     *
+     * @return the business event class, or <code>null</code> if missing
+     */
+    public String getBusinessEventClass() {
+        if (businessEventClass == null)
+            businessEventClass = getString(BUSINESS_EVENT_CLASS);
+        return businessEventClass;
+    }
+
+    /**
+     * Gets the server timestamp of the event. Timestamps without a time zone offset are taken to
+     * be in the local time zone.
+     *
+     * @return the timestamp in milliseconds since the epoch, or <code>NO_TIMESTAMP</code>
+     */
+    public long getTimestampMillis() {
+        if (!timestampParsed) {
+            timestampMillis = parseTimestamp(getString(TIMESTAMP));
+            timestampParsed = true;
+        }
+        return timestampMillis;
+    }
+
+    /**
+     * Adds or replaces a property, such as a value looked up for the event. Only the stage that
+     * received the event should change it, before passing it on.
+     *
+     * @param name the property name
+     * @param value the property value, converted to JSON if the view reads a JSON payload
+     */
+    void setProperty(String name, Object value) {
+        if (json != null) {
+            json.add(name, GSON.toJsonTree(value));
+            map = null;
+        }
+        else
+            map.put(name, value);
+
+        businessEventClass = null;
+        timestampParsed = false;
+    }
+
+    /**
+     * Gets the JSON payload this view reads from.
+     *
+     * @return the event payload, or <code>null</code> if the view wraps a property map
+     */
+    JsonObject getPayload() {
+        return json;
+    }
+
+    /**
+     * Gets the latency trace of the event, if it was sampled for tracing.
+     *
+     * @return the trace, or <code>null</code>
+     */
+    LatencyTracer.Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Sets the latency trace of the event. Only the stage that received the event should set it,
+     * before passing it on.
+     *
+     * @param trace the trace
+     */
+    void setTrace(LatencyTracer.Trace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Gets the raw JSON payload, converting a map-based event if needed.
+     *
+     * @return the event payload
+     */
+    public JsonObject toJsonObject() {
+        return json != null ? json : GSON.toJsonTree(map, EVENT_TYPE_TOKEN).getAsJsonObject();
+    }
+
+    /**
+     * Gets the event as JSON text.
+     *
+     * @return the event payload as JSON
+     */
+    public String toJson() {
+        return json != null ? json.toString() : GSON.toJson(map, EVENT_TYPE_TOKEN);
+    }
+
+    /**
+     * Gets the event properties as a map, converting them the same way the SignalR client does.
+     * The map is built on the first call and reused afterwards.
+     *
+     * @return the event properties
+     */
+    public Map<String, Object> toMap() {
+        if (map == null)
+            map = GSON.fromJson(json, EVENT_TYPE_TOKEN);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * Converts a nested JSON property value the same way the SignalR client does.
+     *
+     * @param element the property value
+     * @return the converted value
+     */
+    static Object toObject(JsonElement element) {
+        return GSON.fromJson(element, Object.class);
+    }
+
+    private JsonPrimitive getPrimitive(String name) {
+        JsonElement element = json.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsJsonPrimitive() : null;
+    }
+
+    private static String numberToString(Number value) {
+        return value.doubleValue() == value.longValue() ?
+            String.valueOf(value.longValue()) :
+            String.valueOf(value.doubleValue());
+    }
+
+    private static long parseTimestamp(String text) {
+        if (text == null)
+            return NO_TIMESTAMP;
+
+        try {
+            return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        }
+        catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            catch (DateTimeParseException e2) {
+                return NO_TIMESTAMP;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The base of the <code>IEventHandler</code> implementations that write events to a channel
+ * through a large output buffer.
+ *
+ * The buffer is drained to the channel when it fills up, when the flush interval elapses, and
+ * when a subclass asks for it. Subclasses encode events while holding the output lock, and call
+ * <code>rollIfDue</code> before each one, so that a <code>RollingFileChannel</code> only starts a
+ * new file between events.
+ */
+public abstract class ChannelOutputEventHandler implements IEventHandler, Flushable, Closeable {
+    private final WritableByteChannel channel;
+    private final boolean ownsChannel;
+    private final RollingFileChannel rollingChannel;
+    private final ScheduledExecutorService flushTimer;
+    final ByteBuffer output;
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a new <code>ChannelOutputEventHandler</code> instance.
+     *
+     * @param channel the channel to write to
+     * @param ownsChannel whether <code>close</code> closes the channel
+     * @param output the output buffer
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    ChannelOutputEventHandler(WritableByteChannel channel, boolean ownsChannel, ByteBuffer output, long flushIntervalMillis) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.rollingChannel = channel instanceof RollingFileChannel ? (RollingFileChannel)channel : null;
+        this.output = output;
+
+        if (flushIntervalMillis > 0) {
+            flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "event-output-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushTimer.scheduleWithFixedDelay(this::flushIfIdle, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+            flushTimer = null;
+    }
+
+    /**
+     * Flushes the buffered events. Formats that only hold events do nothing else with the other
+     * callbacks, but flush so that the events received before them are written out.
+     */
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        flushUnchecked();
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        flushUnchecked();
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        flushUnchecked();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        flushUnchecked();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        flushUnchecked();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        flushUnchecked();
+    }
+
+    /**
+     * Gets the format this handler writes.
+     *
+     * @return the output format
+     */
+    public abstract OutputFormat getFormat();
+
+    /**
+     * Writes any buffered output to the channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the buffered output and stops the flush timer. Closes the channel if this handler
+     * owns it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flushTimer != null)
+            flushTimer.shutdownNow();
+
+        flush();
+        if (ownsChannel)
+            channel.close();
+    }
+
+    /**
+     * Called with the lock held when a <code>RollingFileChannel</code> is about to start a new
+     * file, so that formats with a header can write it again. Does nothing by default.
+     */
+    void onFileStarted() {
+    }
+
+    /**
+     * Starts a new file before the next record if the channel is a
+     * <code>RollingFileChannel</code> whose current file is due to roll over. Must be called with
+     * the lock held, before encoding a record.
+     *
+     * @exception IOException if the buffered output could not be written
+     */
+    void rollIfDue() throws IOException {
+        if (rollingChannel != null && rollingChannel.isRollDue(output.position())) {
+            drain();
+            rollingChannel.roll();
+            onFileStarted();
+        }
+    }
+
+    /**
+     * Adds an encoded record to the output buffer, first draining the buffer if the record does
+     * not fit. A record larger than the whole buffer is written to the channel directly. Must be
+     * called with the lock held.
+     *
+     * @param record the encoded record
+     * @exception IOException if the output could not be written
+     */
+    void writeRecord(RecordBuffer record) throws IOException {
+        int length = record.length();
+        if (length > output.remaining())
+            drain();
+
+        if (length > output.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(record.array(), 0, length);
+            while (large.hasRemaining())
+                channel.write(large);
+        }
+        else
+            output.put(record.array(), 0, length);
+    }
+
+    /**
+     * Writes the buffered output to the channel. Must be called with the lock held.
+     *
+     * @exception IOException if the output could not be written
+     */
+    void drain() throws IOException {
+        output.flip();
+        while (output.hasRemaining())
+            channel.write(output);
+        output.clear();
+    }
+
+    private void flushUnchecked() {
+        try {
+            flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes from the timer thread, unless an event is being written right now.
+     */
+    private void flushIfIdle() {
+        if (!lock.tryLock())
+            return;
+
+        try {
+            if (output.position() > 0)
+                drain();
+        }
+        catch (IOException e) {
+            System.err.format("Error: could not flush event output: %s%n", e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,659 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the event pipeline headless under a service manager, configured by a
+ * <code>DaemonConfig</code> file rather than environment variables, and without reading standard
+ * input.
+ *
+ * The configuration file is checked for changes periodically. Changed routes are swapped into the
+ * running <code>EventRouter</code>, and a changed bridge filter renews the subscription over the
+ * existing connection, so a reload does not drop the hub connection. On shutdown, such as on
+ * SIGTERM, the daemon stops receiving, drains the events already received, flushes the outputs
+ * and logs out, giving up once the shutdown timeout has passed.
+ *
+ * If shards are configured, the daemon runs as one of several workers that split the events
+ * between them: a <code>ShardCoordinator</code> decides which shards it owns, and the bridge
+ * subscription is limited to the events of those shards. A worker that owns no shards stays
+ * connected to OpenAccess, but not to the bridge, until it takes over shards from a worker that
+ * stopped or died.
+ */
+public class Daemon {
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10000;
+    private static final long DEFAULT_RELOAD_INTERVAL_MILLIS = 5000;
+    private static final long DEFAULT_LEASE_MILLIS = 15000;
+    private static final long SHARD_STOP_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_AGGREGATION_INTERVAL_MILLIS = 60000;
+    private static final int DEFAULT_AGGREGATION_WINDOW_INTERVALS = 5;
+    private static final int DEFAULT_AGGREGATION_MAX_KEYS = 100000;
+    private static final int DEFAULT_TRACE_SLOWEST_COUNT = 20;
+
+    private final Path configFile;
+    private volatile DaemonConfig config;
+    private FileTime configModified;
+
+    private OpenAccessService service;
+    private SessionTokenManager tokenManager;
+    private MetricsRegistry metrics;
+    private MetricsServer metricsServer;
+    private LatencyTracer tracer;
+    private final StartupTimer startupTimer = new StartupTimer();
+    private String applicationId;
+    private String bridgeUrl;
+    private TransportMode transportMode;
+    private volatile IEventSubscriber subscriber;
+    private volatile long stoppedSubscriberReconnects;
+    private IEventHandler pipeline;
+    private DispatchingEventHandler dispatcher;
+    private PartitionedEventHandler partitioner;
+    private EventSpool spool;
+    private SpoolingEventHandler spooler;
+    private final EventRouter router = new EventRouter();
+    private EventSubscription subscription;
+    private ShardCoordinator coordinator;
+    private Map<String, String> shardFilters;
+    private Set<String> ownedShards;
+    private final Map<String, ChannelOutputEventHandler> outputs = new HashMap<>();
+    private final Map<String, AggregatingEventHandler> aggregators = new HashMap<>();
+    private final Map<String, Closeable> retiredOutputs = new LinkedHashMap<>();
+    private final List<EnrichmentCache<String, Map<String, Object>>> caches = new ArrayList<>();
+
+    private final Object shutdownLock = new Object();
+    private boolean shutdownStarted;
+    private volatile boolean stopping;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Creates a new <code>Daemon</code> instance.
+     *
+     * @param configFile the configuration file
+     */
+    public Daemon(Path configFile) {
+        this.configFile = configFile;
+    }
+
+    /**
+     * Runs a daemon until the JVM shuts down.
+     *
+     * @param configFile the configuration file
+     * @return the exit status: 0 after a shutdown, or 1 if the daemon could not start
+     */
+    public static int run(Path configFile) {
+        Daemon daemon = new Daemon(configFile);
+        try {
+            daemon.start();
+        }
+        catch (OpenAccessException e) {
+            System.err.format("Error communicating with the OpenAccess API: %s - %s%n", e.getCode(), e.getMessage());
+            daemon.shutdown();
+            return 1;
+        }
+        catch (Exception e) {
+            System.err.format("Error: %s%n", e);
+            daemon.shutdown();
+            return 1;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::shutdown, "daemon-shutdown"));
+        daemon.awaitShutdown();
+        return 0;
+    }
+
+    /**
+     * Reads the configuration, logs in, builds the pipeline and starts receiving events. Unless
+     * shards are configured, the daemon logs in while it connects to the bridge.
+     *
+     * @exception Exception if the daemon could not start
+     */
+    public synchronized void start() throws Exception {
+        configModified = Files.getLastModifiedTime(configFile);
+        config = DaemonConfig.load(configFile);
+        for (DaemonConfig.Route route : config.getRoutes()) {
+            if (DaemonConfig.STANDARD_OUTPUT.equals(route.output) && route.format != OutputFormat.TEXT)
+                Program.reserveStandardOutput();
+        }
+
+        String url = config.getRequiredString("openaccess.url");
+        applicationId = config.getRequiredString("openaccess.application_id");
+        bridgeUrl = config.getString("bridge.url", url + "eventbridge/");
+        transportMode = TransportMode.parse(config.getString("bridge.transport", null), TransportMode.LONG_POLLING);
+
+        EnumSet<OutputFormat> formats = EnumSet.noneOf(OutputFormat.class);
+        List<String> filters = new ArrayList<>();
+        for (DaemonConfig.Route route : config.getRoutes()) {
+            formats.add(route.format);
+            filters.add(route.filter);
+        }
+        new StartupWarmup(bridgeUrl, transportMode, formats, filters).start();
+
+        String port = config.getString("metrics.port", null);
+        if (port != null) {
+            metrics = new MetricsRegistry();
+            metricsServer = new MetricsServer(metrics, Integer.parseInt(port));
+            System.out.format("Serving metrics at http://localhost:%d/metrics%n", metricsServer.getPort());
+        }
+
+        System.out.format("Connecting to the OpenAccess service at %s with application id %s...%n", url, applicationId);
+        service = new OpenAccessService(url, applicationId,
+            HttpTransportMode.parse(config.getString("openaccess.http_transport", null), HttpTransportMode.POOLED).createTransport());
+        tokenManager = new SessionTokenManager(service, config.getRequiredString("openaccess.username"),
+            config.getString("openaccess.password", System.getenv("OPENACCESS_PASSWORD")),
+            config.getString("openaccess.directory_id", Program.OPENACCESS_DIRECTORY_ID),
+            config.getLong("openaccess.token_refresh_ahead_millis", Program.SESSION_TOKEN_REFRESH_AHEAD_MILLIS));
+
+        // The routes decide where events go; the stages before them are fixed until a restart
+        router.replaceRoutes(buildRoutes(config));
+        IEventHandler handler = router;
+        if (config.getBoolean("enrichment.enabled", false)) {
+            caches.add(Program.createInstanceCache(service, "Lnl_Cardholder", "ID"));
+            caches.add(Program.createInstanceCache(service, "Lnl_Panel", "ID"));
+
+            EnrichingEventHandler enricher = new EnrichingEventHandler(handler,
+                config.getLong("enrichment.lookup_timeout_millis", Program.ENRICHMENT_LOOKUP_TIMEOUT_MILLIS));
+            enricher.addLookup(BusinessEvent.CARDHOLDER_KEY, "cardholder", caches.get(0));
+            enricher.addLookup(BusinessEvent.PANEL_ID, "panel", caches.get(1));
+            handler = enricher;
+        }
+
+        int traceSampleEvery = config.getInt("trace.sample_every", 0);
+        if (traceSampleEvery > 0) {
+            tracer = new LatencyTracer(traceSampleEvery, config.getInt("trace.slowest_count", DEFAULT_TRACE_SLOWEST_COUNT));
+            if (metrics != null) {
+                tracer.registerMetrics(metrics);
+                metricsServer.addPage("/traces", tracer::dumpSlowest);
+            }
+            handler = tracer.handling(handler);
+        }
+
+        String spoolDirectory = config.getString("spool.directory", null);
+        if (spoolDirectory != null) {
+            System.out.format("Spooling events to %s...%n", spoolDirectory);
+            if (config.getInt("partition.lanes", 0) > 0)
+                System.err.println("Warning: partition.lanes is ignored while spooling; spooled events are handled in order on one thread.");
+            spool = new EventSpool(Paths.get(spoolDirectory), config.getInt("spool.segment_size", Program.SPOOL_SEGMENT_SIZE),
+                config.getInt("spool.sync_batch_size", Program.SPOOL_SYNC_BATCH_SIZE),
+                config.getLong("spool.sync_interval_millis", Program.SPOOL_SYNC_INTERVAL_MILLIS));
+            spooler = new SpoolingEventHandler(handler, spool, config.getString("spool.consumer", Program.SPOOL_CONSUMER),
+                config.getInt("spool.commit_batch_size", Program.SPOOL_COMMIT_BATCH_SIZE));
+            handler = spooler;
+        }
+        else if (config.getInt("partition.lanes", 0) > 0) {
+            String keys = config.getString("partition.key", BusinessEvent.PANEL_ID + "," + BusinessEvent.DEVICE_ID);
+            partitioner = new PartitionedEventHandler(handler, config.getInt("partition.lanes", 0),
+                config.getInt("partition.lane_capacity", Program.PARTITION_LANE_CAPACITY),
+                config.getBackpressurePolicy("dispatch.backpressure", Program.DISPATCH_BACKPRESSURE_POLICY),
+                keys.split("\\s*,\\s*"));
+            handler = partitioner;
+        }
+        else {
+            dispatcher = new DispatchingEventHandler(handler,
+                config.getInt("dispatch.queue_capacity", Program.DISPATCH_QUEUE_CAPACITY),
+                config.getInt("dispatch.workers", Program.DISPATCH_WORKER_COUNT),
+                config.getBackpressurePolicy("dispatch.backpressure", Program.DISPATCH_BACKPRESSURE_POLICY));
+            handler = dispatcher;
+        }
+
+        DeduplicatingEventHandler deduplicator = new DeduplicatingEventHandler(handler,
+            config.getLong("dedup.window_millis", Program.DEDUP_WINDOW_MILLIS),
+            config.getInt("dedup.max_entries", Program.DEDUP_MAX_ENTRIES));
+        handler = deduplicator;
+
+        subscription = createSubscription(config);
+        if (metrics != null) {
+            handler = new InstrumentedEventHandler(handler, metrics, subscription.description, "received");
+            Program.registerPipelineMetrics(metrics, deduplicator, dispatcher, partitioner, spooler, caches);
+            metrics.histogram("openaccess_login_latency_seconds", "Time taken by OpenAccess login requests.",
+                service.getLoginLatency());
+            metrics.gauge("openaccess_time_to_first_event_seconds", "Time from process start to the first event received.",
+                () -> startupTimer.getTimeToFirstEventMillis() < 0 ? Double.NaN : startupTimer.getTimeToFirstEventMillis() / 1000.0);
+        }
+        if (tracer != null)
+            handler = tracer.receiving(handler);
+
+        pipeline = handler;
+        tokenManager.addTokenListener(this::updateSessionToken);
+        if (metricsServer != null)
+            metricsServer.addAction("/handover", () -> Program.handover(subscriber));
+        if (metrics != null)
+            metrics.counter("openaccess_bridge_reconnects_total", "Reconnections to the event bridge.", this::getReconnectCount);
+
+        shardFilters = config.getShards();
+        if (shardFilters.isEmpty()) {
+            startSubscriber(true);
+            System.out.format("Receiving events for %d routes.%n", config.getRoutes().size());
+            return;
+        }
+
+        for (Map.Entry<String, String> shard : shardFilters.entrySet()) {
+            try {
+                EventFilter.compile(shard.getValue());
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Shard " + shard.getKey() + " has an invalid filter: " + e.getMessage());
+            }
+        }
+
+        // The subscription waits for shards, so there is no connection to overlap the login with
+        long loginNanos = System.nanoTime();
+        tokenManager.login();
+        startupTimer.record("login", loginNanos);
+        System.out.println("Successfully connected to the OpenAccess service.");
+        coordinator = new ShardCoordinator(Paths.get(config.getRequiredString("coordination.directory")),
+            config.getString("coordination.worker_id", ShardCoordinator.getDefaultWorkerId()), shardFilters.keySet(),
+            config.getLong("coordination.lease_millis", DEFAULT_LEASE_MILLIS), this::applyShards);
+        if (metrics != null) {
+            ShardCoordinator shardCoordinator = coordinator;
+            metrics.gauge("openaccess_worker_shards", "Shards owned by this worker.", () -> shardCoordinator.getOwnedShards().size());
+            metrics.counter("openaccess_worker_shard_claims_total", "Shards claimed by this worker.", shardCoordinator::getClaimCount);
+            metrics.counter("openaccess_worker_shard_losses_total", "Shards lost to another worker.", shardCoordinator::getLostCount);
+        }
+
+        System.out.format("Running as worker %s of %d shards for %d routes.%n", coordinator.getWorkerId(), shardFilters.size(),
+            config.getRoutes().size());
+        coordinator.start();
+    }
+
+    /**
+     * Reloads the configuration file if it changed since it was last read. New routes replace the
+     * running ones; a changed filter renews the subscription over the existing connection. An
+     * invalid configuration is reported and ignored. Outputs no route uses any more are closed on
+     * the next call, once the events routed to them before the reload have been written.
+     */
+    public synchronized void reloadIfChanged() {
+        if (pipeline == null || stopping)
+            return;
+        closeRetiredOutputs();
+
+        DaemonConfig newConfig;
+        EventRouter newRoutes;
+        try {
+            FileTime modified = Files.getLastModifiedTime(configFile);
+            if (modified.equals(configModified))
+                return;
+            configModified = modified;
+
+            newConfig = DaemonConfig.load(configFile);
+            newRoutes = buildRoutes(newConfig);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.err.format("Error: could not reload %s, keeping the current configuration: %s%n", configFile, e);
+            return;
+        }
+
+        for (String key : config.getChangedStartupProperties(newConfig))
+            System.err.format("Warning: the change to %s takes effect after a restart.%n", key);
+
+        router.replaceRoutes(newRoutes);
+        retireUnusedOutputs(newConfig);
+
+        EventSubscription newSubscription = createSubscription(newConfig);
+        newSubscription.description = subscription.description;
+        newSubscription.is_durable = subscription.is_durable;
+        if (!Objects.equals(newSubscription.filter, subscription.filter)) {
+            subscription = newSubscription;
+            if (subscriber != null)
+                subscriber.updateSubscription(newSubscription);
+        }
+
+        config = newConfig;
+        System.out.format("Reloaded %s with %d routes.%n", configFile, newConfig.getRoutes().size());
+    }
+
+    /**
+     * Blocks until the daemon has shut down, reloading the configuration when it changes, unless
+     * the reload interval is 0.
+     */
+    public void awaitShutdown() {
+        DaemonConfig startConfig = config;
+        long intervalMillis = startConfig == null ? DEFAULT_RELOAD_INTERVAL_MILLIS
+            : startConfig.getLong("reload.interval_millis", DEFAULT_RELOAD_INTERVAL_MILLIS);
+
+        try {
+            if (intervalMillis <= 0)
+                stopped.await();
+            while (!stopped.await(intervalMillis, TimeUnit.MILLISECONDS))
+                reloadIfChanged();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops receiving, drains the events already received, flushes the outputs and logs out. The
+     * steps run on a separate thread, and the daemon gives up waiting for them once the shutdown
+     * timeout has passed, so an unreachable server cannot hold up the service manager. Only the
+     * first call does anything.
+     */
+    public void shutdown() {
+        synchronized (shutdownLock) {
+            if (shutdownStarted)
+                return;
+            shutdownStarted = true;
+        }
+        stopping = true;
+
+        DaemonConfig currentConfig = config;
+        long timeoutMillis = currentConfig == null ? DEFAULT_SHUTDOWN_TIMEOUT_MILLIS
+            : currentConfig.getLong("shutdown.timeout_millis", DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        System.out.println("Shutting down...");
+        Thread steps = new Thread(() -> runShutdownSteps(deadline), "daemon-shutdown-steps");
+        steps.setDaemon(true);
+        steps.start();
+        try {
+            steps.join(timeoutMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (steps.isAlive())
+            System.err.format("Error: shutdown did not finish within %d ms.%n", timeoutMillis);
+        else
+            System.out.println("Shut down.");
+        stopped.countDown();
+    }
+
+    private void runShutdownSteps(long deadline) {
+        // Reloads wait until the pipeline is stopped, and find it gone
+        synchronized (this) {
+            try {
+                // Leave at least half the time to drain the events and log out
+                if (subscriber != null)
+                    subscriber.stopReceiving(remainingMillis(deadline) / 2, TimeUnit.MILLISECONDS);
+                subscriber = null;
+                if (coordinator != null)
+                    coordinator.close();
+
+                if (dispatcher != null && !dispatcher.shutdown(remainingMillis(deadline), TimeUnit.MILLISECONDS))
+                    System.err.format("Error: %d events were not handled before the shutdown timeout.%n", dispatcher.getQueueDepth());
+                if (dispatcher != null)
+                    dispatcher.close();
+                if (partitioner != null && !partitioner.shutdown(remainingMillis(deadline), TimeUnit.MILLISECONDS))
+                    System.err.format("Error: %d events were not handled before the shutdown timeout.%n", partitioner.getQueueDepth());
+                if (spooler != null)
+                    spooler.close();
+                if (spool != null)
+                    spool.close();
+                for (EnrichmentCache<String, Map<String, Object>> cache : caches)
+                    cache.close();
+                closeRetiredOutputs();
+                for (AggregatingEventHandler aggregator : aggregators.values())
+                    aggregator.close();
+                aggregators.clear();
+                for (ChannelOutputEventHandler output : outputs.values())
+                    output.close();
+                outputs.clear();
+                if (tracer != null) {
+                    tracer.close();
+                    System.out.format("Event latency by segment:%n%s%n%s", tracer, tracer.dumpSlowest());
+                }
+            }
+            catch (Exception e) {
+                System.err.format("Error: could not stop the event pipeline: %s%n", e);
+            }
+
+            try {
+                if (tokenManager != null)
+                    tokenManager.close();
+                if (service != null && service.getSessionToken() != null)
+                    service.logout();
+            }
+            catch (OpenAccessException e) {
+                System.err.format("Error communicating with the OpenAccess API: %s - %s%n", e.getCode(), e.getMessage());
+            }
+            catch (Exception e) {
+                System.err.format("Error: could not log out: %s%n", e);
+            }
+
+            if (metricsServer != null)
+                metricsServer.close();
+        }
+    }
+
+    /**
+     * Connects to the bridge and creates the subscription.
+     *
+     * @param login true to log in while connecting, for the first subscriber
+     */
+    private void startSubscriber(boolean login) throws Exception {
+        System.out.format("Connecting to the Web Event Bridge at %s using %s...%n", bridgeUrl, transportMode);
+        IEventSubscriber newSubscriber = Program.createSubscriber(bridgeUrl, login ? null : tokenManager.getSessionToken(),
+            applicationId, subscription, pipeline, transportMode, config.getBoolean("bridge.hot_standby", false),
+            config.getLong("dedup.window_millis", Program.DEDUP_WINDOW_MILLIS),
+            config.getInt("dedup.max_entries", Program.DEDUP_MAX_ENTRIES), metrics);
+        newSubscriber.setFirstEventListener(startupTimer::onFirstEvent);
+        try {
+            if (login)
+                Program.loginAndStartReceiving(tokenManager, newSubscriber, startupTimer);
+            else
+                newSubscriber.startReceiving();
+        }
+        catch (Exception e) {
+            newSubscriber.close();
+            throw e;
+        }
+        subscriber = newSubscriber;
+    }
+
+    /**
+     * Limits the subscription to the shards this worker owns. The worker connects to the bridge
+     * when it gains its first shard, renews the subscription over the same connection when its
+     * shards change, and disconnects when it has none left. A failed connection is retried with
+     * the next lease renewal.
+     */
+    private synchronized void applyShards(Set<String> shards) {
+        if (stopping)
+            return;
+        if (!shards.equals(ownedShards))
+            System.out.format("Worker %s owns shards %s.%n", coordinator.getWorkerId(), shards);
+        ownedShards = shards;
+
+        try {
+            if (shards.isEmpty()) {
+                if (subscriber != null) {
+                    stoppedSubscriberReconnects += subscriber.getReconnectCount();
+                    subscriber.stopReceiving(SHARD_STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    subscriber = null;
+                }
+                return;
+            }
+
+            EventSubscription newSubscription = createSubscription(config);
+            if (subscriber == null) {
+                subscription = newSubscription;
+                startSubscriber(false);
+            }
+            else if (!Objects.equals(newSubscription.filter, subscription.filter)) {
+                newSubscription.description = subscription.description;
+                newSubscription.is_durable = subscription.is_durable;
+                subscription = newSubscription;
+                subscriber.updateSubscription(newSubscription);
+            }
+        }
+        catch (Exception e) {
+            System.err.format("Error: could not receive the events of shards %s: %s%n", shards, e);
+        }
+    }
+
+    private void updateSessionToken(String sessionToken) {
+        IEventSubscriber current = subscriber;
+        if (current != null)
+            current.updateSessionToken(sessionToken);
+    }
+
+    private long getReconnectCount() {
+        IEventSubscriber current = subscriber;
+        return stoppedSubscriberReconnects + (current == null ? 0 : current.getReconnectCount());
+    }
+
+    /**
+     * Builds a router for the routes of a configuration, reusing the open outputs. The filters are
+     * all checked before any new output is opened. Routes that write to the same output must use
+     * the same format; an output whose format changes is reopened.
+     */
+    private EventRouter buildRoutes(DaemonConfig config) throws IOException {
+        List<DaemonConfig.Route> routes = config.getRoutes();
+        if (routes.isEmpty())
+            throw new IllegalArgumentException("No routes are configured");
+        Map<String, OutputFormat> formats = new HashMap<>();
+        for (DaemonConfig.Route route : routes) {
+            try {
+                EventFilter.compile(route.filter);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Route " + route.name + " has an invalid filter: " + e.getMessage());
+            }
+
+            OutputFormat format = formats.putIfAbsent(route.output, route.format);
+            if (format != null && format != route.format)
+                throw new IllegalArgumentException("Route " + route.name + " writes " + route.format + " to " + route.output
+                    + ", which another route writes " + format + " to");
+        }
+
+        int bufferSize = config.getInt("output.buffer_size", Program.OUTPUT_BUFFER_SIZE);
+        long flushIntervalMillis = config.getLong("output.flush_interval_millis", Program.OUTPUT_FLUSH_INTERVAL_MILLIS);
+        EventRouter router = new EventRouter();
+        for (DaemonConfig.Route route : routes) {
+            ChannelOutputEventHandler output = outputs.get(outputKey(route));
+            if (output == null) {
+                output = DaemonConfig.STANDARD_OUTPUT.equals(route.output)
+                    ? route.format.createHandler(Program.openStandardOutput(route.format), bufferSize, flushIntervalMillis)
+                    : route.format.createHandler(openOutputFile(config, route.output), bufferSize, flushIntervalMillis);
+                outputs.put(outputKey(route), output);
+            }
+
+            IEventHandler handler = output;
+            if (route.aggregate) {
+                AggregatingEventHandler aggregator = aggregators.get(aggregatorKey(route));
+                if (aggregator == null) {
+                    aggregator = new AggregatingEventHandler(output,
+                        config.getLong("aggregation.interval_millis", DEFAULT_AGGREGATION_INTERVAL_MILLIS),
+                        config.getInt("aggregation.window_intervals", DEFAULT_AGGREGATION_WINDOW_INTERVALS),
+                        config.getInt("aggregation.max_keys", DEFAULT_AGGREGATION_MAX_KEYS));
+                    aggregators.put(aggregatorKey(route), aggregator);
+                }
+                handler = aggregator;
+            }
+            if (metrics != null)
+                handler = new InstrumentedEventHandler(handler, metrics, route.name, "output");
+
+            EventSubscription routeSubscription = new EventSubscription();
+            routeSubscription.description = route.name;
+            routeSubscription.filter = route.filter;
+            router.addRoute(routeSubscription, handler);
+        }
+        return router;
+    }
+
+    /**
+     * Creates the bridge subscription, whose filter selects the events of every route, limited
+     * to the owned shards of a worker.
+     */
+    private EventSubscription createSubscription(DaemonConfig config) {
+        EventSubscription combined = router.createCombinedSubscription(
+            config.getString("subscription.description", Program.SUBSCRIPTION_DESCRIPTION));
+        combined.is_durable = config.getBoolean("subscription.durable", false);
+        if (ownedShards == null || ownedShards.isEmpty())
+            return combined;
+
+        StringBuilder shardFilter = new StringBuilder();
+        for (String shard : ownedShards) {
+            String filter = shardFilters.get(shard);
+            if (filter == null)
+                return combined;
+            if (shardFilter.length() > 0)
+                shardFilter.append(" or ");
+            shardFilter.append('(').append(filter).append(')');
+        }
+        combined.filter = combined.filter == null ? shardFilter.toString()
+            : "(" + combined.filter + ") and (" + shardFilter + ")";
+        return combined;
+    }
+
+    /**
+     * Opens an output file: a <code>RollingFileChannel</code> if the files roll or are compressed,
+     * and otherwise the file itself, appending to it.
+     */
+    private static WritableByteChannel openOutputFile(DaemonConfig config, String output) throws IOException {
+        long rollSizeBytes = config.getLong("output.roll_size_bytes", 0);
+        long rollIntervalMillis = config.getLong("output.roll_interval_millis", 0);
+        OutputCompression compression = config.getOutputCompression("output.compression", OutputCompression.NONE);
+        if (rollSizeBytes > 0 || rollIntervalMillis > 0 || compression != OutputCompression.NONE)
+            return new RollingFileChannel(Paths.get(output), rollSizeBytes, rollIntervalMillis, compression);
+
+        return FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String outputKey(DaemonConfig.Route route) {
+        return route.format + " " + route.output;
+    }
+
+    private static String aggregatorKey(DaemonConfig.Route route) {
+        return route.name + " " + outputKey(route);
+    }
+
+    /**
+     * Takes the outputs and aggregators no route of a configuration uses out of service. They are
+     * closed later by <code>closeRetiredOutputs</code>, since events routed before the routes were
+     * replaced may still be on their way to them on the dispatch threads. Aggregators come first,
+     * so their last summaries reach outputs that are still open.
+     */
+    private void retireUnusedOutputs(DaemonConfig config) {
+        List<String> used = new ArrayList<>();
+        for (DaemonConfig.Route route : config.getRoutes()) {
+            used.add(outputKey(route));
+            if (route.aggregate)
+                used.add(aggregatorKey(route));
+        }
+
+        aggregators.entrySet().removeIf(aggregator -> {
+            if (used.contains(aggregator.getKey()))
+                return false;
+            retiredOutputs.put(aggregator.getKey(), aggregator.getValue());
+            return true;
+        });
+
+        outputs.entrySet().removeIf(output -> {
+            if (used.contains(output.getKey()))
+                return false;
+            retiredOutputs.put(output.getKey(), output.getValue());
+            return true;
+        });
+    }
+
+    private void closeRetiredOutputs() {
+        for (Map.Entry<String, Closeable> output : retiredOutputs.entrySet()) {
+            try {
+                output.getValue().close();
+            }
+            catch (IOException e) {
+                System.err.format("Error: could not close %s: %s%n", output.getKey(), e);
+            }
+        }
+        retiredOutputs.clear();
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * The configuration of <code>Daemon</code>, read from a properties file.
+ *
+ * Event routes are given as <code>route.&lt;name&gt;.filter</code>,
+ * <code>route.&lt;name&gt;.output</code>, <code>route.&lt;name&gt;.format</code> and
+ * <code>route.&lt;name&gt;.aggregate</code> properties, where the output is <code>stdout</code>
+ * or a file path, the format defaults to <code>output.format</code>, and an aggregated route
+ * writes periodic summaries instead of events. Routes can be changed while the daemon runs; all other properties
+ * take effect when it starts.
+ *
+ * Shards for running several daemons as workers that split the events between them are given as
+ * <code>shard.&lt;name&gt;.filter</code> properties.
+ */
+public class DaemonConfig {
+    /**
+     * An event route: the events matching a filter, and where and how they are written.
+     */
+    public static class Route {
+        public final String name;
+        public final String filter;
+        public final String output;
+        public final OutputFormat format;
+        public final boolean aggregate;
+
+        Route(String name, String filter, String output, OutputFormat format, boolean aggregate) {
+            this.name = name;
+            this.filter = filter;
+            this.output = output;
+            this.format = format;
+            this.aggregate = aggregate;
+        }
+    }
+
+    /**
+     * The output that writes events to standard output.
+     */
+    public static final String STANDARD_OUTPUT = "stdout";
+
+    private static final String ROUTE_PREFIX = "route.";
+    private static final String FILTER_SUFFIX = ".filter";
+    private static final String OUTPUT_SUFFIX = ".output";
+    private static final String FORMAT_SUFFIX = ".format";
+    private static final String AGGREGATE_SUFFIX = ".aggregate";
+    private static final String SHARD_PREFIX = "shard.";
+
+    private final Properties properties;
+
+    private DaemonConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Reads a configuration file.
+     *
+     * @param file the properties file
+     * @return the configuration
+     * @exception IOException if the file could not be read
+     */
+    public static DaemonConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new DaemonConfig(properties);
+    }
+
+    /**
+     * Gets a property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the trimmed value, or the default value if the property is not set or empty
+     */
+    public String getString(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Gets a required property.
+     *
+     * @param key the property key
+     * @return the trimmed value
+     * @exception IllegalArgumentException if the property is not set
+     */
+    public String getRequiredString(String key) {
+        String value = getString(key, null);
+        if (value == null)
+            throw new IllegalArgumentException("Missing required property " + key);
+        return value;
+    }
+
+    /**
+     * Gets an integer property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the value
+     * @exception IllegalArgumentException if the value is not an integer
+     */
+    public int getInt(String key, int defaultValue) {
+        return (int)getLong(key, defaultValue);
+    }
+
+    /**
+     * Gets a long integer property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the value
+     * @exception IllegalArgumentException if the value is not an integer
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + key + " is not an integer: " + value);
+        }
+    }
+
+    /**
+     * Gets a boolean property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Gets the backpressure policy of the dispatch queue.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the policy
+     * @exception IllegalArgumentException if the value is not a policy name
+     */
+    public BackpressurePolicy getBackpressurePolicy(String key, BackpressurePolicy defaultValue) {
+        String value = getString(key, null);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            return BackpressurePolicy.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Property " + key + " is not a backpressure policy: " + value);
+        }
+    }
+
+    /**
+     * Gets an output format property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the format
+     * @exception IllegalArgumentException if the value is not a format name
+     */
+    public OutputFormat getOutputFormat(String key, OutputFormat defaultValue) {
+        try {
+            return OutputFormat.parse(getString(key, null), defaultValue);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Property " + key + " is not an output format: " + getString(key, null));
+        }
+    }
+
+    /**
+     * Gets an output compression property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is not set
+     * @return the compression
+     * @exception IllegalArgumentException if the value is not a compression name
+     */
+    public OutputCompression getOutputCompression(String key, OutputCompression defaultValue) {
+        try {
+            return OutputCompression.parse(getString(key, null), defaultValue);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Property " + key + " is not an output compression: " + getString(key, null));
+        }
+    }
+
+    /**
+     * Gets the event routes, in order of name.
+     *
+     * @return the routes
+     * @exception IllegalArgumentException if a route has no output or an unknown format
+     */
+    public List<Route> getRoutes() {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(ROUTE_PREFIX)
+                && (key.endsWith(FILTER_SUFFIX) || key.endsWith(OUTPUT_SUFFIX) || key.endsWith(FORMAT_SUFFIX)))
+                names.add(key.substring(ROUTE_PREFIX.length(), key.lastIndexOf('.')));
+        }
+
+        OutputFormat defaultFormat = getOutputFormat("output.format", OutputFormat.TEXT);
+        List<Route> routes = new ArrayList<>();
+        for (String name : names) {
+            String prefix = ROUTE_PREFIX + name;
+            routes.add(new Route(name, getString(prefix + FILTER_SUFFIX, null), getRequiredString(prefix + OUTPUT_SUFFIX),
+                getOutputFormat(prefix + FORMAT_SUFFIX, defaultFormat), getBoolean(prefix + AGGREGATE_SUFFIX, false)));
+        }
+        return routes;
+    }
+
+    /**
+     * Gets the shard filters, in order of shard name.
+     *
+     * @return the filter of each shard, which is <code>null</code> for a shard of all events
+     */
+    public Map<String, String> getShards() {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(SHARD_PREFIX) && key.endsWith(FILTER_SUFFIX))
+                names.add(key.substring(SHARD_PREFIX.length(), key.length() - FILTER_SUFFIX.length()));
+        }
+
+        Map<String, String> shards = new LinkedHashMap<>();
+        for (String name : names)
+            shards.put(name, getString(SHARD_PREFIX + name + FILTER_SUFFIX, null));
+        return shards;
+    }
+
+    /**
+     * Gets the properties other than routes whose values differ from another configuration.
+     * Changes to these properties need a restart.
+     *
+     * @param other the other configuration
+     * @return the keys of the changed properties, in order
+     */
+    public List<String> getChangedStartupProperties(DaemonConfig other) {
+        TreeSet<String> keys = new TreeSet<>(properties.stringPropertyNames());
+        keys.addAll(other.properties.stringPropertyNames());
+
+        List<String> changed = new ArrayList<>();
+        for (String key : keys) {
+            if (!key.startsWith(ROUTE_PREFIX) && !Objects.equals(getString(key, null), other.getString(key, null)))
+                changed.add(key);
+        }
+        return changed;
+    }
+}
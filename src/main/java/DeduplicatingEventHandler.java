@@ -0,0 +1,278 @@
+import java.util.Map;
+
+/**
+ * An <code>IEventHandler</code> decorator that drops business events already seen within a time
+ * window, such as events redelivered by a durable subscription after a reconnect.
+ *
+ * Events are identified by the values of their key properties, by default the panel id and serial
+ * number of hardware events, hashed to 64 bits. The hashes are held in an open-addressing table
+ * of primitive longs alongside a ring of the same hashes in arrival order, so memory use is fixed
+ * by the maximum number of entries. The oldest entries are evicted when they leave the window or
+ * when the ring is full. Events without the key properties are always passed on. All other
+ * callbacks are forwarded directly.
+ */
+public class DeduplicatingEventHandler implements IEventHandler {
+    private static final String[] DEFAULT_KEY_PROPERTIES = { BusinessEvent.PANEL_ID, BusinessEvent.SERIAL_NUMBER };
+    private static final long EMPTY = 0;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final IEventHandler handler;
+    private final String[] keyProperties;
+    private final long windowNanos;
+
+    // Hash table of event keys; a slot holds EMPTY when free
+    private final long[] keys;
+    private final int mask;
+
+    // Ring of event keys and arrival times, oldest at head
+    private final long[] ringKeys;
+    private final long[] ringTimes;
+    private int ringHead;
+    private int ringSize;
+
+    private long duplicateCount;
+    private long uniqueCount;
+    private long unkeyedCount;
+
+    /**
+     * Creates a new <code>DeduplicatingEventHandler</code> instance keyed by panel id and serial
+     * number.
+     *
+     * @param handler the event handler that will process the events
+     * @param windowMillis how long an event is remembered
+     * @param maxEntries the maximum number of events remembered
+     */
+    public DeduplicatingEventHandler(IEventHandler handler, long windowMillis, int maxEntries) {
+        this(handler, windowMillis, maxEntries, DEFAULT_KEY_PROPERTIES);
+    }
+
+    /**
+     * Creates a new <code>DeduplicatingEventHandler</code> instance.
+     *
+     * @param handler the event handler that will process the events
+     * @param windowMillis how long an event is remembered
+     * @param maxEntries the maximum number of events remembered
+     * @param keyProperties the properties that together identify an event
+     */
+    public DeduplicatingEventHandler(IEventHandler handler, long windowMillis, int maxEntries, String... keyProperties) {
+        if (maxEntries < 1 || keyProperties.length == 0)
+            throw new IllegalArgumentException("At least one entry and one key property are required");
+
+        this.handler = handler;
+        this.keyProperties = keyProperties.clone();
+        this.windowNanos = windowMillis * 1000000L;
+
+        // Keep the table at most half full so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(maxEntries, 2) * 2 - 1) << 1;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        ringKeys = new long[maxEntries];
+        ringTimes = new long[maxEntries];
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        long key = hashKey(businessEvent);
+        if (key != EMPTY && !markSeen(key, System.nanoTime()))
+            return;
+
+        handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Determines if an event has all the key properties, so that a duplicate of it is recognized.
+     *
+     * @param businessEvent the event
+     * @return true if the event is keyed
+     */
+    public boolean hasKey(BusinessEvent businessEvent) {
+        for (String property : keyProperties) {
+            if (businessEvent.getString(property) == null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of events dropped as duplicates.
+     *
+     * @return the duplicate count
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Gets the number of keyed events passed on because they had not been seen.
+     *
+     * @return the unique count
+     */
+    public synchronized long getUniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * Gets the number of events passed on because they had no key properties.
+     *
+     * @return the unkeyed count
+     */
+    public synchronized long getUnkeyedCount() {
+        return unkeyedCount;
+    }
+
+    /**
+     * Gets the fraction of keyed events that were duplicates.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long total = duplicateCount + uniqueCount;
+        return total == 0 ? 0 : (double)duplicateCount / total;
+    }
+
+    /**
+     * Gets the number of events currently remembered.
+     *
+     * @return the entry count
+     */
+    public synchronized int getEntryCount() {
+        return ringSize;
+    }
+
+    /**
+     * Records an event key.
+     *
+     * @return true if the key was not seen within the window
+     */
+    private synchronized boolean markSeen(long key, long nowNanos) {
+        evictOlderThan(nowNanos - windowNanos);
+
+        int slot = (int)mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                duplicateCount++;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (ringSize == ringKeys.length) {
+            // Eviction may shift keys back into the free slot, so probe again
+            evictOldest();
+            slot = (int)mix(key) & mask;
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        int tail = (ringHead + ringSize) % ringKeys.length;
+        ringKeys[tail] = key;
+        ringTimes[tail] = nowNanos;
+        ringSize++;
+        uniqueCount++;
+        return true;
+    }
+
+    private void evictOlderThan(long oldestNanos) {
+        while (ringSize > 0 && ringTimes[ringHead] - oldestNanos < 0)
+            evictOldest();
+    }
+
+    private void evictOldest() {
+        remove(ringKeys[ringHead]);
+        ringHead = (ringHead + 1) % ringKeys.length;
+        ringSize--;
+    }
+
+    /**
+     * Removes a key from the table, shifting back later keys of the same probe sequence so that
+     * no tombstones are needed.
+     */
+    private void remove(long key) {
+        int slot = (int)mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY)
+                return;
+            slot = (slot + 1) & mask;
+        }
+
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = (int)mix(keys[next]) & mask;
+            // Move the key back if its home slot is not between the free slot and where it is
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = EMPTY;
+    }
+
+    /**
+     * Hashes the key property values of an event with 64-bit FNV-1a.
+     *
+     * @return the hash, or <code>EMPTY</code> if a key property is missing
+     */
+    private long hashKey(BusinessEvent businessEvent) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String property : keyProperties) {
+            String value = businessEvent.getString(property);
+            if (value == null) {
+                synchronized (this) {
+                    unkeyedCount++;
+                }
+                return EMPTY;
+            }
+
+            for (int i = 0; i < value.length(); i++)
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            // Separate the values, so "1","23" and "12","3" differ
+            hash = (hash ^ 0xFFFF) * FNV_PRIME;
+        }
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An <code>IEventHandler</code> decorator that hands business events to a pool of worker threads
+ * through a bounded queue, so a slow handler does not stall the SignalR receive thread.
+ *
+ * Business events are delivered from the worker threads, so the wrapped handler must be thread
+ * safe when more than one worker is used. All other callbacks are forwarded directly on the
+ * calling thread.
+ */
+public class DispatchingEventHandler implements IEventHandler, Closeable {
+    /**
+     * A business event waiting in the queue, with the time it was received.
+     */
+    static class QueuedEvent {
+        final BusinessEvent businessEvent;
+        final long enqueuedNanos;
+
+        QueuedEvent(BusinessEvent businessEvent, long enqueuedNanos) {
+            this.businessEvent = businessEvent;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 5000;
+
+    private final IEventHandler handler;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final BackpressurePolicy policy;
+    private final EventSpillFile spillFile;
+    private final Object spillLock = new Object();
+    private final Thread[] workers;
+    private volatile boolean running = true;
+
+    private final AtomicLong spillPending = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long lastLagNanos;
+
+    /**
+     * Creates a new <code>DispatchingEventHandler</code> instance and starts its workers.
+     *
+     * @param handler the event handler that will process the events
+     * @param capacity the maximum number of events held in memory
+     * @param workerCount the number of worker threads
+     * @param policy what to do with new events when the queue is full
+     * @exception IOException if the spill file could not be created
+     */
+    public DispatchingEventHandler(IEventHandler handler, int capacity, int workerCount, BackpressurePolicy policy) throws IOException {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("At least one worker is required");
+
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.spillFile = policy == BackpressurePolicy.SPILL ? new EventSpillFile() : null;
+
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::runWorker, "event-dispatch-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        if (!running) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        QueuedEvent queuedEvent = new QueuedEvent(businessEvent, System.nanoTime());
+        switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(queuedEvent);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCount.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(queuedEvent)) {
+                    if (queue.poll() != null)
+                        droppedCount.incrementAndGet();
+                }
+                break;
+            default:
+                offerOrSpill(queuedEvent);
+                break;
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the number of events waiting to be handled, including spilled events.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth() {
+        return queue.size() + spillPending.get();
+    }
+
+    /**
+     * Gets the number of events waiting in the spill file.
+     *
+     * @return the spill file depth
+     */
+    public long getSpillDepth() {
+        return spillPending.get();
+    }
+
+    /**
+     * Gets the time the most recently dispatched event spent waiting for a worker.
+     *
+     * @return the dispatch lag in milliseconds
+     */
+    public long getLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLagNanos);
+    }
+
+    /**
+     * Gets how long the event at the head of the in-memory queue has been waiting.
+     *
+     * @return the age of the oldest queued event in milliseconds, or 0 if the queue is empty
+     */
+    public long getOldestEventAgeMillis() {
+        QueuedEvent head = queue.peek();
+        return head == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - head.enqueuedNanos);
+    }
+
+    /**
+     * Gets the number of events passed to the wrapped handler.
+     *
+     * @return the number of dispatched events
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * Gets the number of events discarded because the queue was full or closed.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the number of events written to the spill file.
+     *
+     * @return the number of spilled events
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * Gets the number of events for which the wrapped handler threw an exception.
+     *
+     * @return the number of failed events
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Stops accepting events and waits for the queued events to be handled.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all queued events were handled before the timeout
+     * @exception InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis > 0)
+                worker.join(remainingMillis);
+        }
+
+        boolean drained = getQueueDepth() == 0;
+        for (Thread worker : workers)
+            worker.interrupt();
+
+        return drained;
+    }
+
+    /**
+     * Stops the workers, waiting a few seconds for queued events to be handled.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            shutdown(DEFAULT_DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            if (spillFile != null)
+                spillFile.close();
+        }
+    }
+
+    /**
+     * Takes events off the queue and passes them to the wrapped handler until the dispatcher is
+     * closed and no events remain.
+     */
+    private void runWorker() {
+        try {
+            while (running || getQueueDepth() > 0) {
+                QueuedEvent queuedEvent = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                refillFromSpillFile();
+                if (queuedEvent != null)
+                    dispatch(queuedEvent);
+            }
+        }
+        catch (InterruptedException e) {
+            // Closed before the queue drained
+        }
+    }
+
+    private void dispatch(QueuedEvent queuedEvent) {
+        lastLagNanos = System.nanoTime() - queuedEvent.enqueuedNanos;
+        try {
+            handler.onBusinessEvent(queuedEvent.businessEvent);
+        }
+        catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            System.err.format("Error: event handler failed: %s%n", e);
+        }
+        dispatchedCount.incrementAndGet();
+    }
+
+    /**
+     * Queues an event if there is room and nothing has been spilled ahead of it, otherwise
+     * appends it to the spill file so that events stay in order.
+     */
+    private void offerOrSpill(QueuedEvent queuedEvent) {
+        synchronized (spillLock) {
+            if (spillPending.get() == 0 && queue.offer(queuedEvent))
+                return;
+
+            try {
+                spillFile.append(queuedEvent);
+                spillPending.incrementAndGet();
+                spilledCount.incrementAndGet();
+            }
+            catch (IOException e) {
+                droppedCount.incrementAndGet();
+                System.err.format("Error: could not spill event: %s%n", e);
+            }
+        }
+    }
+
+    /**
+     * Moves spilled events back into the queue while it has room.
+     */
+    private void refillFromSpillFile() {
+        if (spillPending.get() == 0)
+            return;
+
+        synchronized (spillLock) {
+            try {
+                while (spillPending.get() > 0 && queue.remainingCapacity() > 0) {
+                    QueuedEvent queuedEvent = spillFile.poll();
+                    spillPending.decrementAndGet();
+                    if (queuedEvent != null)
+                        queue.offer(queuedEvent);
+                }
+            }
+            catch (IOException e) {
+                droppedCount.addAndGet(spillPending.getAndSet(0));
+                System.err.format("Error: could not read spilled events: %s%n", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An <code>IEventHandler</code> decorator that adds OpenAccess instances referenced by a business
+ * event to the event, such as the cardholder of an access event, before passing it on.
+ *
+ * Each lookup reads a key property of the event and looks it up in an <code>EnrichmentCache</code>,
+ * adding the instance found as a new property. All lookups of an event are started before any is
+ * waited for, so they are loaded in parallel. An event whose lookups do not finish within the
+ * lookup timeout is passed on without the missing instances. Since the calling thread waits for
+ * lookups that miss the cache, this handler belongs behind a <code>DispatchingEventHandler</code>
+ * rather than on the receive thread. All other callbacks are forwarded directly.
+ */
+public class EnrichingEventHandler implements IEventHandler {
+    /**
+     * A property to look up and the property to add the result as.
+     */
+    private static class Lookup {
+        final String keyProperty;
+        final String targetProperty;
+        final EnrichmentCache<String, Map<String, Object>> cache;
+
+        Lookup(String keyProperty, String targetProperty, EnrichmentCache<String, Map<String, Object>> cache) {
+            this.keyProperty = keyProperty;
+            this.targetProperty = targetProperty;
+            this.cache = cache;
+        }
+    }
+
+    private final IEventHandler handler;
+    private final long lookupTimeoutNanos;
+    private final List<Lookup> lookups = new ArrayList<>();
+
+    private final AtomicLong enrichedCount = new AtomicLong();
+    private final AtomicLong notFoundCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Creates a new <code>EnrichingEventHandler</code> instance.
+     *
+     * @param handler the event handler that will process the enriched events
+     * @param lookupTimeoutMillis the longest time to wait for the lookups of an event
+     */
+    public EnrichingEventHandler(IEventHandler handler, long lookupTimeoutMillis) {
+        this.handler = handler;
+        this.lookupTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lookupTimeoutMillis);
+    }
+
+    /**
+     * Adds a lookup. Lookups must be added before events are received.
+     *
+     * @param keyProperty the event property holding the key, such as <code>cardholder_key</code>
+     * @param targetProperty the event property to add the instance as, such as
+     *     <code>cardholder</code>
+     * @param cache the cache that looks up instances by key
+     */
+    public void addLookup(String keyProperty, String targetProperty, EnrichmentCache<String, Map<String, Object>> cache) {
+        lookups.add(new Lookup(keyProperty, targetProperty, cache));
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        CompletableFuture<Map<String, Object>>[] results = new CompletableFuture[lookups.size()];
+        for (int i = 0; i < results.length; i++) {
+            String key = businessEvent.getString(lookups.get(i).keyProperty);
+            if (key != null)
+                results[i] = lookups.get(i).cache.get(key);
+        }
+
+        long deadline = System.nanoTime() + lookupTimeoutNanos;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null)
+                continue;
+
+            try {
+                Map<String, Object> instance = results[i].get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if (instance != null) {
+                    businessEvent.setProperty(lookups.get(i).targetProperty, instance);
+                    enrichedCount.incrementAndGet();
+                }
+                else
+                    notFoundCount.incrementAndGet();
+            }
+            catch (TimeoutException e) {
+                timedOutCount.incrementAndGet();
+            }
+            catch (ExecutionException e) {
+                failedCount.incrementAndGet();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the number of instances added to events.
+     *
+     * @return the enriched count
+     */
+    public long getEnrichedCount() {
+        return enrichedCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that found no instance.
+     *
+     * @return the not found count
+     */
+    public long getNotFoundCount() {
+        return notFoundCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that did not finish within the lookup timeout.
+     *
+     * @return the timed out count
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that failed.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
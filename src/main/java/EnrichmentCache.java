@@ -0,0 +1,349 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An asynchronous loading cache for values looked up by key, such as OpenAccess instances
+ * referenced by business events.
+ *
+ * A miss returns a future that completes when the value has been loaded. Concurrent misses on
+ * the same key share one load, and misses on different keys that arrive within the batch linger
+ * time are loaded together, up to the maximum batch size, on a small pool of loader threads.
+ * Values expire a fixed time after they were loaded, and the least recently used values are
+ * evicted beyond the maximum size. Keys the loader finds no value for are cached as
+ * <code>null</code>, so missing instances are not looked up for every event. Failed loads are
+ * not cached.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class EnrichmentCache<K, V> {
+    /**
+     * Loads the values of several keys at once.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    @FunctionalInterface
+    public interface BatchLoader<K, V> {
+        /**
+         * Loads the values of the given keys.
+         *
+         * @param keys the keys to load
+         * @return the values found, by key; keys without a value may be left out
+         * @exception Exception if the values could not be loaded
+         */
+        Map<K, V> loadAll(Collection<K> keys) throws Exception;
+    }
+
+    /**
+     * A cached value, or a load in progress.
+     */
+    private static class Entry<K, V> {
+        final K key;
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        volatile long expiresNanos = Long.MAX_VALUE;
+
+        Entry(K key) {
+            this.key = key;
+        }
+    }
+
+    private final String name;
+    private final BatchLoader<K, V> loader;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final int maxBatchSize;
+    private final long batchLingerMillis;
+    private final ScheduledExecutorService loaderThreads;
+
+    private final LinkedHashMap<K, Entry<K, V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentLinkedQueue<Entry<K, V>> pendingEntries = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean batchScheduled = new AtomicBoolean();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong loadedKeyCount = new AtomicLong();
+    private final AtomicLong failedLoadCount = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a new <code>EnrichmentCache</code> instance.
+     *
+     * @param name the cache name, used for the loader thread names
+     * @param loader loads the values of missed keys
+     * @param maxSize the maximum number of cached values
+     * @param ttlMillis how long a loaded value is used before it is loaded again
+     * @param maxBatchSize the maximum number of keys loaded together
+     * @param batchLingerMillis how long a miss waits for other misses to load with
+     * @param loaderThreadCount the number of loads that may run at the same time
+     */
+    public EnrichmentCache(String name, BatchLoader<K, V> loader, int maxSize, long ttlMillis, int maxBatchSize,
+            long batchLingerMillis, int loaderThreadCount) {
+        this.name = name;
+        this.loader = loader;
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.batchLingerMillis = batchLingerMillis;
+
+        AtomicLong threadNumber = new AtomicLong();
+        loaderThreads = Executors.newScheduledThreadPool(loaderThreadCount, runnable -> {
+            Thread thread = new Thread(runnable, "enrichment-" + name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the value of a key, loading it if it is not cached.
+     *
+     * @param key the key
+     * @return a future for the value, which is already complete if the value was cached, and
+     *     completes with <code>null</code> if the key has no value
+     */
+    public CompletableFuture<V> get(K key) {
+        Entry<K, V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresNanos - System.nanoTime() < 0) {
+                entries.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                entry = new Entry<>(key);
+                entries.put(key, entry);
+                evictIfFull();
+                missCount.incrementAndGet();
+                pendingEntries.add(entry);
+            }
+            else if (entry.future.isDone()) {
+                hitCount.incrementAndGet();
+                return entry.future;
+            }
+            else {
+                coalescedCount.incrementAndGet();
+                return entry.future;
+            }
+        }
+
+        if (batchScheduled.compareAndSet(false, true))
+            loaderThreads.schedule(this::loadPendingEntries, batchLingerMillis, TimeUnit.MILLISECONDS);
+        return entry.future;
+    }
+
+    /**
+     * Removes all cached values. Loads in progress complete, but their values are not cached.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Gets the cache name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of cached values, including loads in progress.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that started a load.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that joined a load already in progress.
+     *
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Gets the fraction of lookups that did not start a load.
+     *
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get() + coalescedCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    /**
+     * Gets the number of batch loads.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Gets the average number of keys per batch load.
+     *
+     * @return the average batch size
+     */
+    public double getAverageBatchSize() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : (double)loadedKeyCount.get() / loads;
+    }
+
+    /**
+     * Gets the number of batch loads that failed.
+     *
+     * @return the failed load count
+     */
+    public long getFailedLoadCount() {
+        return failedLoadCount.get();
+    }
+
+    /**
+     * Gets the average time a batch load took.
+     *
+     * @return the average load latency in milliseconds
+     */
+    public double getAverageLoadMillis() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : totalLoadNanos.get() / 1e6 / loads;
+    }
+
+    /**
+     * Gets the longest time a batch load took.
+     *
+     * @return the maximum load latency in milliseconds
+     */
+    public double getMaxLoadMillis() {
+        return maxLoadNanos.get() / 1e6;
+    }
+
+    /**
+     * Gets the number of values evicted to keep within the maximum size.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Stops the loader threads. Loads in progress complete exceptionally.
+     */
+    public void close() {
+        loaderThreads.shutdownNow();
+    }
+
+    private void evictIfFull() {
+        Iterator<Entry<K, V>> eldest = entries.values().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Splits the keys missed since the last batch into loads of at most the maximum batch size.
+     */
+    private void loadPendingEntries() {
+        // Misses from now on schedule a new batch
+        batchScheduled.set(false);
+
+        List<Entry<K, V>> batch = new ArrayList<>(maxBatchSize);
+        Entry<K, V> entry;
+        while ((entry = pendingEntries.poll()) != null) {
+            batch.add(entry);
+            if (batch.size() == maxBatchSize) {
+                submitLoad(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty())
+            submitLoad(batch);
+    }
+
+    private void submitLoad(List<Entry<K, V>> batch) {
+        loaderThreads.execute(() -> load(batch));
+    }
+
+    private void load(List<Entry<K, V>> batch) {
+        List<K> keys = new ArrayList<>(batch.size());
+        for (Entry<K, V> entry : batch)
+            keys.add(entry.key);
+
+        long startNanos = System.nanoTime();
+        Map<K, V> values;
+        try {
+            values = loader.loadAll(keys);
+        }
+        catch (Exception e) {
+            recordLoad(keys.size(), System.nanoTime() - startNanos);
+            failedLoadCount.incrementAndGet();
+            synchronized (entries) {
+                for (Entry<K, V> entry : batch)
+                    entries.remove(entry.key, entry);
+            }
+            for (Entry<K, V> entry : batch)
+                entry.future.completeExceptionally(e);
+            return;
+        }
+
+        long loadedNanos = System.nanoTime();
+        recordLoad(keys.size(), loadedNanos - startNanos);
+        for (Entry<K, V> entry : batch) {
+            entry.expiresNanos = loadedNanos + ttlNanos;
+            entry.future.complete(values == null ? null : values.get(entry.key));
+        }
+    }
+
+    private void recordLoad(int keyCount, long nanos) {
+        loadCount.incrementAndGet();
+        loadedKeyCount.addAndGet(keyCount);
+        totalLoadNanos.addAndGet(nanos);
+        maxLoadNanos.accumulateAndGet(nanos, Math::max);
+    }
+}
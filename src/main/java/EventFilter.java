@@ -0,0 +1,476 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A business event filter compiled from the same expression syntax as
+ * <code>EventSubscription.filter</code>, such as
+ * <code>business_event_class eq 'hardware_event' and panel_id eq 12</code>.
+ *
+ * Supported are the comparison operators <code>eq</code>, <code>ne</code>, <code>gt</code>,
+ * <code>ge</code>, <code>lt</code> and <code>le</code>; the logical operators <code>and</code>,
+ * <code>or</code> and <code>not</code>; parentheses; the functions <code>startswith</code>,
+ * <code>endswith</code> and <code>contains</code>; and string, number, boolean and
+ * <code>null</code> literals. The expression is parsed once into a tree of predicates that read
+ * event properties through <code>BusinessEvent</code>, so evaluating it parses nothing and builds
+ * no property map.
+ *
+ * A property that is missing or null only equals <code>null</code>; it is not equal to, greater
+ * than or less than any other value.
+ */
+public class EventFilter {
+    private enum TokenType { IDENTIFIER, STRING, NUMBER, LEFT_PAREN, RIGHT_PAREN, COMMA, END }
+
+    private static class Token {
+        final TokenType type;
+        final String text;
+
+        Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    /**
+     * An operand of a comparison: either a property of the event or a literal.
+     */
+    private static class Operand {
+        final String property;
+        final Object literal;
+
+        Operand(String property, Object literal) {
+            this.property = property;
+            this.literal = literal;
+        }
+
+        boolean isProperty() {
+            return property != null;
+        }
+    }
+
+    /**
+     * A compiled expression together with the event classes it is limited to.
+     */
+    private static class Node {
+        final Predicate<BusinessEvent> predicate;
+        final Set<String> eventClasses;
+        final boolean eventClassesOnly;
+
+        Node(Predicate<BusinessEvent> predicate, Set<String> eventClasses, boolean eventClassesOnly) {
+            this.predicate = predicate;
+            this.eventClasses = eventClasses;
+            this.eventClassesOnly = eventClassesOnly;
+        }
+    }
+
+    private final String expression;
+    private final Predicate<BusinessEvent> predicate;
+    private final Set<String> eventClasses;
+    private final boolean eventClassesOnly;
+
+    private final List<Token> tokens;
+    private int position;
+
+    private EventFilter(String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+
+        Node root = parseOr();
+        if (peek().type != TokenType.END)
+            throw error("Unexpected '" + peek().text + "'");
+
+        predicate = root.predicate;
+        eventClasses = root.eventClasses == null ? null : Collections.unmodifiableSet(root.eventClasses);
+        eventClassesOnly = root.eventClassesOnly;
+    }
+
+    /**
+     * Compiles a filter expression. An empty expression matches every event.
+     *
+     * @param expression the filter expression
+     * @return the compiled filter
+     * @exception IllegalArgumentException if the expression is not valid
+     */
+    public static EventFilter compile(String expression) {
+        return new EventFilter(expression == null ? "" : expression.trim());
+    }
+
+    /**
+     * Evaluates the filter against an event.
+     *
+     * @param businessEvent the event
+     * @return true if the event matches the filter
+     */
+    public boolean matches(BusinessEvent businessEvent) {
+        return predicate.test(businessEvent);
+    }
+
+    /**
+     * Gets the business event classes that can match the filter, for indexing.
+     *
+     * @return the event classes, or <code>null</code> if events of any class can match
+     */
+    public Set<String> getEventClasses() {
+        return eventClasses;
+    }
+
+    /**
+     * Determines whether the filter selects events by business event class and nothing else, so
+     * that an event of one of the classes from <code>getEventClasses</code> always matches.
+     *
+     * @return true if only the event class is tested
+     */
+    public boolean isEventClassesOnly() {
+        return eventClassesOnly;
+    }
+
+    /**
+     * Determines whether the filter matches every event.
+     *
+     * @return true if the expression is empty
+     */
+    public boolean matchesAll() {
+        return expression.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private Node parseOr() {
+        if (peek().type == TokenType.END && tokens.size() == 1)
+            return new Node(businessEvent -> true, null, false);
+
+        Node node = parseAnd();
+        while (isKeyword(peek(), "or")) {
+            next();
+            Node left = node;
+            Node right = parseAnd();
+            Set<String> eventClasses = null;
+            if (left.eventClasses != null && right.eventClasses != null) {
+                eventClasses = new LinkedHashSet<>(left.eventClasses);
+                eventClasses.addAll(right.eventClasses);
+            }
+            node = new Node(left.predicate.or(right.predicate), eventClasses,
+                left.eventClassesOnly && right.eventClassesOnly);
+        }
+        return node;
+    }
+
+    private Node parseAnd() {
+        Node node = parseNot();
+        while (isKeyword(peek(), "and")) {
+            next();
+            Node left = node;
+            Node right = parseNot();
+            Set<String> eventClasses;
+            if (left.eventClasses == null)
+                eventClasses = right.eventClasses;
+            else if (right.eventClasses == null)
+                eventClasses = left.eventClasses;
+            else {
+                eventClasses = new LinkedHashSet<>(left.eventClasses);
+                eventClasses.retainAll(right.eventClasses);
+            }
+            node = new Node(left.predicate.and(right.predicate), eventClasses, false);
+        }
+        return node;
+    }
+
+    private Node parseNot() {
+        if (isKeyword(peek(), "not")) {
+            next();
+            Node operand = parseNot();
+            return new Node(operand.predicate.negate(), null, false);
+        }
+        return parsePrimary();
+    }
+
+    private Node parsePrimary() {
+        Token token = peek();
+        if (token.type == TokenType.LEFT_PAREN) {
+            next();
+            Node node = parseOr();
+            expect(TokenType.RIGHT_PAREN);
+            return node;
+        }
+
+        if (token.type == TokenType.IDENTIFIER && tokens.get(position + 1).type == TokenType.LEFT_PAREN)
+            return parseFunction();
+
+        Operand left = parseOperand();
+        Token operator = next();
+        if (operator.type != TokenType.IDENTIFIER)
+            throw error("Expected a comparison operator but found '" + operator.text + "'");
+        Operand right = parseOperand();
+
+        String op = operator.text.toLowerCase(Locale.ROOT);
+        Predicate<BusinessEvent> predicate = compileComparison(left, op, right);
+
+        // Remember event class equality terms, so routers can index the filter by event class
+        if (op.equals("eq") && left.isProperty() && left.property.equals(BusinessEvent.BUSINESS_EVENT_CLASS)
+                && right.literal instanceof String) {
+            Set<String> eventClasses = new LinkedHashSet<>();
+            eventClasses.add((String)right.literal);
+            return new Node(predicate, eventClasses, true);
+        }
+        return new Node(predicate, null, false);
+    }
+
+    private Node parseFunction() {
+        String name = next().text.toLowerCase(Locale.ROOT);
+        expect(TokenType.LEFT_PAREN);
+        Operand subject = parseOperand();
+        expect(TokenType.COMMA);
+        Operand argument = parseOperand();
+        expect(TokenType.RIGHT_PAREN);
+
+        if (!subject.isProperty() || !(argument.literal instanceof String))
+            throw error(name + " takes a property and a string literal");
+
+        String property = subject.property;
+        String value = (String)argument.literal;
+        switch (name) {
+            case "startswith":
+                return new Node(businessEvent -> {
+                    String text = businessEvent.getString(property);
+                    return text != null && text.startsWith(value);
+                }, null, false);
+            case "endswith":
+                return new Node(businessEvent -> {
+                    String text = businessEvent.getString(property);
+                    return text != null && text.endsWith(value);
+                }, null, false);
+            case "contains":
+                return new Node(businessEvent -> {
+                    String text = businessEvent.getString(property);
+                    return text != null && text.contains(value);
+                }, null, false);
+            default:
+                throw error("Unknown function '" + name + "'");
+        }
+    }
+
+    private Operand parseOperand() {
+        Token token = next();
+        switch (token.type) {
+            case STRING:
+                return new Operand(null, token.text);
+            case NUMBER:
+                return new Operand(null, Double.parseDouble(token.text));
+            case IDENTIFIER:
+                String keyword = token.text.toLowerCase(Locale.ROOT);
+                if (keyword.equals("true") || keyword.equals("false"))
+                    return new Operand(null, Boolean.valueOf(keyword));
+                if (keyword.equals("null"))
+                    return new Operand(null, null);
+                return new Operand(token.text, null);
+            default:
+                throw error("Expected a property or a literal but found '" + token.text + "'");
+        }
+    }
+
+    /**
+     * Compiles a comparison into a predicate specialized for the operand types.
+     */
+    private Predicate<BusinessEvent> compileComparison(Operand left, String op, Operand right) {
+        if (!isComparison(op))
+            throw error("Unknown operator '" + op + "'");
+
+        // Normalize literal-first comparisons such as 5 lt panel_id
+        if (!left.isProperty() && right.isProperty())
+            return compileComparison(right, mirror(op), left);
+
+        if (!left.isProperty()) {
+            boolean result = compare(left.literal, op, right.literal);
+            return businessEvent -> result;
+        }
+
+        String property = left.property;
+        if (right.isProperty()) {
+            String otherProperty = right.property;
+            return businessEvent -> compare(valueOf(businessEvent, property), op, valueOf(businessEvent, otherProperty));
+        }
+
+        Object literal = right.literal;
+        if (literal == null) {
+            boolean wantNull = op.equals("eq");
+            if (!wantNull && !op.equals("ne"))
+                throw error("null can only be compared with eq or ne");
+            return businessEvent -> businessEvent.has(property) != wantNull;
+        }
+
+        if (literal instanceof Double) {
+            double number = (Double)literal;
+            switch (op) {
+                case "eq": return businessEvent -> businessEvent.getDouble(property, Double.NaN) == number;
+                case "ne": return businessEvent -> !(businessEvent.getDouble(property, Double.NaN) == number);
+                case "gt": return businessEvent -> businessEvent.getDouble(property, Double.NaN) > number;
+                case "ge": return businessEvent -> businessEvent.getDouble(property, Double.NaN) >= number;
+                case "lt": return businessEvent -> businessEvent.getDouble(property, Double.NaN) < number;
+                default: return businessEvent -> businessEvent.getDouble(property, Double.NaN) <= number;
+            }
+        }
+
+        if (literal instanceof String) {
+            String text = (String)literal;
+            switch (op) {
+                case "eq": return businessEvent -> text.equals(businessEvent.getString(property));
+                case "ne": return businessEvent -> !text.equals(businessEvent.getString(property));
+                default: return businessEvent -> {
+                    String value = businessEvent.getString(property);
+                    return value != null && test(value.compareTo(text), op);
+                };
+            }
+        }
+
+        boolean flag = (Boolean)literal;
+        switch (op) {
+            case "eq": return businessEvent -> businessEvent.has(property) && businessEvent.getBoolean(property, !flag) == flag;
+            case "ne": return businessEvent -> !businessEvent.has(property) || businessEvent.getBoolean(property, !flag) != flag;
+            default: throw error("Booleans can only be compared with eq or ne");
+        }
+    }
+
+    /**
+     * Reads a property for a comparison with another property: a number if it is numeric,
+     * otherwise its string value.
+     */
+    private static Object valueOf(BusinessEvent businessEvent, String property) {
+        if (!businessEvent.has(property))
+            return null;
+
+        double number = businessEvent.getDouble(property, Double.NaN);
+        return Double.isNaN(number) ? businessEvent.getString(property) : (Object)number;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean compare(Object left, String op, Object right) {
+        if (left == null || right == null) {
+            boolean equal = left == right;
+            return op.equals("eq") ? equal : op.equals("ne") && !equal;
+        }
+        if (left instanceof Comparable && left.getClass() == right.getClass())
+            return test(((Comparable<Object>)left).compareTo(right), op);
+        return op.equals("ne");
+    }
+
+    private static boolean test(int comparison, String op) {
+        switch (op) {
+            case "eq": return comparison == 0;
+            case "ne": return comparison != 0;
+            case "gt": return comparison > 0;
+            case "ge": return comparison >= 0;
+            case "lt": return comparison < 0;
+            default: return comparison <= 0;
+        }
+    }
+
+    private static boolean isComparison(String op) {
+        switch (op) {
+            case "eq": case "ne": case "gt": case "ge": case "lt": case "le":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String mirror(String op) {
+        switch (op) {
+            case "gt": return "lt";
+            case "ge": return "le";
+            case "lt": return "gt";
+            case "le": return "ge";
+            default: return op;
+        }
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    private Token next() {
+        Token token = tokens.get(position);
+        if (token.type != TokenType.END)
+            position++;
+        return token;
+    }
+
+    private void expect(TokenType type) {
+        Token token = next();
+        if (token.type != type)
+            throw error("Expected " + type + " but found '" + token.text + "'");
+    }
+
+    private static boolean isKeyword(Token token, String keyword) {
+        return token.type == TokenType.IDENTIFIER && token.text.equalsIgnoreCase(keyword);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " in filter: " + expression);
+    }
+
+    private List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (c == '(') {
+                tokens.add(new Token(TokenType.LEFT_PAREN, "("));
+                i++;
+            }
+            else if (c == ')') {
+                tokens.add(new Token(TokenType.RIGHT_PAREN, ")"));
+                i++;
+            }
+            else if (c == ',') {
+                tokens.add(new Token(TokenType.COMMA, ","));
+                i++;
+            }
+            else if (c == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= text.length())
+                        throw new IllegalArgumentException("Unterminated string in filter: " + text);
+                    char s = text.charAt(i++);
+                    if (s == '\'') {
+                        if (i < text.length() && text.charAt(i) == '\'') {
+                            value.append('\'');
+                            i++;
+                        }
+                        else
+                            break;
+                    }
+                    else
+                        value.append(s);
+                }
+                tokens.add(new Token(TokenType.STRING, value.toString()));
+            }
+            else if (Character.isDigit(c) || (c == '-' && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1)))) {
+                int start = i++;
+                while (i < text.length() && (Character.isDigit(text.charAt(i)) || ".eE+-".indexOf(text.charAt(i)) >= 0))
+                    i++;
+                tokens.add(new Token(TokenType.NUMBER, text.substring(start, i)));
+            }
+            else if (Character.isLetter(c) || c == '_') {
+                int start = i++;
+                while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_' || text.charAt(i) == '.'))
+                    i++;
+                tokens.add(new Token(TokenType.IDENTIFIER, text.substring(start, i)));
+            }
+            else
+                throw new IllegalArgumentException("Unexpected character '" + c + "' in filter: " + text);
+        }
+        tokens.add(new Token(TokenType.END, "end of filter"));
+        return tokens;
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapts a per-event <code>IEventHandler</code> to <code>IBatchEventHandler</code> by delivering
+ * each event of a batch in turn.
+ */
+class EventHandlerBatchAdapter implements IBatchEventHandler {
+    private final IEventHandler handler;
+
+    /**
+     * Creates a new <code>EventHandlerBatchAdapter</code> instance.
+     *
+     * @param handler the per-event handler
+     */
+    EventHandlerBatchAdapter(IEventHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void onBusinessEvents(List<Map<String, Object>> businessEvents) {
+        for (Map<String, Object> businessEvent : businessEvents)
+            handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onBusinessEventBatch(List<BusinessEvent> businessEvents) {
+        for (BusinessEvent businessEvent : businessEvents)
+            handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        handler.onBusinessEvent(businessEvent);
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An <code>IEventHandler</code> that routes each business event to the handlers whose filters match
+ * it. Routes can come from bridge subscriptions, so several subscriptions can share one bridge
+ * connection, or be local filters that split one broad subscription between many handlers.
+ *
+ * Filters are compiled with <code>EventFilter</code>, and routes are compiled into a table keyed by
+ * business event class, so routing an event is one hash lookup plus the evaluation of only those
+ * filters that test more than the event class. All other callbacks are forwarded to every handler.
+ */
+public class EventRouter implements IEventHandler {
+    /**
+     * A handler and the filter an event must match to reach it, or <code>null</code> if every
+     * event that reaches the route matches.
+     */
+    private static class Route {
+        final EventFilter filter;
+        final IEventHandler handler;
+
+        Route(EventFilter filter, IEventHandler handler) {
+            this.filter = filter;
+            this.handler = handler;
+        }
+    }
+
+    private static final Route[] NO_ROUTES = new Route[0];
+    private static final IEventHandler[] NO_HANDLERS = new IEventHandler[0];
+
+    private final List<EventSubscription> subscriptions = new ArrayList<>();
+    private final List<EventFilter> filters = new ArrayList<>();
+    private final List<IEventHandler> handlers = new ArrayList<>();
+    private volatile Map<String, Route[]> routesByClass = new HashMap<>();
+    private volatile Route[] unindexedRoutes = NO_ROUTES;
+    private volatile IEventHandler[] allHandlers = NO_HANDLERS;
+
+    /**
+     * Adds a route for the events of a bridge subscription and recompiles the routing table. The
+     * subscription is included in <code>createCombinedSubscription</code>.
+     *
+     * @param subscription the subscription whose filter selects the events
+     * @param handler the event handler for the selected events
+     * @exception IllegalArgumentException if the filter is not valid
+     */
+    public synchronized void addRoute(EventSubscription subscription, IEventHandler handler) {
+        addRoute(subscription.filter, handler);
+        subscriptions.add(subscription);
+    }
+
+    /**
+     * Adds a local route and recompiles the routing table.
+     *
+     * @param filter the filter expression that selects the events, or <code>null</code> for all
+     * @param handler the event handler for the selected events
+     * @exception IllegalArgumentException if the filter is not valid
+     */
+    public synchronized void addRoute(String filter, IEventHandler handler) {
+        filters.add(EventFilter.compile(filter));
+        handlers.add(handler);
+        compile();
+    }
+
+    /**
+     * Replaces all routes with those of another router and recompiles the routing table, so the
+     * routes of a running pipeline can be changed without stopping it. Events routed while the
+     * table is replaced reach either the old or the new handlers.
+     *
+     * @param source the router whose routes to copy
+     */
+    public synchronized void replaceRoutes(EventRouter source) {
+        synchronized (source) {
+            subscriptions.clear();
+            subscriptions.addAll(source.subscriptions);
+            filters.clear();
+            filters.addAll(source.filters);
+            handlers.clear();
+            handlers.addAll(source.handlers);
+        }
+        compile();
+    }
+
+    /**
+     * Gets the subscriptions routed by this router.
+     *
+     * @return the subscriptions, in the order they were added
+     */
+    public synchronized List<EventSubscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    /**
+     * Creates a single subscription whose filter selects the events of every subscription route.
+     *
+     * @param description the description of the combined subscription
+     * @return the combined subscription
+     */
+    public synchronized EventSubscription createCombinedSubscription(String description) {
+        EventSubscription combined = new EventSubscription();
+        combined.description = description;
+
+        StringBuilder filter = new StringBuilder();
+        for (EventSubscription subscription : subscriptions) {
+            combined.is_durable |= subscription.is_durable;
+            if (subscription.filter == null || subscription.filter.trim().isEmpty()) {
+                filter = null;
+                break;
+            }
+            if (filter.length() > 0)
+                filter.append(" or ");
+            filter.append('(').append(subscription.filter.trim()).append(')');
+        }
+        combined.filter = filter == null ? null : filter.toString();
+
+        return combined;
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        String businessEventClass = businessEvent.getBusinessEventClass();
+        Route[] routes = businessEventClass == null ? null : routesByClass.get(businessEventClass);
+        if (routes == null)
+            routes = unindexedRoutes;
+
+        for (Route route : routes) {
+            if (route.filter == null || route.filter.matches(businessEvent))
+                route.handler.onBusinessEvent(businessEvent);
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        for (IEventHandler handler : allHandlers)
+            handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        for (IEventHandler handler : allHandlers)
+            handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        for (IEventHandler handler : allHandlers)
+            handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        for (IEventHandler handler : allHandlers)
+            handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        for (IEventHandler handler : allHandlers)
+            handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        for (IEventHandler handler : allHandlers)
+            handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Builds the routing table from the current routes and publishes it. Each event class gets the
+     * routes indexed under it followed by the unindexed routes. A route whose filter tests only
+     * the event class needs no evaluation once indexed.
+     */
+    private void compile() {
+        Map<String, List<Route>> classRoutes = new HashMap<>();
+        List<Route> unindexed = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            EventFilter filter = filters.get(i);
+            IEventHandler handler = handlers.get(i);
+            if (filter.matchesAll())
+                unindexed.add(new Route(null, handler));
+            else if (filter.getEventClasses() == null)
+                unindexed.add(new Route(filter, handler));
+            else {
+                Route route = new Route(filter.isEventClassesOnly() ? null : filter, handler);
+                for (String eventClass : filter.getEventClasses())
+                    classRoutes.computeIfAbsent(eventClass, key -> new ArrayList<>()).add(route);
+            }
+        }
+
+        Map<String, Route[]> compiled = new HashMap<>();
+        for (Map.Entry<String, List<Route>> classRoute : classRoutes.entrySet()) {
+            List<Route> routes = new ArrayList<>(classRoute.getValue());
+            routes.addAll(unindexed);
+            compiled.put(classRoute.getKey(), routes.toArray(NO_ROUTES));
+        }
+
+        routesByClass = compiled;
+        unindexedRoutes = unindexed.toArray(NO_ROUTES);
+        allHandlers = new LinkedHashSet<>(handlers).toArray(NO_HANDLERS);
+    }
+}
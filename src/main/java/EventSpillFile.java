@@ -0,0 +1,105 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A first-in first-out overflow file for queued business events, one event per line: the time it
+ * was queued followed by its JSON properties. The file is truncated whenever the reader catches
+ * up with the writer.
+ */
+class EventSpillFile implements Closeable {
+    private final Path path;
+    private BufferedWriter writer;
+    private BufferedReader reader;
+    private long pendingCount;
+
+    /**
+     * Creates a new <code>EventSpillFile</code> instance backed by a new temporary file.
+     *
+     * @exception IOException if the file could not be created
+     */
+    EventSpillFile() throws IOException {
+        path = Files.createTempFile("event-spill-", ".ndjson");
+        path.toFile().deleteOnExit();
+    }
+
+    /**
+     * Appends an event to the end of the file.
+     *
+     * @param queuedEvent the queued event
+     * @exception IOException if the event could not be written
+     */
+    synchronized void append(DispatchingEventHandler.QueuedEvent queuedEvent) throws IOException {
+        if (writer == null)
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        writer.write(Long.toString(queuedEvent.enqueuedNanos));
+        writer.write(' ');
+        writer.write(queuedEvent.businessEvent.toJson());
+        writer.newLine();
+        pendingCount++;
+    }
+
+    /**
+     * Removes the event at the head of the file.
+     *
+     * @return the queued event, or <code>null</code> if the file is empty
+     * @exception IOException if the event could not be read
+     */
+    synchronized DispatchingEventHandler.QueuedEvent poll() throws IOException {
+        if (pendingCount == 0)
+            return null;
+
+        writer.flush();
+        if (reader == null)
+            reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+
+        String line = reader.readLine();
+        int separator = line.indexOf(' ');
+        long enqueuedNanos = Long.parseLong(line.substring(0, separator));
+        BusinessEvent businessEvent = BusinessEvent.parse(line.substring(separator + 1));
+        if (--pendingCount == 0)
+            truncate();
+
+        return new DispatchingEventHandler.QueuedEvent(businessEvent, enqueuedNanos);
+    }
+
+    /**
+     * Gets the number of events waiting in the file.
+     *
+     * @return the number of spilled events
+     */
+    synchronized long size() {
+        return pendingCount;
+    }
+
+    /**
+     * Closes and deletes the file, discarding any events still in it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeStreams();
+        Files.deleteIfExists(path);
+    }
+
+    private void truncate() throws IOException {
+        closeStreams();
+        Files.newOutputStream(path, StandardOpenOption.TRUNCATE_EXISTING).close();
+    }
+
+    private void closeStreams() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of business events on disk, written through memory-mapped segment files.
+ *
+ * Each event is stored as its length, a CRC-32C checksum and its JSON text. Segments have a fixed
+ * size and are numbered, so an event's offset is its position in the log as a whole: the segment
+ * number times the segment size plus the position in the segment. A new segment is started when
+ * an event does not fit in the current one.
+ *
+ * Appended events are forced to disk in batches, once enough events are pending or the sync
+ * interval elapses. Consumers read with a <code>Cursor</code> and commit the offset they have
+ * handled, which survives a restart. Segments that every consumer has read past are deleted.
+ */
+public class EventSpool implements Closeable {
+    /**
+     * Reads events from the spool in order, starting from an offset.
+     */
+    public class Cursor {
+        private final String consumer;
+        private volatile long offset;
+        private byte[] bytes = new byte[1024];
+
+        private Cursor(String consumer, long offset) {
+            this.consumer = consumer;
+            this.offset = offset;
+        }
+
+        /**
+         * Reads the next event.
+         *
+         * @return the event, or <code>null</code> if the cursor has caught up with the writer
+         * @exception IOException if the segment could not be read
+         */
+        public BusinessEvent next() throws IOException {
+            while (offset < writeOffset) {
+                long segmentNumber = offset / segmentSize;
+                int position = (int)(offset % segmentSize);
+                MappedByteBuffer segment = getSegment(segmentNumber);
+                int length = segment.getInt(position);
+                if (length <= 0) {
+                    offset = (segmentNumber + 1) * segmentSize;
+                    continue;
+                }
+
+                if (length > bytes.length)
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                segment.get(position + RECORD_HEADER_SIZE, bytes, 0, length);
+                offset += RECORD_HEADER_SIZE + length;
+                return BusinessEvent.parse(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return null;
+        }
+
+        /**
+         * Gets the offset of the next event to read.
+         *
+         * @return the offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Records that the consumer has handled every event before the current offset. After a
+         * restart, the consumer resumes from here.
+         *
+         * @exception IOException if the offset could not be written
+         */
+        public void commit() throws IOException {
+            commitOffset(consumer, offset);
+        }
+    }
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String OFFSET_SUFFIX = ".offset";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int syncBatchSize;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> committedOffsets = new ConcurrentHashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private final ScheduledExecutorService syncTimer;
+
+    private volatile long firstSegmentNumber;
+    private MappedByteBuffer writeSegment;
+    private long writeSegmentNumber;
+    private volatile long writeOffset;
+    private int pendingSyncCount;
+    private long appendedCount;
+    private long syncCount;
+
+    /**
+     * Opens a spool, creating the directory if needed, and recovers the end of the log from the
+     * last segment.
+     *
+     * @param directory the directory holding the segment and offset files
+     * @param segmentSize the size of each segment file in bytes
+     * @param syncBatchSize the number of appended events after which the segment is forced to disk
+     * @param syncIntervalMillis the longest time appended events wait to be forced to disk, or 0
+     *     to force only by batch size
+     * @exception IOException if the spool could not be opened
+     */
+    public EventSpool(Path directory, int segmentSize, int syncBatchSize, long syncIntervalMillis) throws IOException {
+        if (segmentSize < 4096)
+            throw new IllegalArgumentException("The segment size must be at least 4096 bytes");
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.syncBatchSize = Math.max(syncBatchSize, 1);
+
+        long firstSegmentNumber = Long.MAX_VALUE;
+        long lastSegmentNumber = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long segmentNumber = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    firstSegmentNumber = Math.min(firstSegmentNumber, segmentNumber);
+                    lastSegmentNumber = Math.max(lastSegmentNumber, segmentNumber);
+                }
+                else if (name.endsWith(OFFSET_SUFFIX))
+                    committedOffsets.put(name.substring(0, name.length() - OFFSET_SUFFIX.length()), readOffset(file));
+            }
+        }
+
+        this.firstSegmentNumber = Math.min(firstSegmentNumber, lastSegmentNumber);
+        writeSegmentNumber = lastSegmentNumber;
+        writeSegment = getSegment(lastSegmentNumber);
+        writeOffset = lastSegmentNumber * segmentSize + recoverEnd(writeSegment);
+
+        if (syncIntervalMillis > 0) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "event-spool-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncTimer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+            syncTimer = null;
+    }
+
+    /**
+     * Appends an event to the end of the log.
+     *
+     * @param businessEvent the event
+     * @return the offset of the event
+     * @exception IOException if the event could not be written
+     */
+    public synchronized long append(BusinessEvent businessEvent) throws IOException {
+        byte[] bytes = businessEvent.toJson().getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + bytes.length;
+        if (recordSize + 4 > segmentSize)
+            throw new IOException("The event is larger than a spool segment");
+
+        int position = (int)(writeOffset - writeSegmentNumber * segmentSize);
+        if (position + recordSize + 4 > segmentSize) {
+            writeSegment.putInt(position, END_OF_SEGMENT);
+            writeSegment.force();
+            writeSegmentNumber++;
+            writeSegment = getSegment(writeSegmentNumber);
+            writeOffset = writeSegmentNumber * segmentSize;
+            position = 0;
+            deleteConsumedSegments();
+        }
+
+        crc.reset();
+        crc.update(bytes);
+        writeSegment.put(position + RECORD_HEADER_SIZE, bytes);
+        writeSegment.putInt(position + 4, (int)crc.getValue());
+        // The length goes last, so a reader never sees a partly written event
+        writeSegment.putInt(position, bytes.length);
+
+        long offset = writeOffset;
+        writeOffset = offset + recordSize;
+        appendedCount++;
+        if (++pendingSyncCount >= syncBatchSize)
+            sync();
+
+        return offset;
+    }
+
+    /**
+     * Forces appended events to disk.
+     */
+    public synchronized void sync() {
+        if (pendingSyncCount == 0)
+            return;
+
+        writeSegment.force();
+        pendingSyncCount = 0;
+        syncCount++;
+    }
+
+    /**
+     * Opens a cursor at the offset last committed by a consumer, or at the start of the log for a
+     * new consumer.
+     *
+     * @param consumer the consumer name, which must be usable as a file name
+     * @return the cursor
+     */
+    public Cursor openCursor(String consumer) {
+        Long committed = committedOffsets.get(consumer);
+        long firstOffset = firstSegmentNumber * segmentSize;
+        long offset = committed != null ? Math.max(committed, firstOffset) : firstOffset;
+        return new Cursor(consumer, Math.min(offset, writeOffset));
+    }
+
+    /**
+     * Gets the offset the next event will be written at.
+     *
+     * @return the write offset
+     */
+    public long getWriteOffset() {
+        return writeOffset;
+    }
+
+    /**
+     * Gets the offset last committed by a consumer.
+     *
+     * @param consumer the consumer name
+     * @return the committed offset, or -1 if the consumer has not committed
+     */
+    public long getCommittedOffset(String consumer) {
+        return committedOffsets.getOrDefault(consumer, -1L);
+    }
+
+    /**
+     * Gets the number of events appended since the spool was opened.
+     *
+     * @return the appended count
+     */
+    public synchronized long getAppendedCount() {
+        return appendedCount;
+    }
+
+    /**
+     * Gets the number of times appended events were forced to disk.
+     *
+     * @return the sync count
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Gets the number of segment files in use.
+     *
+     * @return the segment count
+     */
+    public long getSegmentCount() {
+        return writeSegmentNumber - firstSegmentNumber + 1;
+    }
+
+    /**
+     * Forces appended events to disk and stops the sync timer.
+     */
+    @Override
+    public void close() {
+        if (syncTimer != null)
+            syncTimer.shutdownNow();
+        sync();
+    }
+
+    private synchronized void commitOffset(String consumer, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, offset);
+        try (FileChannel channel = FileChannel.open(directory.resolve(consumer + OFFSET_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(buffer, 0);
+            channel.force(false);
+        }
+        committedOffsets.put(consumer, offset);
+    }
+
+    private MappedByteBuffer getSegment(long segmentNumber) throws IOException {
+        MappedByteBuffer segment = segments.get(segmentNumber);
+        if (segment != null)
+            return segment;
+
+        synchronized (segments) {
+            segment = segments.get(segmentNumber);
+            if (segment == null) {
+                try (FileChannel channel = FileChannel.open(segmentPath(segmentNumber),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                }
+                segments.put(segmentNumber, segment);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Finds the end of the valid events in a segment. An event whose checksum does not match was
+     * torn by a crash; it and the rest of the segment are cleared.
+     */
+    private int recoverEnd(MappedByteBuffer segment) {
+        int position = 0;
+        byte[] bytes = new byte[1024];
+        while (position + RECORD_HEADER_SIZE <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length == END_OF_SEGMENT || length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize)
+                break;
+
+            if (length > bytes.length)
+                bytes = new byte[length];
+            segment.get(position + RECORD_HEADER_SIZE, bytes, 0, length);
+            crc.reset();
+            crc.update(bytes, 0, length);
+            if ((int)crc.getValue() != segment.getInt(position + 4))
+                break;
+
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if (position + 4 <= segmentSize && segment.getInt(position) != 0) {
+            byte[] zeros = new byte[4096];
+            for (int i = position; i < segmentSize; i += zeros.length)
+                segment.put(i, zeros, 0, Math.min(zeros.length, segmentSize - i));
+            segment.force();
+        }
+        return position;
+    }
+
+    /**
+     * Deletes the segments that every consumer has read past. Segments are kept while no consumer
+     * has committed.
+     */
+    private void deleteConsumedSegments() {
+        if (committedOffsets.isEmpty())
+            return;
+
+        long minimumOffset = Long.MAX_VALUE;
+        for (long offset : committedOffsets.values())
+            minimumOffset = Math.min(minimumOffset, offset);
+
+        long firstNeededSegment = Math.min(minimumOffset / segmentSize, writeSegmentNumber);
+        while (firstSegmentNumber < firstNeededSegment) {
+            try {
+                Files.deleteIfExists(segmentPath(firstSegmentNumber));
+            }
+            catch (IOException e) {
+                // Still mapped on some platforms; retried at the next roll
+                return;
+            }
+            segments.remove(firstSegmentNumber);
+            firstSegmentNumber++;
+        }
+    }
+
+    private Path segmentPath(long segmentNumber) {
+        return directory.resolve(String.format("%020d%s", segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    private static long readOffset(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length == 8 ? ByteBuffer.wrap(bytes).getLong() : 0;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        }
+        catch (RuntimeException e) {
+            System.err.format("Error: could not sync the event spool: %s%n", e);
+        }
+    }
+}
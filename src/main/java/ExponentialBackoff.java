@@ -0,0 +1,40 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with jitter. The delay before attempt <i>n</i> is drawn uniformly
+ * between half and all of <code>min(maxDelay, initialDelay * 2^n)</code>, so that many clients
+ * reconnecting after the same outage spread out instead of retrying in lockstep.
+ */
+public class ExponentialBackoff {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Creates a new <code>ExponentialBackoff</code> instance.
+     *
+     * @param initialDelayMillis the delay before the first retry
+     * @param maxDelayMillis the longest delay between retries
+     */
+    public ExponentialBackoff(long initialDelayMillis, long maxDelayMillis) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis)
+            throw new IllegalArgumentException("Invalid backoff delays");
+
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Gets the delay before a retry.
+     *
+     * @param attempt the number of retries already made
+     * @return the delay in milliseconds
+     */
+    public long getDelayMillis(int attempt) {
+        long ceiling = maxDelayMillis;
+        if (attempt < 62 && initialDelayMillis <= (maxDelayMillis >> Math.min(attempt, 62)))
+            ceiling = Math.min(maxDelayMillis, initialDelayMillis << attempt);
+
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A channel that compresses each buffer written to it as a complete gzip member. Concatenated
+ * members form a valid gzip stream, so the output can be read with <code>GZIPInputStream</code> or
+ * <code>zcat</code>, while every write can be decompressed on its own.
+ *
+ * The input is compressed straight from the caller's buffer into a direct buffer, without copying
+ * it to the heap.
+ */
+public class GzipBlockChannel implements WritableByteChannel {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int OS_UNKNOWN = 255;
+
+    private final WritableByteChannel channel;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer compressed = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte extraFlags;
+    private boolean open = true;
+
+    /**
+     * Creates a new <code>GzipBlockChannel</code> instance.
+     *
+     * @param channel the channel to write the compressed bytes to
+     * @param level the <code>Deflater</code> compression level
+     */
+    public GzipBlockChannel(WritableByteChannel channel, int level) {
+        this.channel = channel;
+        this.deflater = new Deflater(level, true);
+        this.extraFlags = (byte)(level == Deflater.BEST_SPEED ? 4 : level == Deflater.BEST_COMPRESSION ? 2 : 0);
+    }
+
+    /**
+     * Compresses all remaining bytes of a buffer as one gzip member and writes it.
+     *
+     * @param src the bytes to write
+     * @return the number of bytes consumed from the buffer, which is all of them
+     * @exception IOException if the compressed bytes could not be written
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (length == 0)
+            return 0;
+
+        crc.reset();
+        crc.update(src.duplicate());
+        deflater.reset();
+        deflater.setInput(src);
+        deflater.finish();
+
+        compressed.clear();
+        compressed.put((byte)0x1F).put((byte)0x8B).put((byte)Deflater.DEFLATED).put((byte)0)
+            .putInt(0).put(extraFlags).put((byte)OS_UNKNOWN);
+        while (!deflater.finished()) {
+            deflater.deflate(compressed);
+            if (!compressed.hasRemaining())
+                drain();
+        }
+        if (compressed.remaining() < 8)
+            drain();
+        compressed.putInt((int)crc.getValue()).putInt(length);
+        drain();
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Releases the compressor and closes the underlying channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open)
+            return;
+
+        open = false;
+        deflater.end();
+        channel.close();
+    }
+
+    private void drain() throws IOException {
+        compressed.flip();
+        while (compressed.hasRemaining())
+            channel.write(compressed);
+        compressed.clear();
+    }
+}
@@ -0,0 +1,391 @@
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives events over two event bridge connections at once, each with its own subscription, so
+ * that when one connection fails or is replaced the other is already receiving the events.
+ *
+ * Both connections deliver to a <code>DeduplicatingEventHandler</code>, one event at a time, which
+ * passes on the first copy of each event and drops the second. The handler sees the events of
+ * whichever connection is ahead, in order, without a gap while one connection is down and without
+ * duplicates. Events without the key properties cannot be matched, so they, and the other
+ * callbacks, are only taken from the active connection. When the active connection is lost the
+ * standby becomes active at once; the lost connection reconnects by itself and becomes the
+ * standby. <code>handover</code> replaces the active connection on purpose, such as to move to a
+ * restarted bridge node.
+ *
+ * A standby that has just subscribed receives the events from that point on, possibly ahead of
+ * events the active connection still has in flight, so for a few seconds its events are held
+ * back rather than passed on, and only released if it takes over in that time.
+ *
+ * The bridge sends each event twice, so the standby doubles the bridge traffic and receive work.
+ * A durable subscription with an id keeps the id on one connection, and adds
+ * <code>-standby</code> to it on the other.
+ */
+public class HotStandbySubscriber implements IEventSubscriber {
+    private static final String STANDBY_ID_SUFFIX = "-standby";
+    private static final long HANDOVER_STOP_TIMEOUT_MILLIS = 5000;
+    private static final long JOIN_DELAY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * One of the two connections, and the callbacks it receives.
+     */
+    private class Connection implements IEventHandler {
+        final String idSuffix;
+        final WebEventSubscriber subscriber;
+        volatile boolean started;
+        volatile boolean connected;
+
+        // Events held back from a standby until it has been subscribed for the join delay
+        final ArrayDeque<BusinessEvent> held = new ArrayDeque<>();
+        volatile long joinNanos;
+
+        Connection(String idSuffix) {
+            this.idSuffix = idSuffix;
+            subscriber = new WebEventSubscriber(bridgeUrl, sessionToken, applicationId, copy(subscription, idSuffix), this,
+                transportMode);
+        }
+
+        void start() throws Exception {
+            joinNanos = System.nanoTime() + JOIN_DELAY_NANOS;
+            subscriber.startReceiving();
+            started = true;
+            connected = true;
+        }
+
+        @Override
+        public void onBusinessEvent(Map<String, Object> businessEvent) {
+            onBusinessEvent(new BusinessEvent(businessEvent));
+        }
+
+        @Override
+        public void onBusinessEvent(BusinessEvent businessEvent) {
+            if (this != active && !deduplicator.hasKey(businessEvent))
+                return;
+
+            synchronized (deliveryLock) {
+                if (this != active && !isReady()) {
+                    if (held.size() == maxHeldEvents)
+                        held.poll();
+                    held.add(businessEvent);
+                    return;
+                }
+                release();
+                deliver(businessEvent);
+            }
+        }
+
+        /**
+         * Passes on the events held back, dropping those the other connection passed on already.
+         * Called holding the delivery lock.
+         */
+        void release() {
+            for (BusinessEvent businessEvent; (businessEvent = held.poll()) != null; )
+                deliver(businessEvent);
+        }
+
+        boolean isReady() {
+            return connected && System.nanoTime() - joinNanos >= 0;
+        }
+
+        @Override
+        public void onExceptionRaised(String serviceException) {
+            if (this == active)
+                handler.onExceptionRaised(serviceException);
+        }
+
+        @Override
+        public void onManagementEvent(String message) {
+            if (this == active)
+                handler.onManagementEvent(message);
+        }
+
+        @Override
+        public void onConnectionToMessageBusEstablished() {
+            if (this == active)
+                handler.onConnectionToMessageBusEstablished();
+        }
+
+        @Override
+        public void onConnectionToMessageBusLost() {
+            if (this == active)
+                handler.onConnectionToMessageBusLost();
+        }
+
+        @Override
+        public void onConnectionToBridgeLost() {
+            connected = false;
+            onConnectionLost(this);
+        }
+
+        @Override
+        public void onConnectionToBridgeRestored(long downtimeMillis) {
+            joinNanos = System.nanoTime() + JOIN_DELAY_NANOS;
+            connected = true;
+            onConnectionRestored(this, downtimeMillis);
+        }
+    }
+
+    private final String bridgeUrl;
+    private final String applicationId;
+    private final TransportMode transportMode;
+    private final IEventHandler handler;
+    private final DeduplicatingEventHandler deduplicator;
+    private final int maxHeldEvents;
+    private final Object deliveryLock = new Object();
+    private volatile String sessionToken;
+    private volatile EventSubscription subscription;
+    private volatile Connection active;
+    private volatile Connection standby;
+    private volatile Runnable firstEventListener;
+    private volatile long failoverCount;
+    private volatile long handoverCount;
+    private volatile long replacedReconnectCount;
+
+    /**
+     * Creates a new <code>HotStandbySubscriber</code> instance.
+     *
+     * @param url the OpenAccess event bridge URL
+     * @param sessionToken an authenticated OpenAccess session token, or <code>null</code> to
+     *     connect while logging in and pass the token to <code>updateSessionToken</code> before
+     *     <code>startReceiving</code>
+     * @param applicationId the OpenAccess application id
+     * @param subscription the subscription details
+     * @param handler the event handler that will process events from the bridge
+     * @param transportMode the transport used to receive events from the bridge
+     * @param windowMillis how long an event is remembered to drop its copy from the other
+     *     connection; at least as long as one connection may fall behind the other
+     * @param maxEntries the maximum number of events remembered, and held back from a standby
+     *     that has just subscribed
+     */
+    public HotStandbySubscriber(String url, String sessionToken, String applicationId, EventSubscription subscription,
+            IEventHandler handler, TransportMode transportMode, long windowMillis, int maxEntries) {
+        this.bridgeUrl = url;
+        this.sessionToken = sessionToken;
+        this.applicationId = applicationId;
+        this.subscription = subscription;
+        this.handler = handler;
+        this.transportMode = transportMode;
+        deduplicator = new DeduplicatingEventHandler(handler, windowMillis, maxEntries);
+        maxHeldEvents = maxEntries;
+
+        active = new Connection("");
+        standby = new Connection(STANDBY_ID_SUFFIX);
+    }
+
+    /**
+     * Connects both connections to the event bridge without creating the subscriptions.
+     *
+     * @exception Exception if a connection to the bridge could not be started
+     */
+    @Override
+    public void connect() throws Exception {
+        active.subscriber.connect();
+        standby.subscriber.connect();
+    }
+
+    /**
+     * Starts receiving events over both connections.
+     *
+     * @exception Exception if either subscription could not be created
+     */
+    @Override
+    public synchronized void startReceiving() throws Exception {
+        active.start();
+        standby.start();
+    }
+
+    /**
+     * Makes the standby connection active, stops the old active connection and starts a new
+     * standby connection in its place, without a gap in the events. If the standby could not be
+     * started before, it is started again instead and the active connection is kept.
+     *
+     * @exception IllegalStateException if the standby connection is reconnecting or has only just
+     *     subscribed
+     * @exception Exception if the new standby subscription could not be created
+     */
+    public synchronized void handover() throws Exception {
+        if (standby.started && !standby.isReady())
+            throw new IllegalStateException("The standby connection is not ready to take over");
+
+        Connection replaced = standby;
+        if (standby.started) {
+            replaced = active;
+            switchToStandby();
+            standby = replaced;
+            handoverCount++;
+            System.err.println("Handed over to the standby connection to the event bridge.");
+        }
+
+        replaced.subscriber.stopReceiving(HANDOVER_STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        replacedReconnectCount += replaced.subscriber.getReconnectCount();
+        standby = new Connection(replaced.idSuffix);
+        standby.start();
+    }
+
+    @Override
+    public void updateSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+        active.subscriber.updateSessionToken(sessionToken);
+        standby.subscriber.updateSessionToken(sessionToken);
+    }
+
+    @Override
+    public void updateSubscription(EventSubscription subscription) {
+        this.subscription = subscription;
+        active.subscriber.updateSubscription(copy(subscription, active.idSuffix));
+        standby.subscriber.updateSubscription(copy(subscription, standby.idSuffix));
+    }
+
+    @Override
+    public synchronized void stopReceiving() throws Exception {
+        try {
+            active.subscriber.stopReceiving();
+        }
+        finally {
+            standby.subscriber.stopReceiving();
+        }
+    }
+
+    @Override
+    public synchronized boolean stopReceiving(long timeout, TimeUnit unit) {
+        boolean activeStopped = active.subscriber.stopReceiving(timeout, unit);
+        return standby.subscriber.stopReceiving(timeout, unit) && activeStopped;
+    }
+
+    @Override
+    public void setFirstEventListener(Runnable listener) {
+        firstEventListener = listener;
+    }
+
+    /**
+     * Determines if the standby connection is ready to take over.
+     *
+     * @return true if the standby is connected
+     */
+    public boolean isStandbyConnected() {
+        return standby.connected;
+    }
+
+    /**
+     * Gets the number of times the standby took over from a lost active connection.
+     *
+     * @return the failover count
+     */
+    public long getFailoverCount() {
+        return failoverCount;
+    }
+
+    /**
+     * Gets the number of handovers to the standby connection.
+     *
+     * @return the handover count
+     */
+    public long getHandoverCount() {
+        return handoverCount;
+    }
+
+    /**
+     * Gets the number of event copies dropped because the other connection delivered them first,
+     * which is about every event while both connections are up.
+     *
+     * @return the duplicate count
+     */
+    public long getDuplicateCount() {
+        return deduplicator.getDuplicateCount();
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return replacedReconnectCount + active.subscriber.getReconnectCount() + standby.subscriber.getReconnectCount();
+    }
+
+    /**
+     * Gets an estimate of the events missed while reconnecting. An event is only missed if both
+     * connections missed it, so this is the smaller of their estimates, which is an upper bound.
+     *
+     * @return the estimated number of missed events
+     */
+    @Override
+    public long getMissedEventEstimate() {
+        return Math.min(active.subscriber.getMissedEventEstimate(), standby.subscriber.getMissedEventEstimate());
+    }
+
+    @Override
+    public synchronized void close() {
+        active.subscriber.close();
+        standby.subscriber.close();
+    }
+
+    /**
+     * Switches to the standby connection if the active connection was lost. The handler is only
+     * told about the loss if the standby is not connected either.
+     */
+    private synchronized void onConnectionLost(Connection lost) {
+        if (lost != active) {
+            System.err.println("Warning: the standby connection to the event bridge was lost. Reconnecting.");
+            return;
+        }
+
+        if (standby.connected) {
+            switchToStandby();
+            standby = lost;
+            failoverCount++;
+            System.err.println("Warning: the connection to the event bridge was lost. Switched to the standby connection.");
+        }
+        else
+            handler.onConnectionToBridgeLost();
+    }
+
+    /**
+     * Keeps a restored connection as the standby, unless the active connection is down too, in
+     * which case it becomes active and the handler is told the events are flowing again.
+     */
+    private synchronized void onConnectionRestored(Connection restored, long downtimeMillis) {
+        if (restored == standby) {
+            if (active.connected)
+                return;
+            Connection lost = active;
+            switchToStandby();
+            standby = lost;
+        }
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Makes the standby connection active, passing on the events it held back. The caller
+     * replaces the standby.
+     */
+    private void switchToStandby() {
+        synchronized (deliveryLock) {
+            active = standby;
+            active.release();
+        }
+    }
+
+    /**
+     * Passes an event to the deduplication stage. Called holding the delivery lock.
+     */
+    private void deliver(BusinessEvent businessEvent) {
+        Runnable listener = firstEventListener;
+        if (listener != null) {
+            firstEventListener = null;
+            listener.run();
+        }
+        deduplicator.onBusinessEvent(businessEvent);
+    }
+
+    /**
+     * Copies subscription details for one of the connections, adding a suffix to the id if it
+     * has one.
+     */
+    private static EventSubscription copy(EventSubscription subscription, String idSuffix) {
+        EventSubscription copy = new EventSubscription();
+        copy.id = subscription.id == null ? null : subscription.id + idSuffix;
+        copy.description = subscription.description;
+        copy.filter = subscription.filter;
+        copy.is_durable = subscription.is_durable;
+        return copy;
+    }
+}
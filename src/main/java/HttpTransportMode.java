@@ -0,0 +1,62 @@
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+import java.util.Locale;
+
+/**
+ * The HTTP transports that can be used for OpenAccess REST requests.
+ */
+public enum HttpTransportMode {
+    /**
+     * <code>HttpURLConnection</code>, through the Google HTTP Client Library. HTTP/1.1 only, with
+     * the small keep-alive cache of the JDK.
+     */
+    NET_HTTP,
+
+    /**
+     * The JDK <code>java.net.http.HttpClient</code>, with a pool of persistent connections and
+     * HTTP/2 where the server supports it.
+     */
+    POOLED;
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 20000;
+
+    /**
+     * Creates a new HTTP transport for this mode. A transport should be shared by all services.
+     *
+     * @return a new HTTP transport
+     */
+    public HttpTransport createTransport() {
+        switch (this) {
+            case NET_HTTP:
+                return new NetHttpTransport();
+            default:
+                return new JdkHttpTransport(CONNECT_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * Parses an HTTP transport mode setting. Accepts the enum names as well as the short names
+     * <code>nethttp</code> and <code>pooled</code>, ignoring case.
+     *
+     * @param value the setting value, or <code>null</code> for the default
+     * @param defaultMode the mode to use when no value is given
+     * @return the parsed HTTP transport mode
+     * @exception IllegalArgumentException if the value is not a known HTTP transport mode
+     */
+    public static HttpTransportMode parse(String value, HttpTransportMode defaultMode) {
+        if (value == null || value.trim().isEmpty())
+            return defaultMode;
+
+        String name = value.trim().toLowerCase(Locale.ROOT).replace("-", "").replace("_", "");
+        switch (name) {
+            case "nethttp":
+                return NET_HTTP;
+            case "pooled":
+            case "http2":
+                return POOLED;
+            default:
+                throw new IllegalArgumentException("Unknown HTTP transport mode: " + value);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Defines the interface for an OpenAccess event handler that processes business events in batches.
+ */
+interface IBatchEventHandler extends IEventHandler {
+    /**
+     * Called with a batch of events received from the bridge, in the order they were received.
+     *
+     * @param businessEvents the properties of each event; the handler may keep the list
+     */
+    public abstract void onBusinessEvents(List<Map<String, Object>> businessEvents);
+
+    /**
+     * Called with a batch of events as read-only views, in the order they were received.
+     * Override this to avoid building the property map of every event; by default the maps are
+     * built and passed to <code>onBusinessEvents(List)</code>.
+     *
+     * @param businessEvents the events; the handler may keep the list
+     */
+    public default void onBusinessEventBatch(List<BusinessEvent> businessEvents) {
+        List<Map<String, Object>> maps = new ArrayList<>(businessEvents.size());
+        for (BusinessEvent businessEvent : businessEvents)
+            maps.add(businessEvent.toMap());
+        onBusinessEvents(maps);
+    }
+
+    /**
+     * Called when a single event is delivered outside of a batch. Delivers it as a batch of one.
+     *
+     * @param businessEvent the event properties
+     */
+    @Override
+    public default void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvents(Collections.singletonList(businessEvent));
+    }
+}
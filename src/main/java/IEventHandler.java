@@ -11,6 +11,17 @@ interface IEventHandler {
      */
     public abstract void onBusinessEvent(Map<String, Object> businessEvent);
 
+    /**
+     * Called when an event is received from the bridge, with a view that reads the event payload
+     * lazily. Override this to avoid building the property map for every event; by default the
+     * map is built and passed to <code>onBusinessEvent(Map)</code>.
+     *
+     * @param businessEvent the event
+     */
+    public default void onBusinessEvent(BusinessEvent businessEvent) {
+        onBusinessEvent(businessEvent.toMap());
+    }
+
     /**
      * Called when an exception is received from the bridge.
      *
@@ -34,4 +45,19 @@ interface IEventHandler {
      * Called when the bridge loses the connection to the message broker.
      */
     public abstract void onConnectionToMessageBusLost();
+
+    /**
+     * Called when the connection to the event bridge is lost. The subscriber reconnects and
+     * resubscribes by itself.
+     */
+    public default void onConnectionToBridgeLost() {
+    }
+
+    /**
+     * Called when the subscriber has reconnected to the event bridge and resubscribed.
+     *
+     * @param downtimeMillis the time since the connection was lost, in milliseconds
+     */
+    public default void onConnectionToBridgeRestored(long downtimeMillis) {
+    }
 }
@@ -0,0 +1,84 @@
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines the interface for a subscription to the OpenAccess event bridge, over one connection or
+ * several.
+ */
+interface IEventSubscriber extends Closeable {
+    /**
+     * Connects to the event bridge without creating the subscription, so the connection can be
+     * set up while logging in.
+     *
+     * @exception Exception if the connection to the bridge could not be started
+     */
+    public abstract void connect() throws Exception;
+
+    /**
+     * Starts receiving events from the event bridge, connecting first unless
+     * <code>connect</code> did.
+     *
+     * @exception Exception if the subscription could not be created
+     */
+    public abstract void startReceiving() throws Exception;
+
+    /**
+     * Replaces the session token used with the event bridge, renewing the subscription while
+     * receiving.
+     *
+     * @param sessionToken the new authenticated OpenAccess session token
+     */
+    public abstract void updateSessionToken(String sessionToken);
+
+    /**
+     * Replaces the subscription details, such as the filter, renewing the subscription while
+     * receiving.
+     *
+     * @param subscription the new subscription details
+     */
+    public abstract void updateSubscription(EventSubscription subscription);
+
+    /**
+     * Stops receiving events from the event bridge and closes the connection.
+     *
+     * @exception Exception if the bridge could not stop the subscription
+     */
+    public abstract void stopReceiving() throws Exception;
+
+    /**
+     * Stops receiving events from the event bridge, waiting at most the given time for the bridge
+     * to stop the subscription, and closes the connection either way.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the bridge stopped the subscription before the timeout
+     */
+    public abstract boolean stopReceiving(long timeout, TimeUnit unit);
+
+    /**
+     * Sets a listener called once, on the receiving thread, when the first event arrives.
+     *
+     * @param listener the listener
+     */
+    public abstract void setFirstEventListener(Runnable listener);
+
+    /**
+     * Gets the number of times a connection was rebuilt.
+     *
+     * @return the reconnect count
+     */
+    public abstract long getReconnectCount();
+
+    /**
+     * Gets an estimate of the events missed while reconnecting, which is an upper bound.
+     *
+     * @return the estimated number of missed events
+     */
+    public abstract long getMissedEventEstimate();
+
+    /**
+     * Closes the event bridge connections and stops reconnecting.
+     */
+    @Override
+    public abstract void close();
+}
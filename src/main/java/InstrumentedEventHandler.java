@@ -0,0 +1,112 @@
+import java.util.Map;
+
+/**
+ * An <code>IEventHandler</code> decorator that records metrics for the events passing through a
+ * stage of the pipeline: the number of business events, how long the wrapped handler takes, and
+ * the lag from the event timestamp to delivery at this stage.
+ *
+ * The metrics are labelled with the subscription and stage names. The lag is measured against
+ * the local clock, so it includes any clock difference with the OpenAccess server. All callbacks
+ * are forwarded directly.
+ */
+public class InstrumentedEventHandler implements IEventHandler {
+    private final IEventHandler handler;
+    private final MetricsRegistry.Counter businessEventCount;
+    private final MetricsRegistry.Counter exceptionCount;
+    private final MetricsRegistry.Counter bridgeLostCount;
+    private final LatencyHistogram handlerLatency;
+    private final LatencyHistogram deliveryLag;
+
+    /**
+     * Creates a new <code>InstrumentedEventHandler</code> instance.
+     *
+     * @param handler the event handler that will process the events
+     * @param registry the registry to record the metrics in
+     * @param subscription the subscription name, used as a label
+     * @param stage the pipeline stage name, used as a label
+     */
+    public InstrumentedEventHandler(IEventHandler handler, MetricsRegistry registry, String subscription, String stage) {
+        this.handler = handler;
+        businessEventCount = registry.counter("openaccess_events_received_total",
+            "Business events received.", "subscription", subscription, "stage", stage);
+        exceptionCount = registry.counter("openaccess_bridge_exceptions_total",
+            "Exceptions raised by the event bridge.", "subscription", subscription, "stage", stage);
+        bridgeLostCount = registry.counter("openaccess_bridge_connection_lost_total",
+            "Times the connection to the event bridge was lost.", "subscription", subscription, "stage", stage);
+        handlerLatency = registry.histogram("openaccess_event_handler_latency_seconds",
+            "Time taken to handle a business event.", "subscription", subscription, "stage", stage);
+        deliveryLag = registry.histogram("openaccess_event_delivery_lag_seconds",
+            "Time from the event timestamp to delivery.", "subscription", subscription, "stage", stage);
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        businessEventCount.increment();
+        long timestampMillis = businessEvent.getTimestampMillis();
+        if (timestampMillis != BusinessEvent.NO_TIMESTAMP)
+            deliveryLag.record((System.currentTimeMillis() - timestampMillis) * 1000000L);
+
+        long startNanos = System.nanoTime();
+        try {
+            handler.onBusinessEvent(businessEvent);
+        }
+        finally {
+            handlerLatency.recordSince(startNanos);
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        exceptionCount.increment();
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        bridgeLostCount.increment();
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the handler latencies recorded at this stage.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    /**
+     * Gets the delivery lags recorded at this stage.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getDeliveryLag() {
+        return deliveryLag;
+    }
+}
@@ -0,0 +1,191 @@
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An <code>HttpTransport</code> for the Google HTTP Client Library backed by the JDK
+ * <code>java.net.http.HttpClient</code>.
+ *
+ * The client keeps a pool of persistent connections and negotiates HTTP/2 where the server
+ * supports it, so that many small requests share a few connections rather than each paying for
+ * a connection and TLS handshake. One transport should be shared by all services.
+ */
+public class JdkHttpTransport extends HttpTransport {
+    // Headers the JDK client sets itself and does not allow requests to set
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final HttpClient client;
+
+    /**
+     * Creates a new <code>JdkHttpTransport</code> instance that prefers HTTP/2.
+     *
+     * @param connectTimeoutMillis the longest time to wait for a new connection
+     */
+    public JdkHttpTransport(long connectTimeoutMillis) {
+        this(HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+            .build());
+    }
+
+    /**
+     * Creates a new <code>JdkHttpTransport</code> instance that uses an existing client.
+     *
+     * @param client the JDK HTTP client
+     */
+    public JdkHttpTransport(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new Request(method, url);
+    }
+
+    /**
+     * A request sent through the JDK client once its content has been written to memory.
+     */
+    private class Request extends LowLevelHttpRequest {
+        private final String method;
+        private final HttpRequest.Builder builder;
+
+        Request(String method, String url) {
+            this.method = method;
+            this.builder = HttpRequest.newBuilder(URI.create(url));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT)))
+                builder.header(name, value);
+        }
+
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            if (readTimeout > 0)
+                builder.timeout(Duration.ofMillis(readTimeout));
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+            if (getStreamingContent() != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream(getContentLength() > 0 ? (int)getContentLength() : 512);
+                getStreamingContent().writeTo(content);
+                body = HttpRequest.BodyPublishers.ofByteArray(content.toByteArray());
+                if (getContentType() != null)
+                    builder.header("Content-Type", getContentType());
+                if (getContentEncoding() != null)
+                    builder.header("Content-Encoding", getContentEncoding());
+            }
+
+            try {
+                return new Response(client.send(builder.method(method, body).build(), HttpResponse.BodyHandlers.ofInputStream()));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + method + " response");
+            }
+        }
+    }
+
+    /**
+     * A response whose content is streamed from the JDK client.
+     */
+    private static class Response extends LowLevelHttpResponse {
+        private final HttpResponse<InputStream> response;
+        private final List<String> headerNames = new ArrayList<>();
+        private final List<String> headerValues = new ArrayList<>();
+
+        Response(HttpResponse<InputStream> response) {
+            this.response = response;
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                // HTTP/2 pseudo-headers such as :status are not headers
+                if (header.getKey().startsWith(":"))
+                    continue;
+                for (String value : header.getValue()) {
+                    headerNames.add(header.getKey());
+                    headerValues.add(value);
+                }
+            }
+        }
+
+        @Override
+        public InputStream getContent() {
+            return response.body();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.headers().firstValue("Content-Encoding").orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public String getContentType() {
+            return response.headers().firstValue("Content-Type").orElse(null);
+        }
+
+        @Override
+        public String getStatusLine() {
+            String version = response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+            return version + " " + response.statusCode();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            // Not available from the JDK client
+            return null;
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headerNames.size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return headerNames.get(index);
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return headerValues.get(index);
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            response.body().close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with log-linear buckets, in the manner of
+ * HdrHistogram: each power of two is split into 16 buckets, so any recorded value is reported
+ * within about 6% of its true value, from nanoseconds to centuries, in a fixed 8 KB.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT * (64 - SUB_BUCKET_BITS) + LINEAR_LIMIT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Records the time elapsed since a start time.
+     *
+     * @param startNanos the start time from <code>System.nanoTime</code>
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded latencies.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double)totalNanos.sum() / count;
+    }
+
+    /**
+     * Gets the latency at a percentile: the highest value that falls in the same bucket as the
+     * recorded latency at that rank.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestValueInBucket(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Gets a one-line summary of the histogram in milliseconds.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms", getCount(),
+            getMeanNanos() / 1e6, getValueAtPercentile(50) / 1e6, getValueAtPercentile(99) / 1e6,
+            getValueAtPercentile(99.9) / 1e6, getMaxNanos() / 1e6);
+    }
+
+    /**
+     * Converts nanoseconds to seconds, the unit Prometheus expects.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the time in seconds
+     */
+    static double toSeconds(double nanos) {
+        return nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT)
+            return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT * shift + (int)(value >>> shift);
+    }
+
+    private static long highestValueInBucket(int index) {
+        if (index < LINEAR_LIMIT)
+            return index;
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long top = index - (long)SUB_BUCKET_COUNT * shift;
+        long highest = ((top + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
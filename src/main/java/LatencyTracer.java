@@ -0,0 +1,394 @@
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Traces a sample of business events from the OpenAccess server to the end of handling, to show
+ * whether delays come from the bridge and its transport, from waiting to be dispatched, or from
+ * the handlers.
+ *
+ * A sampled event is timed at four points: its server timestamp, its receipt from the transport
+ * (the <code>receiving</code> stage, placed first after the subscriber), its dispatch to a worker
+ * (the <code>handling</code> stage, placed first after the dispatcher) and the end of handling.
+ * The time between them is recorded in a histogram per segment: <code>bridge</code> from the
+ * server timestamp to receipt, which covers the bridge, its message bus and the transport and is
+ * measured against the local clock, so it includes any clock difference with the server;
+ * <code>queue</code> from receipt to dispatch; <code>handler</code> from dispatch to the end of
+ * handling; and <code>total</code> from the server timestamp to the end of handling.
+ *
+ * Each handling thread writes its finished traces to its own ring buffer, without locks; a
+ * background thread drains the rings into the histograms every second and keeps the slowest
+ * traces. Traces a ring overwrites before they are drained are counted as lost. An event that is
+ * not sampled costs one random number. An event that is spooled to disk is handled as a new
+ * event, so it is not traced past the spool.
+ */
+public class LatencyTracer implements Closeable {
+    private static final int RING_CAPACITY = 4096;
+    private static final int RING_MASK = RING_CAPACITY - 1;
+    private static final long DRAIN_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The times of a sampled event. Created when the event is received, and written by one stage
+     * at a time as the event passes through the pipeline.
+     */
+    static final class Trace {
+        final long receivedNanos;
+        final long receivedMillis;
+        final long serverMillis;
+        final String businessEventClass;
+        final long panelId;
+        final long deviceId;
+        final long serialNumber;
+        long dispatchedNanos;
+        long completedNanos;
+
+        Trace(BusinessEvent businessEvent, long receivedNanos, long receivedMillis) {
+            this.receivedNanos = receivedNanos;
+            this.receivedMillis = receivedMillis;
+            serverMillis = businessEvent.getTimestampMillis();
+            businessEventClass = businessEvent.getBusinessEventClass();
+            panelId = businessEvent.getLong(BusinessEvent.PANEL_ID, -1);
+            deviceId = businessEvent.getLong(BusinessEvent.DEVICE_ID, -1);
+            serialNumber = businessEvent.getLong(BusinessEvent.SERIAL_NUMBER, -1);
+        }
+
+        boolean hasServerTimestamp() {
+            return serverMillis != BusinessEvent.NO_TIMESTAMP;
+        }
+
+        long getBridgeNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(receivedMillis - serverMillis);
+        }
+
+        long getTotalNanos() {
+            long pipelineNanos = completedNanos - receivedNanos;
+            return hasServerTimestamp() ? Math.max(0, getBridgeNanos()) + pipelineNanos : pipelineNanos;
+        }
+    }
+
+    /**
+     * The finished traces of one handling thread. Only that thread adds traces, and only the
+     * drain reads them.
+     */
+    private static final class Ring {
+        final Thread owner = Thread.currentThread();
+        final AtomicReferenceArray<Trace> traces = new AtomicReferenceArray<>(RING_CAPACITY);
+        final AtomicLong published = new AtomicLong();
+        long written;
+        long drained;
+
+        void add(Trace trace) {
+            traces.lazySet((int)(written & RING_MASK), trace);
+            published.lazySet(++written);
+        }
+    }
+
+    private final int sampleEvery;
+    private final int slowestCount;
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> ring = ThreadLocal.withInitial(() -> {
+        Ring newRing = new Ring();
+        rings.add(newRing);
+        return newRing;
+    });
+    private final PriorityQueue<Trace> slowest = new PriorityQueue<>(Comparator.comparingLong(Trace::getTotalNanos));
+    private final ScheduledExecutorService drainTimer;
+
+    private final LatencyHistogram bridgeLatency = new LatencyHistogram();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private volatile long tracedCount;
+    private volatile long lostCount;
+
+    /**
+     * Creates a new <code>LatencyTracer</code> instance and starts draining the traces.
+     *
+     * @param sampleEvery trace one event in this many, chosen at random; 1 traces every event
+     * @param slowestCount the number of slowest traces to keep
+     */
+    public LatencyTracer(int sampleEvery, int slowestCount) {
+        if (sampleEvery < 1)
+            throw new IllegalArgumentException("The sampling interval must be at least 1");
+        this.sampleEvery = sampleEvery;
+        this.slowestCount = slowestCount;
+
+        drainTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "latency-tracer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainTimer.scheduleWithFixedDelay(this::drain, DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wraps the stage that receives events from the subscriber, which samples the events and
+     * times their receipt.
+     *
+     * @param handler the event handler that will process the received events
+     * @return the receiving stage
+     */
+    public IEventHandler receiving(IEventHandler handler) {
+        return new ForwardingEventHandler(handler) {
+            @Override
+            public void onBusinessEvent(BusinessEvent businessEvent) {
+                long receivedNanos = System.nanoTime();
+                if (businessEvent.getTrace() == null
+                        && (sampleEvery == 1 || ThreadLocalRandom.current().nextInt(sampleEvery) == 0))
+                    businessEvent.setTrace(new Trace(businessEvent, receivedNanos, System.currentTimeMillis()));
+                handler.onBusinessEvent(businessEvent);
+            }
+        };
+    }
+
+    /**
+     * Wraps the stage that handles events after the dispatcher, which times the dispatch and the
+     * end of handling of sampled events and records their traces.
+     *
+     * @param handler the event handler that will process the dispatched events
+     * @return the handling stage
+     */
+    public IEventHandler handling(IEventHandler handler) {
+        return new ForwardingEventHandler(handler) {
+            @Override
+            public void onBusinessEvent(BusinessEvent businessEvent) {
+                Trace trace = businessEvent.getTrace();
+                if (trace == null) {
+                    handler.onBusinessEvent(businessEvent);
+                    return;
+                }
+
+                trace.dispatchedNanos = System.nanoTime();
+                try {
+                    handler.onBusinessEvent(businessEvent);
+                }
+                finally {
+                    trace.completedNanos = System.nanoTime();
+                    businessEvent.setTrace(null);
+                    ring.get().add(trace);
+                }
+            }
+        };
+    }
+
+    /**
+     * Registers the segment histograms and trace counts with a metrics registry.
+     *
+     * @param registry the registry
+     */
+    public void registerMetrics(MetricsRegistry registry) {
+        String help = "Time taken by sampled business events in each segment from the server to the end of handling.";
+        registry.histogram("openaccess_event_trace_seconds", help, bridgeLatency, "segment", "bridge");
+        registry.histogram("openaccess_event_trace_seconds", help, queueLatency, "segment", "queue");
+        registry.histogram("openaccess_event_trace_seconds", help, handlerLatency, "segment", "handler");
+        registry.histogram("openaccess_event_trace_seconds", help, totalLatency, "segment", "total");
+        registry.counter("openaccess_event_traces_total", "Business events traced.", this::getTracedCount);
+        registry.counter("openaccess_event_traces_lost_total", "Traces overwritten before they were recorded.",
+            this::getLostCount);
+    }
+
+    /**
+     * Gets the latencies from the server timestamp to receipt.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getBridgeLatency() {
+        return bridgeLatency;
+    }
+
+    /**
+     * Gets the latencies from receipt to dispatch.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * Gets the latencies from dispatch to the end of handling.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    /**
+     * Gets the latencies from the server timestamp to the end of handling.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Gets the number of traces recorded.
+     *
+     * @return the traced event count
+     */
+    public long getTracedCount() {
+        return tracedCount;
+    }
+
+    /**
+     * Gets the number of traces overwritten before they were recorded.
+     *
+     * @return the lost trace count
+     */
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    /**
+     * Records the traces finished so far and lists the slowest traced events, slowest first, with
+     * the time they took in each segment.
+     *
+     * @return the slowest traces, one per line after a heading line
+     */
+    public synchronized String dumpSlowest() {
+        drain();
+
+        List<Trace> traces = new ArrayList<>(slowest);
+        traces.sort(Comparator.comparingLong(Trace::getTotalNanos).reversed());
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Slowest %d of %d traced events:%n", traces.size(), tracedCount));
+        builder.append(String.format("%11s %11s %11s %11s  %-24s  %s%n", "total ms", "bridge ms", "queue ms", "handler ms",
+            "received", "event"));
+        for (Trace trace : traces) {
+            builder.append(String.format("%11.3f %11s %11.3f %11.3f  %-24s  %s panel %d device %d serial %d%n",
+                trace.getTotalNanos() / 1e6,
+                trace.hasServerTimestamp() ? String.format("%.3f", trace.getBridgeNanos() / 1e6) : "-",
+                (trace.dispatchedNanos - trace.receivedNanos) / 1e6, (trace.completedNanos - trace.dispatchedNanos) / 1e6,
+                Instant.ofEpochMilli(trace.receivedMillis), trace.businessEventClass, trace.panelId, trace.deviceId,
+                trace.serialNumber));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stops draining in the background and records the traces finished so far.
+     */
+    @Override
+    public void close() {
+        drainTimer.shutdownNow();
+        drain();
+    }
+
+    /**
+     * Gets a summary of the segment histograms in milliseconds, one segment per line.
+     *
+     * @return the summary
+     */
+    @Override
+    public synchronized String toString() {
+        drain();
+        return String.format("bridge  %s%nqueue   %s%nhandler %s%ntotal   %s", bridgeLatency, queueLatency, handlerLatency,
+            totalLatency);
+    }
+
+    /**
+     * Records the traces added to the rings since the last drain. A ring whose thread has ended
+     * is dropped once it is empty.
+     */
+    private synchronized void drain() {
+        for (Ring ring : rings) {
+            long end = ring.published.get();
+            long start = Math.max(ring.drained, end - RING_CAPACITY);
+            Trace[] traces = new Trace[(int)(end - start)];
+            for (long i = start; i < end; i++)
+                traces[(int)(i - start)] = ring.traces.get((int)(i & RING_MASK));
+
+            // The thread may have overwritten the oldest traces while they were read
+            long valid = Math.max(start, ring.published.get() - RING_CAPACITY + 1);
+            for (long i = valid; i < end; i++)
+                record(traces[(int)(i - start)]);
+            lostCount += valid - ring.drained;
+            ring.drained = end;
+
+            if (!ring.owner.isAlive() && ring.published.get() == end)
+                rings.remove(ring);
+        }
+    }
+
+    private void record(Trace trace) {
+        if (trace.hasServerTimestamp())
+            bridgeLatency.record(trace.getBridgeNanos());
+        queueLatency.record(trace.dispatchedNanos - trace.receivedNanos);
+        handlerLatency.record(trace.completedNanos - trace.dispatchedNanos);
+        totalLatency.record(trace.getTotalNanos());
+        tracedCount++;
+
+        if (slowestCount <= 0)
+            return;
+        if (slowest.size() < slowestCount)
+            slowest.add(trace);
+        else if (trace.getTotalNanos() > slowest.peek().getTotalNanos()) {
+            slowest.poll();
+            slowest.add(trace);
+        }
+    }
+
+    /**
+     * Forwards all callbacks to the wrapped handler, for the stages to override.
+     */
+    private static class ForwardingEventHandler implements IEventHandler {
+        final IEventHandler handler;
+
+        ForwardingEventHandler(IEventHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onBusinessEvent(Map<String, Object> businessEvent) {
+            onBusinessEvent(new BusinessEvent(businessEvent));
+        }
+
+        @Override
+        public void onBusinessEvent(BusinessEvent businessEvent) {
+            handler.onBusinessEvent(businessEvent);
+        }
+
+        @Override
+        public void onExceptionRaised(String serviceException) {
+            handler.onExceptionRaised(serviceException);
+        }
+
+        @Override
+        public void onManagementEvent(String message) {
+            handler.onManagementEvent(message);
+        }
+
+        @Override
+        public void onConnectionToMessageBusEstablished() {
+            handler.onConnectionToMessageBusEstablished();
+        }
+
+        @Override
+        public void onConnectionToMessageBusLost() {
+            handler.onConnectionToMessageBusLost();
+        }
+
+        @Override
+        public void onConnectionToBridgeLost() {
+            handler.onConnectionToBridgeLost();
+        }
+
+        @Override
+        public void onConnectionToBridgeRestored(long downtimeMillis) {
+            handler.onConnectionToBridgeRestored(downtimeMillis);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.Closeable;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes generated hardware events to a <code>StandInEventBridge</code> at a steady rate, for
+ * throughput and soak tests.
+ *
+ * Events are spread over a number of panels and devices, with serial numbers that increase per
+ * panel as on real panels, so missed events show up in the gap estimate after a reconnect. They
+ * can be sent in bursts, several at once followed by a pause that keeps the same average rate, and
+ * the bridge connections can be dropped at an interval to exercise reconnection.
+ */
+public class LoadGenerator implements Closeable {
+    private static final long PACING_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final StandInEventBridge bridge;
+    private final double eventsPerSecond;
+    private final int payloadBytes;
+    private int burstSize = 1;
+    private int panelCount = 16;
+    private int devicesPerPanel = 8;
+    private long disconnectIntervalMillis;
+    private Thread thread;
+    private volatile boolean running;
+
+    private final AtomicLong generatedCount = new AtomicLong();
+    private final AtomicLong disconnectCount = new AtomicLong();
+
+    /**
+     * Creates a new <code>LoadGenerator</code> instance.
+     *
+     * @param bridge the bridge to publish to
+     * @param eventsPerSecond the average number of events to publish each second
+     * @param payloadBytes the approximate size of each event, padded with a longer description;
+     *     smaller sizes give the natural size of a hardware event
+     */
+    public LoadGenerator(StandInEventBridge bridge, double eventsPerSecond, int payloadBytes) {
+        if (eventsPerSecond <= 0)
+            throw new IllegalArgumentException("The event rate must be positive");
+
+        this.bridge = bridge;
+        this.eventsPerSecond = eventsPerSecond;
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * Sends events in bursts of the given size. The average rate is unchanged, so larger bursts
+     * come with longer pauses between them.
+     *
+     * @param burstSize the number of events in each burst, 1 for an even spread
+     */
+    public void setBurstSize(int burstSize) {
+        if (burstSize < 1)
+            throw new IllegalArgumentException("The burst size must be at least 1");
+        this.burstSize = burstSize;
+    }
+
+    /**
+     * Sets how many panels and devices the events come from.
+     *
+     * @param panelCount the number of panels
+     * @param devicesPerPanel the number of devices on each panel
+     */
+    public void setDevices(int panelCount, int devicesPerPanel) {
+        if (panelCount < 1 || devicesPerPanel < 1)
+            throw new IllegalArgumentException("At least one panel and device are required");
+        this.panelCount = panelCount;
+        this.devicesPerPanel = devicesPerPanel;
+    }
+
+    /**
+     * Drops the bridge connections at an interval.
+     *
+     * @param intervalMillis the time between disconnects, or 0 to never disconnect
+     */
+    public void setDisconnectInterval(long intervalMillis) {
+        this.disconnectIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts publishing events on a background thread.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("The load generator was already started");
+
+        running = true;
+        thread = new Thread(this::run, "load-generator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the number of events published.
+     *
+     * @return the generated count
+     */
+    public long getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    /**
+     * Gets the number of times the bridge connections were dropped.
+     *
+     * @return the disconnect count
+     */
+    public long getDisconnectCount() {
+        return disconnectCount.get();
+    }
+
+    /**
+     * Stops publishing events.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates a hardware event.
+     *
+     * @param panelId the panel id
+     * @param deviceId the device id
+     * @param serialNumber the serial number
+     * @param payloadBytes the approximate size of the event
+     * @return the event properties as a JSON object
+     */
+    public static String createHardwareEvent(long panelId, long deviceId, long serialNumber, int payloadBytes) {
+        StringBuilder json = new StringBuilder(Math.max(payloadBytes, 256));
+        json.append("{\"business_event_class\":\"hardware_event\",\"version\":\"1.0\",\"timestamp\":\"")
+            .append(OffsetDateTime.now())
+            .append("\",\"panel_id\":").append(panelId)
+            .append(",\"device_id\":").append(deviceId)
+            .append(",\"secondary_device_id\":0,\"serial_number\":").append(serialNumber)
+            .append(",\"event_type\":0,\"event_subtype\":20,\"source\":\"Panel ").append(panelId)
+            .append(" Reader ").append(deviceId)
+            .append("\",\"access_result\":1,\"cardholder_key\":").append(serialNumber % 10000)
+            .append(",\"badge_id\":").append(100000000 + serialNumber % 10000)
+            .append(",\"is_readable_card\":true,\"description\":\"Access Granted");
+
+        int padding = payloadBytes - json.length() - 2;
+        for (int i = 0; i < padding; i++)
+            json.append('.');
+        return json.append("\"}").toString();
+    }
+
+    /**
+     * Publishes as many whole bursts as the elapsed time allows, then waits briefly, until closed.
+     */
+    private void run() {
+        long[] serialNumbers = new long[panelCount];
+        long startNanos = System.nanoTime();
+        long nextDisconnectNanos = disconnectIntervalMillis > 0
+            ? startNanos + TimeUnit.MILLISECONDS.toNanos(disconnectIntervalMillis) : Long.MAX_VALUE;
+        long sequence = 0;
+
+        while (running) {
+            long nowNanos = System.nanoTime();
+            long due = (long)((nowNanos - startNanos) / 1e9 * eventsPerSecond);
+            due -= due % burstSize;
+
+            while (sequence < due && running) {
+                int panel = (int)(sequence % panelCount);
+                long device = (sequence / panelCount) % devicesPerPanel + 1;
+                bridge.publish(createHardwareEvent(panel + 1, device, ++serialNumbers[panel], payloadBytes));
+                generatedCount.incrementAndGet();
+                sequence++;
+            }
+
+            if (nowNanos >= nextDisconnectNanos) {
+                bridge.dropConnections();
+                disconnectCount.incrementAndGet();
+                nextDisconnectNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(disconnectIntervalMillis);
+            }
+
+            LockSupport.parkNanos(PACING_INTERVAL_NANOS);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A registry of named metrics that can be written in the Prometheus text exposition format.
+ *
+ * Counters are striped <code>LongAdder</code>s, so incrementing them from many threads does not
+ * contend. Components that already count something, such as the dispatch queue depth, are
+ * registered as functions read at export time, so the hot path pays nothing extra. Latencies are
+ * <code>LatencyHistogram</code>s, exported as summaries in seconds.
+ */
+public class MetricsRegistry {
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        /**
+         * Adds one to the count.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Adds to the count.
+         *
+         * @param amount the amount to add
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Gets the count.
+         *
+         * @return the count
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * The metrics with the same name, which differ by labels.
+     */
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new LinkedHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Gets or creates a counter.
+     *
+     * @param name the metric name, such as <code>events_received_total</code>
+     * @param help the description of the metric
+     * @param labels label names and values, alternating
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter)getOrAdd(name, help, "counter", labels, new Counter(), false);
+    }
+
+    /**
+     * Registers a counter whose value is read from a function.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param value reads the current count
+     * @param labels label names and values, alternating
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        getOrAdd(name, help, "counter", labels, value, true);
+    }
+
+    /**
+     * Registers a gauge whose value is read from a function.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param value reads the current value
+     * @param labels label names and values, alternating
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        getOrAdd(name, help, "gauge", labels, value, true);
+    }
+
+    /**
+     * Gets or creates a latency histogram.
+     *
+     * @param name the metric name, such as <code>event_handler_latency_seconds</code>
+     * @param help the description of the metric
+     * @param labels label names and values, alternating
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram)getOrAdd(name, help, "summary", labels, new LatencyHistogram(), false);
+    }
+
+    /**
+     * Registers a latency histogram kept by a component.
+     *
+     * @param name the metric name
+     * @param help the description of the metric
+     * @param histogram the histogram
+     * @param labels label names and values, alternating
+     */
+    public void histogram(String name, String help, LatencyHistogram histogram, String... labels) {
+        getOrAdd(name, help, "summary", labels, histogram, true);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     *
+     * @param out the text to append to
+     */
+    public void writePrometheus(StringBuilder out) {
+        List<Family> snapshot;
+        synchronized (families) {
+            snapshot = new ArrayList<>(families.values());
+        }
+
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            List<Map.Entry<String, Object>> series;
+            synchronized (families) {
+                series = new ArrayList<>(family.series.entrySet());
+            }
+            for (Map.Entry<String, Object> entry : series)
+                writeSeries(out, family.name, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds a metric to its family.
+     *
+     * @param replace whether the metric replaces one with the same labels, as when a restarted
+     *     component registers its functions again, rather than the existing one being returned
+     */
+    private Object getOrAdd(String name, String help, String type, String[] labels, Object metric, boolean replace) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+
+        String labelText = formatLabels(labels);
+        synchronized (families) {
+            Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+            if (!family.type.equals(type))
+                throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+
+            if (replace) {
+                family.series.put(labelText, metric);
+                return metric;
+            }
+            Object existing = family.series.putIfAbsent(labelText, metric);
+            if (existing != null && existing.getClass() != metric.getClass())
+                throw new IllegalArgumentException("Metric " + name + " is already registered as a function");
+            return existing != null ? existing : metric;
+        }
+    }
+
+    private static void writeSeries(StringBuilder out, String name, String labels, Object metric) {
+        if (metric instanceof LatencyHistogram) {
+            LatencyHistogram histogram = (LatencyHistogram)metric;
+            for (double quantile : QUANTILES) {
+                String quantileLabel = "quantile=\"" + quantile + "\"";
+                out.append(name).append('{').append(labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel).append("} ");
+                out.append(LatencyHistogram.toSeconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+            }
+            appendSample(out, name + "_sum", labels, LatencyHistogram.toSeconds(histogram.getTotalNanos()));
+            appendSample(out, name + "_count", labels, histogram.getCount());
+        }
+        else if (metric instanceof Counter)
+            appendSample(out, name, labels, ((Counter)metric).get());
+        else if (metric instanceof LongSupplier)
+            appendSample(out, name, labels, ((LongSupplier)metric).getAsLong());
+        else
+            appendSample(out, name, labels, ((DoubleSupplier)metric).getAsDouble());
+    }
+
+    private static void appendSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        out.append(' ');
+        if (value == (long)value)
+            out.append((long)value);
+        else
+            out.append(value);
+        out.append('\n');
+    }
+
+    private static String formatLabels(String[] labels) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                text.append(',');
+            text.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            text.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,137 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * An embedded HTTP server that serves the metrics of a <code>MetricsRegistry</code> at
+ * <code>/metrics</code> in the Prometheus text exposition format, any other plain text pages
+ * added with <code>addPage</code>, and actions triggered by POST requests added with
+ * <code>addAction</code>. Actions are only run for requests from the loopback address, so anyone
+ * who can scrape the metrics cannot trigger them.
+ */
+public class MetricsServer implements Closeable {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PAGE_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new <code>MetricsServer</code> instance and starts listening.
+     *
+     * @param registry the metrics to serve
+     * @param port the port to listen on, or 0 for any free port
+     * @exception IOException if the port could not be bound
+     */
+    public MetricsServer(MetricsRegistry registry, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> handle(exchange, CONTENT_TYPE, () -> {
+            StringBuilder text = new StringBuilder(4096);
+            registry.writePrometheus(text);
+            return text.toString();
+        }));
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves a plain text page, built for each request.
+     *
+     * @param path the path of the page, such as <code>/traces</code>
+     * @param page builds the text of the page
+     */
+    public void addPage(String path, Supplier<String> page) {
+        server.createContext(path, exchange -> handle(exchange, PAGE_CONTENT_TYPE, page));
+    }
+
+    /**
+     * Runs an action for each POST request to a path from the loopback address, answering with its
+     * result as plain text. Requests from other addresses are refused with status 403. An action
+     * that throws is answered with status 409 and the exception message.
+     *
+     * @param path the path of the action, such as <code>/handover</code>
+     * @param action runs the action and describes the result
+     */
+    public void addAction(String path, Callable<String> action) {
+        server.createContext(path, exchange -> {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                if (!exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+                    exchange.sendResponseHeaders(403, -1);
+                    return;
+                }
+
+                String result;
+                int status = 200;
+                try {
+                    result = action.call();
+                }
+                catch (Exception e) {
+                    result = String.valueOf(e.getMessage());
+                    status = 409;
+                }
+                respond(exchange, status, PAGE_CONTENT_TYPE, result + "\n");
+            }
+            finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Stops the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, String contentType, Supplier<String> page) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            respond(exchange, 200, contentType, page.get());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
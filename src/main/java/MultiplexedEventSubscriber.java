@@ -0,0 +1,89 @@
+import java.io.Closeable;
+
+/**
+ * Receives the events of several subscriptions over a single event bridge connection.
+ *
+ * The bridge holds one subscription per connection, so the subscriptions are combined into one
+ * whose filter selects the events of all of them, and an <code>EventRouter</code> routes each
+ * received event to the handlers of the subscriptions it belongs to.
+ */
+public class MultiplexedEventSubscriber implements Closeable {
+    private final String bridgeUrl;
+    private volatile String sessionToken;
+    private final String applicationId;
+    private final String description;
+    private final TransportMode transportMode;
+    private final EventRouter router = new EventRouter();
+    private WebEventSubscriber subscriber;
+
+    /**
+     * Creates a new <code>MultiplexedEventSubscriber</code> instance.
+     *
+     * @param url the OpenAccess event bridge URL
+     * @param sessionToken an authenticated OpenAccess session token
+     * @param applicationId the OpenAccess application id
+     * @param description the description of the combined subscription
+     * @param transportMode the transport used to receive events from the bridge
+     */
+    public MultiplexedEventSubscriber(String url, String sessionToken, String applicationId, String description, TransportMode transportMode) {
+        this.bridgeUrl = url;
+        this.sessionToken = sessionToken;
+        this.applicationId = applicationId;
+        this.description = description;
+        this.transportMode = transportMode;
+    }
+
+    /**
+     * Adds a subscription. Subscriptions must be added before receiving starts.
+     *
+     * @param subscription the subscription details
+     * @param handler the event handler that will process the events of the subscription
+     * @exception IllegalArgumentException if the filter of the subscription is not valid
+     */
+    public void addSubscription(EventSubscription subscription, IEventHandler handler) {
+        if (subscriber != null)
+            throw new IllegalStateException("Subscriptions must be added before receiving starts");
+
+        router.addRoute(subscription, handler);
+    }
+
+    /**
+     * Starts receiving events for all subscriptions from the event bridge.
+     */
+    public void startReceiving() throws Exception {
+        if (subscriber == null) {
+            EventSubscription combined = router.createCombinedSubscription(description);
+            subscriber = new WebEventSubscriber(bridgeUrl, sessionToken, applicationId, combined, router, transportMode);
+        }
+        subscriber.startReceiving();
+    }
+
+    /**
+     * Replaces the session token used with the event bridge, renewing the combined subscription if
+     * receiving has started.
+     *
+     * @param sessionToken the new authenticated OpenAccess session token
+     */
+    public void updateSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+        if (subscriber != null)
+            subscriber.updateSessionToken(sessionToken);
+    }
+
+    /**
+     * Stops receiving events from the event bridge.
+     */
+    public void stopReceiving() throws Exception {
+        if (subscriber != null)
+            subscriber.stopReceiving();
+    }
+
+    /**
+     * Closes the event bridge connection.
+     */
+    @Override
+    public void close() {
+        if (subscriber != null)
+            subscriber.close();
+    }
+}
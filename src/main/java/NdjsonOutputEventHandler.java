@@ -0,0 +1,195 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An implementation of <code>IEventHandler</code> that writes each business event as one line of
+ * JSON (newline-delimited JSON), for log shippers and other tools that parse events.
+ *
+ * The JSON payload of a <code>BusinessEvent</code> is written straight into UTF-8 bytes without
+ * building a string, keeping numbers exactly as the bridge sent them. The other callbacks are not
+ * written; they flush the output.
+ */
+public class NdjsonOutputEventHandler extends ChannelOutputEventHandler {
+    private final RecordBuffer record = new RecordBuffer(1024);
+
+    /**
+     * Creates a new <code>NdjsonOutputEventHandler</code> instance that writes to a stream. The
+     * stream is flushed, but not closed, by <code>close</code>.
+     *
+     * @param out the output stream
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public NdjsonOutputEventHandler(OutputStream out, int bufferSize, long flushIntervalMillis) {
+        super(Channels.newChannel(out), false, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    /**
+     * Creates a new <code>NdjsonOutputEventHandler</code> instance that writes to a channel, such
+     * as a <code>RollingFileChannel</code>. The channel is closed by <code>close</code>.
+     *
+     * @param channel the output channel
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     */
+    public NdjsonOutputEventHandler(WritableByteChannel channel, int bufferSize, long flushIntervalMillis) {
+        super(channel, true, ByteBuffer.allocateDirect(bufferSize), flushIntervalMillis);
+    }
+
+    @Override
+    public OutputFormat getFormat() {
+        return OutputFormat.NDJSON;
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        lock.lock();
+        try {
+            rollIfDue();
+            record.reset();
+            appendJson(record, businessEvent);
+            record.putByte('\n');
+            writeRecord(record);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        JsonObject payload = businessEvent.getPayload();
+        if (payload == null) {
+            onBusinessEvent(businessEvent.toMap());
+            return;
+        }
+
+        lock.lock();
+        try {
+            rollIfDue();
+            record.reset();
+            appendJson(record, payload);
+            record.putByte('\n');
+            writeRecord(record);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a JSON value as compact JSON text.
+     *
+     * @param record the record to append to
+     * @param value the JSON value
+     */
+    static void appendJson(RecordBuffer record, JsonElement value) {
+        if (value.isJsonPrimitive()) {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isString())
+                record.putJsonString(primitive.getAsString());
+            else if (primitive.isBoolean())
+                record.putUtf8(primitive.getAsBoolean() ? "true" : "false");
+            else
+                record.putUtf8(primitive.getAsString());
+        }
+        else if (value.isJsonObject()) {
+            record.putByte('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonElement> property : value.getAsJsonObject().entrySet()) {
+                if (!first)
+                    record.putByte(',');
+                first = false;
+                record.putJsonString(property.getKey());
+                record.putByte(':');
+                appendJson(record, property.getValue());
+            }
+            record.putByte('}');
+        }
+        else if (value.isJsonArray()) {
+            record.putByte('[');
+            JsonArray array = value.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0)
+                    record.putByte(',');
+                appendJson(record, array.get(i));
+            }
+            record.putByte(']');
+        }
+        else
+            record.putUtf8("null");
+    }
+
+    /**
+     * Appends a value of an event property map as compact JSON text. Whole numbers, which Gson
+     * converts to doubles, are written without a fraction, as the bridge sent them.
+     *
+     * @param record the record to append to
+     * @param value the property value
+     */
+    static void appendJson(RecordBuffer record, Object value) {
+        if (value == null)
+            record.putUtf8("null");
+        else if (value instanceof String)
+            record.putJsonString((String)value);
+        else if (value instanceof Boolean)
+            record.putUtf8((Boolean)value ? "true" : "false");
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            record.putDecimal(((Number)value).longValue());
+        else if (value instanceof Number) {
+            double doubleValue = ((Number)value).doubleValue();
+            long longValue = (long)doubleValue;
+            if (doubleValue == longValue)
+                record.putDecimal(longValue);
+            else if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue))
+                record.putUtf8("null");
+            else
+                record.putUtf8(value.toString());
+        }
+        else if (value instanceof Map) {
+            record.putByte('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> property : ((Map<?, ?>)value).entrySet()) {
+                if (!first)
+                    record.putByte(',');
+                first = false;
+                record.putJsonString(String.valueOf(property.getKey()));
+                record.putByte(':');
+                appendJson(record, property.getValue());
+            }
+            record.putByte('}');
+        }
+        else if (value instanceof Collection) {
+            record.putByte('[');
+            boolean first = true;
+            for (Object element : (Collection<?>)value) {
+                if (!first)
+                    record.putByte(',');
+                first = false;
+                appendJson(record, element);
+            }
+            record.putByte(']');
+        }
+        else
+            record.putJsonString(value.toString());
+    }
+}
@@ -14,24 +14,36 @@ import com.google.api.client.json.gson.GsonFactory;  // Updated import
 import com.google.api.client.util.Key;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A wrapper for the OpenAccess service. Hides all the HTTP REST details.
  */
 public class OpenAccessService {
     /**
-     * Used to create OpenAccess requests.
+     * Used to create OpenAccess requests. Each request gets its own headers, since requests are
+     * sent from several threads and the client writes to the headers while sending.
      */
-    private static class RequestInitializer implements HttpRequestInitializer {
-        private HttpHeaders headers;
-
-        public RequestInitializer(HttpHeaders headers) {
-            this.headers = headers;
-        }
-
+    private class RequestInitializer implements HttpRequestInitializer {
         @Override
         public void initialize(HttpRequest request) {
-            request.setParser(new JsonObjectParser(JSON_FACTORY));
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("application-id", applicationId);
+            String currentSessionToken = sessionToken;
+            if (currentSessionToken != null)
+                headers.set("session-token", currentSessionToken);
+
+            request.setParser(JSON_PARSER);
             request.setThrowExceptionOnExecuteError(false);
             request.setHeaders(headers);
         }
@@ -59,6 +71,24 @@ public class OpenAccessService {
         public String tokenExpiration;
     }
 
+    /**
+     * Represents an OpenAccess instance
+     */
+    public static class Instance {
+        @Key("property_value_map")
+        public Map<String, Object> properties;
+    }
+
+    /**
+     * Represents an OpenAccess get instances response
+     */
+    public static class GetInstancesResponse {
+        @Key("item_list")
+        public List<Instance> items;
+        @Key("total_items")
+        public int totalItems;
+    }
+
     /**
      * Represents an OpenAccess error
      */
@@ -79,17 +109,22 @@ public class OpenAccessService {
 
     private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
     private static final JsonFactory JSON_FACTORY = new GsonFactory();  // Updated factory
+    private static final JsonObjectParser JSON_PARSER = new JsonObjectParser(JSON_FACTORY);
 
     private static final String AUTHENTICATION_RESOURCE = "authentication";
+    private static final String INSTANCES_RESOURCE = "instances";
     private static final String API_VERSION_PATH = "?version=1.0";
     private static final String INTERNAL_DIRECTORY_ID = "id-1";
 
     private HttpRequestFactory requestFactory;
+    private final GenericUrl authenticationUrl;
+    private final GenericUrl instancesUrl;
 
     private final String serviceUrl;
     private final String applicationId;
-    private String sessionToken;
-    private HttpHeaders requestHeaders;
+    private volatile String sessionToken;
+    private volatile Instant tokenExpiration;
+    private final LatencyHistogram loginLatency = new LatencyHistogram();
 
     /**
      * Creates a new <code>OpenAccessService</code> instance.
@@ -98,12 +133,23 @@ public class OpenAccessService {
      * @param applicationId the application id to use with the OpenAccess service
      */
     public OpenAccessService(String url, String applicationId) {
+        this(url, applicationId, HTTP_TRANSPORT);
+    }
+
+    /**
+     * Creates a new <code>OpenAccessService</code> instance that sends requests through the given
+     * HTTP transport.
+     *
+     * @param url the OpenAccess service URL
+     * @param applicationId the application id to use with the OpenAccess service
+     * @param transport the HTTP transport, which may be shared with other services
+     */
+    public OpenAccessService(String url, String applicationId, HttpTransport transport) {
         this.serviceUrl = url;
         this.applicationId = applicationId;
-        requestHeaders = new HttpHeaders();
-        requestHeaders.set("application-id", applicationId);
-
-        requestFactory = HTTP_TRANSPORT.createRequestFactory(new RequestInitializer(requestHeaders));
+        requestFactory = transport.createRequestFactory(new RequestInitializer());
+        authenticationUrl = createUrl(AUTHENTICATION_RESOURCE);
+        instancesUrl = createUrl(INSTANCES_RESOURCE);
     }
 
     /**
@@ -138,13 +184,20 @@ public class OpenAccessService {
         requestBody.directoryId = directoryId;
         JsonHttpContent content = new JsonHttpContent(JSON_FACTORY, requestBody);
 
-        HttpRequest request = requestFactory.buildPostRequest(createUrl(AUTHENTICATION_RESOURCE), content);
-        HttpResponse response = request.execute();
+        HttpRequest request = requestFactory.buildPostRequest(authenticationUrl, content);
+        long startNanos = System.nanoTime();
+        HttpResponse response;
+        try {
+            response = request.execute();
+        }
+        finally {
+            loginLatency.recordSince(startNanos);
+        }
         validateSuccessResponse(response);
 
         AddAuthenticationResponse successResponse = response.parseAs(AddAuthenticationResponse.class);
         sessionToken = successResponse.sessionToken;
-        requestHeaders.set("session-token", sessionToken);
+        tokenExpiration = parseTokenExpiration(successResponse.tokenExpiration);
 
         return sessionToken;
     }
@@ -156,11 +209,92 @@ public class OpenAccessService {
      * @exception OpenAccessException if there was an OpenAccess error
      */
     public void logout() throws IOException, OpenAccessException {
-        HttpRequest request = requestFactory.buildDeleteRequest(createUrl(AUTHENTICATION_RESOURCE));
+        HttpRequest request = requestFactory.buildDeleteRequest(authenticationUrl);
         HttpResponse response = request.execute();
         validateSuccessResponse(response);
 
         sessionToken = null;
+        tokenExpiration = null;
+    }
+
+    /**
+     * Logout a session of OpenAccess other than the current one, such as one replaced by a new
+     * login. The current session token is kept.
+     *
+     * @param sessionToken the session token to invalidate
+     * @exception IOException if there was an error handling the response
+     * @exception OpenAccessException if there was an OpenAccess error
+     */
+    public void logout(String sessionToken) throws IOException, OpenAccessException {
+        HttpRequest request = requestFactory.buildDeleteRequest(authenticationUrl);
+        request.setHeaders(new HttpHeaders()
+            .set("application-id", applicationId)
+            .set("session-token", sessionToken));
+        HttpResponse response = request.execute();
+        validateSuccessResponse(response);
+    }
+
+    /**
+     * Get the instances of an OpenAccess type that match a filter.
+     *
+     * @param typeName the type name, such as <code>Lnl_Cardholder</code>
+     * @param filter the filter, such as <code>ID = 1</code>, or <code>null</code> for all instances
+     * @param pageSize the maximum number of instances to return
+     * @return the property values of each instance
+     * @exception IOException if there was an error handling the response
+     * @exception OpenAccessException if there was an OpenAccess error
+     */
+    public List<Map<String, Object>> getInstances(String typeName, String filter, int pageSize) throws IOException, OpenAccessException {
+        GenericUrl url = instancesUrl.clone();
+        url.set("type_name", typeName);
+        url.set("page_size", pageSize);
+        if (filter != null)
+            url.set("filter", filter);
+
+        HttpResponse response = requestFactory.buildGetRequest(url).execute();
+        validateSuccessResponse(response);
+
+        GetInstancesResponse successResponse = response.parseAs(GetInstancesResponse.class);
+        if (successResponse.items == null)
+            return Collections.emptyList();
+
+        List<Map<String, Object>> instances = new ArrayList<>(successResponse.items.size());
+        for (Instance instance : successResponse.items)
+            instances.add(instance.properties);
+        return instances;
+    }
+
+    /**
+     * Get the instances of an OpenAccess type with the given key values, in one request.
+     *
+     * @param typeName the type name, such as <code>Lnl_Cardholder</code>
+     * @param keyProperty the key property, such as <code>ID</code>
+     * @param keys the key values; numeric values are compared as numbers, others as strings
+     * @return the property values of each instance found, by key value
+     * @exception IOException if there was an error handling the response
+     * @exception OpenAccessException if there was an OpenAccess error
+     */
+    public Map<String, Map<String, Object>> getInstancesByKey(String typeName, String keyProperty, Collection<String> keys) throws IOException, OpenAccessException {
+        StringBuilder filter = new StringBuilder();
+        for (String key : keys) {
+            if (filter.length() > 0)
+                filter.append(" OR ");
+            filter.append(keyProperty).append(" = ");
+            if (key.matches("-?\\d+"))
+                filter.append(key);
+            else
+                filter.append('"').append(key.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+
+        Map<String, Map<String, Object>> instancesByKey = new HashMap<>();
+        for (Map<String, Object> instance : getInstances(typeName, filter.toString(), keys.size())) {
+            Object key = instance.get(keyProperty);
+            if (key instanceof Number && ((Number)key).doubleValue() == ((Number)key).longValue())
+                key = ((Number)key).longValue();
+            if (key != null)
+                instancesByKey.put(key.toString(), instance);
+        }
+        return instancesByKey;
     }
 
     /**
@@ -182,7 +316,50 @@ public class OpenAccessService {
     }
 
     /**
-     * Create a resource URL, given a path relative to the base URL.
+     * Get the time the session token expires, as reported by the OpenAccess service at login.
+     *
+     * @return the token expiration time, or <code>null</code> if not logged in or not reported
+     */
+    public Instant getTokenExpiration() {
+        return tokenExpiration;
+    }
+
+    /**
+     * Get the time taken by login requests, including failed ones.
+     *
+     * @return the login latency histogram
+     */
+    public LatencyHistogram getLoginLatency() {
+        return loginLatency;
+    }
+
+    /**
+     * Parses a token expiration time. Times without a time zone offset are taken to be in the
+     * local time zone.
+     *
+     * @param text the token expiration time
+     * @return the token expiration time, or <code>null</code> if it could not be parsed
+     */
+    private static Instant parseTokenExpiration(String text) {
+        if (text == null)
+            return null;
+
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        }
+        catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant();
+            }
+            catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Create a resource URL, given a path relative to the base URL. URLs of fixed resources are
+     * created once, in the constructor.
      *
      * @param path the relative path
      * @return the resource URL
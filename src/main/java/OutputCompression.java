@@ -0,0 +1,72 @@
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * The compressions that can be applied to event output files.
+ */
+public enum OutputCompression {
+    /**
+     * No compression.
+     */
+    NONE,
+
+    /**
+     * Gzip, with each write of the output buffer compressed as a separate gzip member. Standard
+     * tools read the members as one stream, and a file cut short by a crash loses only the last
+     * member.
+     */
+    GZIP;
+
+    /**
+     * Wraps a channel so that the bytes written to it are compressed.
+     *
+     * @param channel the channel to write the compressed bytes to
+     * @return a compressing channel, or the channel itself for <code>NONE</code>
+     */
+    public WritableByteChannel wrap(WritableByteChannel channel) {
+        switch (this) {
+            case GZIP:
+                return new GzipBlockChannel(channel, Deflater.BEST_SPEED);
+            default:
+                return channel;
+        }
+    }
+
+    /**
+     * Gets the suffix added to the names of files written with this compression.
+     *
+     * @return the file name suffix, such as <code>.gz</code>
+     */
+    public String getFileSuffix() {
+        switch (this) {
+            case GZIP:
+                return ".gz";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Parses an output compression setting, ignoring case.
+     *
+     * @param value the setting value, or <code>null</code> for the default
+     * @param defaultCompression the compression to use when no value is given
+     * @return the parsed output compression
+     * @exception IllegalArgumentException if the value is not a known compression
+     */
+    public static OutputCompression parse(String value, OutputCompression defaultCompression) {
+        if (value == null || value.trim().isEmpty())
+            return defaultCompression;
+
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "none":
+                return NONE;
+            case "gzip":
+            case "gz":
+                return GZIP;
+            default:
+                throw new IllegalArgumentException("Unknown output compression: " + value);
+        }
+    }
+}
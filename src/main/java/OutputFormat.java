@@ -0,0 +1,95 @@
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+
+/**
+ * The formats events can be written in.
+ */
+public enum OutputFormat {
+    /**
+     * Human-readable <code>key: value</code> lines for each event, with the other callbacks as
+     * messages. Written by <code>BufferedOutputEventHandler</code>.
+     */
+    TEXT,
+
+    /**
+     * One JSON object per line, holding the event properties as received. Written by
+     * <code>NdjsonOutputEventHandler</code>.
+     */
+    NDJSON,
+
+    /**
+     * Length-prefixed binary records with a dictionary of property names. Written by
+     * <code>BinaryOutputEventHandler</code> and read by <code>BinaryEventReader</code>.
+     */
+    BINARY;
+
+    /**
+     * Creates a handler that writes this format to a stream. The stream is flushed, but not
+     * closed, when the handler is closed.
+     *
+     * @param out the output stream
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     * @return a new output handler
+     */
+    public ChannelOutputEventHandler createHandler(OutputStream out, int bufferSize, long flushIntervalMillis) {
+        switch (this) {
+            case NDJSON:
+                return new NdjsonOutputEventHandler(out, bufferSize, flushIntervalMillis);
+            case BINARY:
+                return new BinaryOutputEventHandler(out, bufferSize, flushIntervalMillis);
+            default:
+                return new BufferedOutputEventHandler(out, bufferSize, flushIntervalMillis);
+        }
+    }
+
+    /**
+     * Creates a handler that writes this format to a channel, such as a file or a
+     * <code>RollingFileChannel</code>. The channel is closed when the handler is closed.
+     *
+     * @param channel the output channel
+     * @param bufferSize the size of the output buffer in bytes
+     * @param flushIntervalMillis the longest time output stays buffered, or 0 to flush only when
+     *     the buffer is full
+     * @return a new output handler
+     */
+    public ChannelOutputEventHandler createHandler(WritableByteChannel channel, int bufferSize, long flushIntervalMillis) {
+        switch (this) {
+            case NDJSON:
+                return new NdjsonOutputEventHandler(channel, bufferSize, flushIntervalMillis);
+            case BINARY:
+                return new BinaryOutputEventHandler(channel, bufferSize, flushIntervalMillis);
+            default:
+                return new BufferedOutputEventHandler(channel, bufferSize, flushIntervalMillis);
+        }
+    }
+
+    /**
+     * Parses an output format setting. Accepts the enum names as well as <code>json</code> and
+     * <code>jsonl</code> for NDJSON, ignoring case.
+     *
+     * @param value the setting value, or <code>null</code> for the default
+     * @param defaultFormat the format to use when no value is given
+     * @return the parsed output format
+     * @exception IllegalArgumentException if the value is not a known output format
+     */
+    public static OutputFormat parse(String value, OutputFormat defaultFormat) {
+        if (value == null || value.trim().isEmpty())
+            return defaultFormat;
+
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "text":
+                return TEXT;
+            case "ndjson":
+            case "jsonl":
+            case "json":
+                return NDJSON;
+            case "binary":
+                return BINARY;
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + value);
+        }
+    }
+}
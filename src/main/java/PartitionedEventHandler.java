@@ -0,0 +1,318 @@
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An <code>IEventHandler</code> decorator that handles business events in parallel on a fixed
+ * number of lanes while keeping the events of each key in order.
+ *
+ * Each lane is a bounded queue with its own thread. An event goes to the lane chosen by the hash
+ * of its key properties, by default the panel and device id, so the events of one door or reader
+ * are always handled in the order received, one at a time, while events of different keys are
+ * handled concurrently. An event missing some of the key properties is keyed by those it has, so
+ * panel events without a device id stay in order too; events with none of them have no order to
+ * keep and are spread over the lanes in turn. The wrapped handler must be thread safe. All other
+ * callbacks are forwarded directly on the calling thread.
+ */
+public class PartitionedEventHandler implements IEventHandler, Closeable {
+    private static final String[] DEFAULT_KEY_PROPERTIES = { BusinessEvent.PANEL_ID, BusinessEvent.DEVICE_ID };
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final IEventHandler handler;
+    private final String[] keyProperties;
+    private final BackpressurePolicy policy;
+    private final BlockingQueue<BusinessEvent>[] lanes;
+    private final Thread[] workers;
+    private final AtomicLongArray laneEventCounts;
+    private final AtomicInteger nextUnkeyedLane = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Creates a new <code>PartitionedEventHandler</code> instance keyed by panel and device id,
+     * and starts its lanes.
+     *
+     * @param handler the event handler that will process the events
+     * @param laneCount the number of lanes
+     * @param laneCapacity the maximum number of events waiting in each lane
+     * @param policy what to do with a new event when its lane is full: <code>BLOCK</code> or
+     *     <code>DROP_OLDEST</code>
+     */
+    public PartitionedEventHandler(IEventHandler handler, int laneCount, int laneCapacity, BackpressurePolicy policy) {
+        this(handler, laneCount, laneCapacity, policy, DEFAULT_KEY_PROPERTIES);
+    }
+
+    /**
+     * Creates a new <code>PartitionedEventHandler</code> instance and starts its lanes.
+     *
+     * @param handler the event handler that will process the events
+     * @param laneCount the number of lanes
+     * @param laneCapacity the maximum number of events waiting in each lane
+     * @param policy what to do with a new event when its lane is full: <code>BLOCK</code> or
+     *     <code>DROP_OLDEST</code>
+     * @param keyProperties the properties whose values must be handled in order
+     */
+    @SuppressWarnings("unchecked")
+    public PartitionedEventHandler(IEventHandler handler, int laneCount, int laneCapacity, BackpressurePolicy policy,
+            String... keyProperties) {
+        if (laneCount < 1 || keyProperties.length == 0)
+            throw new IllegalArgumentException("At least one lane and one key property are required");
+        if (policy == BackpressurePolicy.SPILL)
+            throw new IllegalArgumentException("Lanes cannot spill to disk");
+
+        this.handler = handler;
+        this.keyProperties = keyProperties.clone();
+        this.policy = policy;
+
+        lanes = new BlockingQueue[laneCount];
+        workers = new Thread[laneCount];
+        laneEventCounts = new AtomicLongArray(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            BlockingQueue<BusinessEvent> lane = new ArrayBlockingQueue<>(laneCapacity);
+            lanes[i] = lane;
+            workers[i] = new Thread(() -> runLane(lane), "event-lane-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        if (!running) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        int laneIndex = laneOf(businessEvent);
+        BlockingQueue<BusinessEvent> lane = lanes[laneIndex];
+        laneEventCounts.incrementAndGet(laneIndex);
+        if (policy == BackpressurePolicy.BLOCK) {
+            try {
+                lane.put(businessEvent);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedCount.incrementAndGet();
+            }
+        }
+        else {
+            while (!lane.offer(businessEvent)) {
+                if (lane.poll() != null)
+                    droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the number of lanes.
+     *
+     * @return the lane count
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Gets the number of events waiting in a lane.
+     *
+     * @param lane the lane index
+     * @return the lane depth
+     */
+    public int getLaneDepth(int lane) {
+        return lanes[lane].size();
+    }
+
+    /**
+     * Gets the number of events waiting in all lanes.
+     *
+     * @return the total depth
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (BlockingQueue<BusinessEvent> lane : lanes)
+            depth += lane.size();
+        return depth;
+    }
+
+    /**
+     * Gets the number of events sent to a lane since it started.
+     *
+     * @param lane the lane index
+     * @return the lane event count
+     */
+    public long getLaneEventCount(int lane) {
+        return laneEventCounts.get(lane);
+    }
+
+    /**
+     * Gets how unevenly the keys spread events over the lanes: the event count of the busiest
+     * lane divided by the mean. A value of 1 means an even spread; a value near the lane count
+     * means one key gets most of the events, and adding lanes will not help.
+     *
+     * @return the skew, or 0 if no events were received
+     */
+    public double getSkew() {
+        long max = 0;
+        long total = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            long count = laneEventCounts.get(i);
+            max = Math.max(max, count);
+            total += count;
+        }
+        return total == 0 ? 0 : (double)max * lanes.length / total;
+    }
+
+    /**
+     * Gets the number of events dropped because a lane was full or the handler was closed.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the number of events for which the wrapped handler threw an exception.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Stops accepting events and waits for the events in the lanes to be handled.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all waiting events were handled before the timeout
+     * @exception InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis > 0)
+                worker.join(remainingMillis);
+        }
+
+        boolean drained = getQueueDepth() == 0;
+        for (Thread worker : workers)
+            worker.interrupt();
+
+        return drained;
+    }
+
+    /**
+     * Stops the lanes, waiting a few seconds for waiting events to be handled.
+     */
+    @Override
+    public void close() {
+        try {
+            shutdown(DEFAULT_DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes events off a lane and passes them to the wrapped handler until the handler is closed
+     * and the lane is empty.
+     */
+    private void runLane(BlockingQueue<BusinessEvent> lane) {
+        try {
+            while (running || !lane.isEmpty()) {
+                BusinessEvent businessEvent = lane.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (businessEvent == null)
+                    continue;
+
+                try {
+                    handler.onBusinessEvent(businessEvent);
+                }
+                catch (RuntimeException e) {
+                    failedCount.incrementAndGet();
+                    System.err.format("Error: event handler failed: %s%n", e);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // Closed before the lane drained
+        }
+    }
+
+    /**
+     * Chooses the lane of an event from the 64-bit FNV-1a hash of its key property values, with
+     * a missing value hashed as a marker of its own.
+     */
+    private int laneOf(BusinessEvent businessEvent) {
+        long hash = FNV_OFFSET_BASIS;
+        boolean keyed = false;
+        for (String property : keyProperties) {
+            String value = businessEvent.getString(property);
+            if (value == null) {
+                hash = (hash ^ 0xFFFE) * FNV_PRIME;
+                continue;
+            }
+
+            keyed = true;
+            for (int i = 0; i < value.length(); i++)
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            hash = (hash ^ 0xFFFF) * FNV_PRIME;
+        }
+        if (!keyed)
+            return Math.floorMod(nextUnkeyedLane.getAndIncrement(), lanes.length);
+
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int)Math.floorMod(hash, (long)lanes.length);
+    }
+}
@@ -1,4 +1,13 @@
 import com.google.api.client.http.HttpTransport;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -13,35 +22,136 @@ public class Program {
     static final String OPENACCESS_USERNAME = System.getenv("OPENACCESS_USERNAME");
     static final String OPENACCESS_PASSWORD = System.getenv("OPENACCESS_PASSWORD");
     static final String OPENACCESS_DIRECTORY_ID = "id-1";
+    static final HttpTransportMode OPENACCESS_HTTP_TRANSPORT =
+        HttpTransportMode.parse(System.getenv("OPENACCESS_HTTP_TRANSPORT"), HttpTransportMode.POOLED);
+    static final long SESSION_TOKEN_REFRESH_AHEAD_MILLIS = 5 * 60 * 1000;
+    static final TransportMode WEB_EVENT_BRIDGE_TRANSPORT =
+        TransportMode.parse(System.getenv("WEB_EVENT_BRIDGE_TRANSPORT"), TransportMode.LONG_POLLING);
+    static final boolean WEB_EVENT_BRIDGE_HOT_STANDBY = Boolean.parseBoolean(System.getenv("WEB_EVENT_BRIDGE_HOT_STANDBY"));
 
     // Subscription details
     static final String SUBSCRIPTION_DESCRIPTION = "Java event gateway";
     static final String SUBSCRIPTION_FILTER = "business_event_class eq 'hardware_event'";
-    static final boolean SUBSCRIPTION_IS_DURABLE = false;
+    static final boolean SUBSCRIPTION_IS_DURABLE = Boolean.parseBoolean(System.getenv("SUBSCRIPTION_IS_DURABLE"));
+
+    // Dispatch details
+    static final int DISPATCH_QUEUE_CAPACITY = 10000;
+    static final int DISPATCH_WORKER_COUNT = 1;
+    static final BackpressurePolicy DISPATCH_BACKPRESSURE_POLICY = BackpressurePolicy.BLOCK;
+
+    // Partition details; if set, events are handled on this many lanes, in order per panel and device
+    static final int PARTITION_LANE_COUNT = parseInt(System.getenv("EVENT_PARTITION_LANES"), 0);
+    static final int PARTITION_LANE_CAPACITY = 1000;
+
+    // Spool details; events are spooled to disk before they are handled if a directory is set
+    static final String EVENT_SPOOL_DIRECTORY = System.getenv("EVENT_SPOOL_DIRECTORY");
+    static final int SPOOL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final int SPOOL_SYNC_BATCH_SIZE = 256;
+    static final long SPOOL_SYNC_INTERVAL_MILLIS = 100;
+    static final String SPOOL_CONSUMER = "console";
+    static final int SPOOL_COMMIT_BATCH_SIZE = 256;
+
+    // Deduplication details; redelivered events are dropped if seen within the window
+    static final long DEDUP_WINDOW_MILLIS = 10 * 60 * 1000;
+    static final int DEDUP_MAX_ENTRIES = 100000;
+
+    // Enrichment details; events are enriched with the OpenAccess instances they reference if enabled
+    static final boolean EVENT_ENRICHMENT = Boolean.parseBoolean(System.getenv("EVENT_ENRICHMENT"));
+    static final int ENRICHMENT_CACHE_SIZE = 10000;
+    static final long ENRICHMENT_TTL_MILLIS = 5 * 60 * 1000;
+    static final int ENRICHMENT_BATCH_SIZE = 50;
+    static final long ENRICHMENT_BATCH_LINGER_MILLIS = 5;
+    static final int ENRICHMENT_LOADER_THREADS = 4;
+    static final long ENRICHMENT_LOOKUP_TIMEOUT_MILLIS = 2000;
+
+    // Metrics details; metrics are served at /metrics on this port in the Prometheus text format if set
+    static final String METRICS_PORT = System.getenv("METRICS_PORT");
+
+    // Tracing details; one event in this many is traced from the server to the end of handling if set
+    static final int EVENT_TRACE_SAMPLE_EVERY = parseInt(System.getenv("EVENT_TRACE_SAMPLE_EVERY"), 0);
+    static final int EVENT_TRACE_SLOWEST_COUNT = 20;
+
+    // Output details; events are written to the console as text, NDJSON or binary records
+    static final OutputFormat EVENT_OUTPUT_FORMAT = OutputFormat.parse(System.getenv("EVENT_OUTPUT_FORMAT"), OutputFormat.TEXT);
+    static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    static final long OUTPUT_FLUSH_INTERVAL_MILLIS = 200;
+
+    // The standard output of the process, kept when status text is moved to standard error
+    static final PrintStream STANDARD_OUTPUT = System.out;
     
     static Scanner inputScanner;
     
     public static void main(String[] args) throws Exception {
+        StartupTimer startupTimer = new StartupTimer();
+
+        // Load the startup classes and exit, as the training run for a class data sharing archive
+        if (args.length == 1 && "--warmup".equals(args[0])) {
+            new StartupWarmup("https://localhost/eventbridge/", WEB_EVENT_BRIDGE_TRANSPORT, EnumSet.allOf(OutputFormat.class),
+                List.of(SUBSCRIPTION_FILTER)).run();
+            return;
+        }
+
+        // Run headless under a service manager, configured by a file
+        if (args.length == 2 && "--daemon".equals(args[0])) {
+            int status = Daemon.run(Paths.get(args[1]));
+            if (status != 0)
+                System.exit(status);
+            return;
+        }
+
         // Uncomment to enable HTTP transport logging for the Google HTTP Client Library
         //enableLogging();
+
+        if (EVENT_OUTPUT_FORMAT != OutputFormat.TEXT)
+            reserveStandardOutput();
         
         inputScanner = new Scanner(System.in);
+        new StartupWarmup(WEB_EVENT_BRIDGE_URL, WEB_EVENT_BRIDGE_TRANSPORT, List.of(EVENT_OUTPUT_FORMAT),
+            List.of(SUBSCRIPTION_FILTER)).start();
+        MetricsServer metricsServer = null;
+        LatencyTracer tracer = null;
         try {
+            MetricsRegistry metrics = null;
+            if (METRICS_PORT != null) {
+                metrics = new MetricsRegistry();
+                metricsServer = new MetricsServer(metrics, Integer.parseInt(METRICS_PORT));
+                System.out.format("Serving metrics at http://localhost:%d/metrics%n", metricsServer.getPort());
+            }
+            if (EVENT_TRACE_SAMPLE_EVERY > 0) {
+                tracer = new LatencyTracer(EVENT_TRACE_SAMPLE_EVERY, EVENT_TRACE_SLOWEST_COUNT);
+                if (metrics != null) {
+                    tracer.registerMetrics(metrics);
+                    metricsServer.addPage("/traces", tracer::dumpSlowest);
+                }
+            }
+
             System.out.format("Connecting to the OpenAccess service at %s with application id %s...%n",
                 OPENACCESS_URL, OPENACCESS_APPLICATION_ID);
 
-            OpenAccessService service = new OpenAccessService(OPENACCESS_URL, OPENACCESS_APPLICATION_ID);
-            String sessionToken = service.login(OPENACCESS_USERNAME, OPENACCESS_PASSWORD, OPENACCESS_DIRECTORY_ID);
-
-            System.out.println("Successfully connected to the OpenAccess service.");
+            OpenAccessService service = new OpenAccessService(OPENACCESS_URL, OPENACCESS_APPLICATION_ID,
+                OPENACCESS_HTTP_TRANSPORT.createTransport());
+            SessionTokenManager tokenManager = new SessionTokenManager(service, OPENACCESS_USERNAME, OPENACCESS_PASSWORD,
+                OPENACCESS_DIRECTORY_ID, SESSION_TOKEN_REFRESH_AHEAD_MILLIS);
+            if (metrics != null) {
+                metrics.histogram("openaccess_login_latency_seconds", "Time taken by OpenAccess login requests.",
+                    service.getLoginLatency());
+                metrics.counter("openaccess_session_token_refreshes_total", "Session token refreshes.",
+                    tokenManager::getRefreshCount);
+                metrics.counter("openaccess_session_token_refresh_failures_total", "Failed session token refreshes.",
+                    tokenManager::getFailedRefreshCount);
+                metrics.gauge("openaccess_time_to_first_event_seconds", "Time from process start to the first event received.",
+                    () -> startupTimer.getTimeToFirstEventMillis() < 0 ? Double.NaN : startupTimer.getTimeToFirstEventMillis() / 1000.0);
+            }
 
             EventSubscription subscription = new EventSubscription();
             subscription.description = SUBSCRIPTION_DESCRIPTION;
             subscription.filter = SUBSCRIPTION_FILTER;
             subscription.is_durable = SUBSCRIPTION_IS_DURABLE;
 
-            receiveEvents(WEB_EVENT_BRIDGE_URL, sessionToken, OPENACCESS_APPLICATION_ID, subscription);
+            receiveEvents(WEB_EVENT_BRIDGE_URL, service, tokenManager, OPENACCESS_APPLICATION_ID, subscription, metrics,
+                tracer, startupTimer);
 
+            tokenManager.close();
             service.logout();
         }
         catch (OpenAccessException e) {
@@ -54,34 +164,322 @@ public class Program {
             System.out.println("Press enter to exit...");
             inputScanner.nextLine();
         }
+        finally {
+            if (tracer != null) {
+                tracer.close();
+                System.out.format("Event latency by segment:%n%s%n%s", tracer, tracer.dumpSlowest());
+            }
+            if (metricsServer != null)
+                metricsServer.close();
+        }
     }
 
     /**
-     * Receive events until an ENTER key is input.
+     * Log in and receive events until an ENTER key is input.
      *
      * @param bridgeUrl the URL of the web event bridge
-     * @param sessionToken the authenticated session token to use with the web event bridge
+     * @param service the OpenAccess service to look up event references with
+     * @param tokenManager the manager of the session token to use with the web event bridge, logged in while connecting to the bridge
      * @param applicationId the application id
      * @param subscription the details of the event subscription
+     * @param metrics the registry to record pipeline metrics in, or <code>null</code>
+     * @param tracer the tracer of event latencies, or <code>null</code>
+     * @param startupTimer the timer that reports the time to the first event
      */
-    public static void receiveEvents(String bridgeUrl, String sessionToken, String applicationId, EventSubscription subscription) throws Exception {
-        WebEventSubscriber subscriber = null;
+    public static void receiveEvents(String bridgeUrl, OpenAccessService service, SessionTokenManager tokenManager, String applicationId, EventSubscription subscription, MetricsRegistry metrics, LatencyTracer tracer, StartupTimer startupTimer) throws Exception {
+        IEventSubscriber subscriber = null;
+        DispatchingEventHandler dispatcher = null;
+        PartitionedEventHandler partitioner = null;
+        EventSpool spool = null;
+        SpoolingEventHandler spooler = null;
+        ChannelOutputEventHandler consoleHandler = null;
+        List<EnrichmentCache<String, Map<String, Object>>> caches = new ArrayList<>();
         try {
-            StreamOutputEventHandler consoleHandler = new StreamOutputEventHandler(System.out);
+            consoleHandler = EVENT_OUTPUT_FORMAT.createHandler(openStandardOutput(EVENT_OUTPUT_FORMAT), OUTPUT_BUFFER_SIZE,
+                OUTPUT_FLUSH_INTERVAL_MILLIS);
 
-            System.out.format("Connecting to the Web Event Bridge at %s...%n", bridgeUrl);
-            subscriber = new WebEventSubscriber(bridgeUrl, sessionToken, applicationId, subscription, consoleHandler);
+            IEventHandler outputHandler = consoleHandler;
+            if (metrics != null)
+                outputHandler = new InstrumentedEventHandler(outputHandler, metrics, subscription.description, "output");
+            if (EVENT_ENRICHMENT) {
+                caches.add(createInstanceCache(service, "Lnl_Cardholder", "ID"));
+                caches.add(createInstanceCache(service, "Lnl_Panel", "ID"));
 
-            subscriber.startReceiving();
-            inputScanner.nextLine();
+                EnrichingEventHandler enricher = new EnrichingEventHandler(outputHandler, ENRICHMENT_LOOKUP_TIMEOUT_MILLIS);
+                enricher.addLookup(BusinessEvent.CARDHOLDER_KEY, "cardholder", caches.get(0));
+                enricher.addLookup(BusinessEvent.PANEL_ID, "panel", caches.get(1));
+                outputHandler = enricher;
+            }
+            if (tracer != null)
+                outputHandler = tracer.handling(outputHandler);
+
+            IEventHandler handler;
+            if (EVENT_SPOOL_DIRECTORY != null) {
+                System.out.format("Spooling events to %s...%n", EVENT_SPOOL_DIRECTORY);
+                if (PARTITION_LANE_COUNT > 0)
+                    System.err.println("Warning: EVENT_PARTITION_LANES is ignored while spooling; spooled events are handled in order on one thread.");
+                spool = new EventSpool(Paths.get(EVENT_SPOOL_DIRECTORY), SPOOL_SEGMENT_SIZE, SPOOL_SYNC_BATCH_SIZE,
+                    SPOOL_SYNC_INTERVAL_MILLIS);
+                spooler = new SpoolingEventHandler(outputHandler, spool, SPOOL_CONSUMER, SPOOL_COMMIT_BATCH_SIZE);
+                handler = spooler;
+            }
+            else if (PARTITION_LANE_COUNT > 0) {
+                partitioner = new PartitionedEventHandler(outputHandler, PARTITION_LANE_COUNT, PARTITION_LANE_CAPACITY,
+                    DISPATCH_BACKPRESSURE_POLICY);
+                handler = partitioner;
+            }
+            else {
+                dispatcher = new DispatchingEventHandler(outputHandler, DISPATCH_QUEUE_CAPACITY, DISPATCH_WORKER_COUNT,
+                    DISPATCH_BACKPRESSURE_POLICY);
+                handler = dispatcher;
+            }
+            DeduplicatingEventHandler deduplicator = new DeduplicatingEventHandler(handler, DEDUP_WINDOW_MILLIS, DEDUP_MAX_ENTRIES);
+            handler = deduplicator;
+            if (metrics != null) {
+                handler = new InstrumentedEventHandler(handler, metrics, subscription.description, "received");
+                registerPipelineMetrics(metrics, deduplicator, dispatcher, partitioner, spooler, caches);
+            }
+            if (tracer != null)
+                handler = tracer.receiving(handler);
+
+            System.out.format("Connecting to the Web Event Bridge at %s using %s...%n", bridgeUrl, WEB_EVENT_BRIDGE_TRANSPORT);
+            subscriber = createSubscriber(bridgeUrl, null, applicationId, subscription, handler, WEB_EVENT_BRIDGE_TRANSPORT,
+                WEB_EVENT_BRIDGE_HOT_STANDBY, DEDUP_WINDOW_MILLIS, DEDUP_MAX_ENTRIES, metrics);
+            subscriber.setFirstEventListener(startupTimer::onFirstEvent);
+            tokenManager.addTokenListener(subscriber::updateSessionToken);
+            if (metrics != null) {
+                metrics.counter("openaccess_bridge_reconnects_total", "Reconnections to the event bridge.",
+                    subscriber::getReconnectCount);
+                metrics.counter("openaccess_bridge_missed_events_total", "Events estimated missed while disconnected.",
+                    subscriber::getMissedEventEstimate);
+            }
+
+            loginAndStartReceiving(tokenManager, subscriber, startupTimer);
+
+            // Enter handover to move to the standby connection; any other line exits
+            while ("handover".equalsIgnoreCase(inputScanner.nextLine().trim())) {
+                try {
+                    System.out.println(handover(subscriber));
+                }
+                catch (Exception e) {
+                    System.err.format("Error: could not hand over: %s%n", e.getMessage());
+                }
+            }
             subscriber.stopReceiving();
         }
         finally {
             if (subscriber != null)
                 subscriber.close();
+            if (dispatcher != null)
+                dispatcher.close();
+            if (partitioner != null)
+                partitioner.close();
+            if (spooler != null)
+                spooler.close();
+            if (spool != null)
+                spool.close();
+            for (EnrichmentCache<String, Map<String, Object>> cache : caches)
+                cache.close();
+            if (consoleHandler != null)
+                consoleHandler.close();
         }
     }
 
+    /**
+     * Hands the subscription over to the standby connection, and starts a new standby, such as
+     * before the bridge node the active connection uses is restarted.
+     *
+     * @param subscriber the subscriber
+     * @return a description of the result
+     * @exception IllegalStateException if the subscriber has no hot standby, or it is not ready
+     * @exception Exception if the new standby subscription could not be created
+     */
+    static String handover(IEventSubscriber subscriber) throws Exception {
+        if (!(subscriber instanceof HotStandbySubscriber))
+            throw new IllegalStateException("The hot standby connection is not enabled");
+
+        HotStandbySubscriber hotStandby = (HotStandbySubscriber)subscriber;
+        hotStandby.handover();
+        return String.format("Handed over to the standby connection (%d handovers).", hotStandby.getHandoverCount());
+    }
+
+    /**
+     * Creates a subscriber with one connection to the event bridge, or with a hot standby
+     * connection as well.
+     *
+     * @param bridgeUrl the URL of the web event bridge
+     * @param sessionToken an authenticated session token, or <code>null</code> to log in while connecting
+     * @param applicationId the application id
+     * @param subscription the details of the event subscription
+     * @param handler the event handler that will process events from the bridge
+     * @param transportMode the transport used to receive events from the bridge
+     * @param hotStandby true to receive over a standby connection as well
+     * @param windowMillis how long the hot standby remembers events to drop their copies
+     * @param maxEntries the maximum number of events the hot standby remembers
+     * @param metrics the registry to record the failovers in, or <code>null</code>
+     * @return the subscriber
+     */
+    static IEventSubscriber createSubscriber(String bridgeUrl, String sessionToken, String applicationId, EventSubscription subscription,
+            IEventHandler handler, TransportMode transportMode, boolean hotStandby, long windowMillis, int maxEntries, MetricsRegistry metrics) {
+        if (!hotStandby)
+            return new WebEventSubscriber(bridgeUrl, sessionToken, applicationId, subscription, handler, transportMode);
+
+        HotStandbySubscriber subscriber = new HotStandbySubscriber(bridgeUrl, sessionToken, applicationId, subscription, handler,
+            transportMode, windowMillis, maxEntries);
+        if (metrics != null) {
+            metrics.gauge("openaccess_bridge_standby_connected", "Whether the standby connection to the event bridge is up.",
+                () -> subscriber.isStandbyConnected() ? 1 : 0);
+            metrics.counter("openaccess_bridge_failovers_total", "Switches to the standby connection after losing the active one.",
+                subscriber::getFailoverCount);
+            metrics.counter("openaccess_bridge_handovers_total", "Planned switches to the standby connection.",
+                subscriber::getHandoverCount);
+        }
+        return subscriber;
+    }
+
+    /**
+     * Logs in while connecting to the event bridge, then creates the subscription with the new
+     * session token. The connection needs no token, so the two take as long as the slower of them
+     * rather than both.
+     *
+     * @param tokenManager the manager of the session token to log in with
+     * @param subscriber the subscriber, created without a session token
+     * @param startupTimer the timer to record the login and connection times in
+     * @exception Exception if the login or the subscription failed
+     */
+    static void loginAndStartReceiving(SessionTokenManager tokenManager, IEventSubscriber subscriber, StartupTimer startupTimer) throws Exception {
+        Thread connector = new Thread(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                subscriber.connect();
+                startupTimer.record("bridge connection", startNanos);
+            }
+            catch (Exception e) {
+                // startReceiving connects again, and reports the error if that fails too
+            }
+        }, "event-bridge-connect");
+        connector.setDaemon(true);
+        connector.start();
+
+        long startNanos = System.nanoTime();
+        subscriber.updateSessionToken(tokenManager.login());
+        startupTimer.record("login", startNanos);
+        System.out.println("Successfully connected to the OpenAccess service.");
+
+        // Waits for the connection if it is still starting
+        startNanos = System.nanoTime();
+        subscriber.startReceiving();
+        startupTimer.record("subscription", startNanos);
+    }
+
+    /**
+     * Registers the metrics the pipeline stages already count.
+     *
+     * @param metrics the metrics registry
+     * @param deduplicator the deduplication stage
+     * @param dispatcher the dispatch stage, or <code>null</code> if events are spooled or partitioned
+     * @param partitioner the partition stage, or <code>null</code> if events are spooled or dispatched
+     * @param spooler the spool stage, or <code>null</code> if events are dispatched
+     * @param caches the enrichment caches
+     */
+    static void registerPipelineMetrics(MetricsRegistry metrics, DeduplicatingEventHandler deduplicator,
+            DispatchingEventHandler dispatcher, PartitionedEventHandler partitioner, SpoolingEventHandler spooler, List<EnrichmentCache<String, Map<String, Object>>> caches) {
+        metrics.counter("openaccess_events_duplicate_total", "Redelivered events dropped.", deduplicator::getDuplicateCount);
+
+        if (dispatcher != null) {
+            metrics.gauge("openaccess_dispatch_queue_depth", "Events waiting to be handled.", dispatcher::getQueueDepth);
+            metrics.gauge("openaccess_dispatch_lag_seconds", "Time the last handled event waited in the queue.",
+                () -> dispatcher.getLagMillis() / 1000.0);
+            metrics.counter("openaccess_dispatch_dropped_total", "Events dropped by the dispatch queue.",
+                dispatcher::getDroppedCount);
+            metrics.counter("openaccess_dispatch_failed_total", "Events the handler failed on.", dispatcher::getFailedCount);
+        }
+        if (partitioner != null) {
+            for (int i = 0; i < partitioner.getLaneCount(); i++) {
+                int lane = i;
+                metrics.gauge("openaccess_partition_lane_depth", "Events waiting in a lane.",
+                    () -> partitioner.getLaneDepth(lane), "lane", Integer.toString(lane));
+                metrics.counter("openaccess_partition_lane_events_total", "Events sent to a lane.",
+                    () -> partitioner.getLaneEventCount(lane), "lane", Integer.toString(lane));
+            }
+            metrics.gauge("openaccess_partition_skew", "Events of the busiest lane divided by the mean.", partitioner::getSkew);
+            metrics.counter("openaccess_partition_dropped_total", "Events dropped by full lanes.", partitioner::getDroppedCount);
+            metrics.counter("openaccess_partition_failed_total", "Events the handler failed on.", partitioner::getFailedCount);
+        }
+        if (spooler != null) {
+            metrics.gauge("openaccess_spool_backlog_bytes", "Spooled bytes not yet delivered.", spooler::getBacklogBytes);
+            metrics.counter("openaccess_spool_failed_total", "Spooled events the handler failed on.", spooler::getFailedCount);
+            metrics.counter("openaccess_spool_dropped_total", "Events dropped because they could not be spooled.",
+                spooler::getDroppedCount);
+        }
+        for (EnrichmentCache<String, Map<String, Object>> cache : caches) {
+            metrics.gauge("openaccess_enrichment_cache_hit_ratio", "Fraction of lookups that did not start a load.",
+                cache::getHitRatio, "cache", cache.getName());
+            metrics.counter("openaccess_enrichment_cache_loads_total", "Batch loads of cache misses.",
+                cache::getLoadCount, "cache", cache.getName());
+        }
+    }
+
+    /**
+     * Creates a cache of OpenAccess instances of a type, looked up by a key property.
+     *
+     * @param service the OpenAccess service
+     * @param typeName the type name
+     * @param keyProperty the key property
+     * @return the instance cache
+     */
+    static EnrichmentCache<String, Map<String, Object>> createInstanceCache(OpenAccessService service, String typeName, String keyProperty) {
+        return new EnrichmentCache<>(typeName, keys -> service.getInstancesByKey(typeName, keyProperty, keys),
+            ENRICHMENT_CACHE_SIZE, ENRICHMENT_TTL_MILLIS, ENRICHMENT_BATCH_SIZE, ENRICHMENT_BATCH_LINGER_MILLIS,
+            ENRICHMENT_LOADER_THREADS);
+    }
+
+    /**
+     * Keeps standard output for events, sending everything else the process prints there to
+     * standard error from now on, so status text from any thread cannot land between or inside
+     * records. Call it before printing anything when events are written to standard output in a
+     * machine-readable format.
+     */
+    static synchronized void reserveStandardOutput() {
+        if (System.out == STANDARD_OUTPUT) {
+            System.out.flush();
+            System.setOut(System.err);
+        }
+    }
+
+    /**
+     * Opens standard output to write events in a format to. Text is written through
+     * <code>System.out</code> as before. For NDJSON and binary records, standard output is
+     * reserved for events, and they are written to the file descriptor directly rather than
+     * through <code>System.out</code>. Closing the stream leaves standard output open for the
+     * next handler, such as after a reload.
+     *
+     * @param format the event output format
+     * @return the stream to write events to
+     */
+    static OutputStream openStandardOutput(OutputFormat format) {
+        if (format == OutputFormat.TEXT)
+            return STANDARD_OUTPUT;
+
+        reserveStandardOutput();
+        return new FileOutputStream(FileDescriptor.out) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Parses an integer setting.
+     *
+     * @param value the setting, or <code>null</code> if not set
+     * @param defaultValue the value if the setting is not set
+     * @return the value
+     */
+    static int parseInt(String value, int defaultValue) {
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     /**
      * Log HTTP requests/responses from the Google HTTP Client Library.
      */
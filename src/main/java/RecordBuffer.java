@@ -0,0 +1,227 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte array that event records are encoded into before they are copied to an output
+ * buffer, with the UTF-8, JSON and variable-length integer encodings the output formats need.
+ * Nothing is allocated once the array has grown to fit the largest record.
+ */
+final class RecordBuffer {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int length;
+
+    RecordBuffer(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    void reset() {
+        length = 0;
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    void putByte(int value) {
+        ensureCapacity(1);
+        bytes[length++] = (byte)value;
+    }
+
+    void putBytes(byte[] source, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    /**
+     * Appends a 32-bit big-endian integer.
+     */
+    void putInt(int value) {
+        ensureCapacity(4);
+        setInt(length, value);
+        length += 4;
+    }
+
+    /**
+     * Replaces a 32-bit big-endian integer appended before, such as a length prefix.
+     */
+    void setInt(int index, int value) {
+        bytes[index] = (byte)(value >>> 24);
+        bytes[index + 1] = (byte)(value >>> 16);
+        bytes[index + 2] = (byte)(value >>> 8);
+        bytes[index + 3] = (byte)value;
+    }
+
+    /**
+     * Appends a 64-bit big-endian IEEE 754 double.
+     */
+    void putDouble(double value) {
+        ensureCapacity(8);
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            bytes[length++] = (byte)(bits >>> shift);
+    }
+
+    /**
+     * Appends an unsigned integer as a base 128 varint, seven bits per byte, least significant
+     * first.
+     */
+    void putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte)value;
+    }
+
+    /**
+     * Appends a signed integer as a zigzag varint, so small negative numbers stay short.
+     */
+    void putZigZagLong(long value) {
+        putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Appends a signed integer in decimal ASCII.
+     */
+    void putDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            putUtf8(Long.toString(value));
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            bytes[length++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = digit;
+        }
+    }
+
+    /**
+     * Appends a string in UTF-8. Unpaired surrogates are replaced with <code>?</code>.
+     */
+    void putUtf8(String value) {
+        int count = value.length();
+        ensureCapacity(count * 3);
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                bytes[length++] = (byte)c;
+            else
+                i = putNonAscii(value, i, c);
+        }
+    }
+
+    /**
+     * Appends a string as a quoted JSON string in UTF-8.
+     */
+    void putJsonString(String value) {
+        int count = value.length();
+        ensureCapacity(count * 6 + 2);
+        bytes[length++] = '"';
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\')
+                bytes[length++] = (byte)c;
+            else if (c == '"' || c == '\\') {
+                bytes[length++] = '\\';
+                bytes[length++] = (byte)c;
+            }
+            else if (c == '\n') {
+                bytes[length++] = '\\';
+                bytes[length++] = 'n';
+            }
+            else if (c == '\r') {
+                bytes[length++] = '\\';
+                bytes[length++] = 'r';
+            }
+            else if (c == '\t') {
+                bytes[length++] = '\\';
+                bytes[length++] = 't';
+            }
+            else if (c < 0x20) {
+                bytes[length++] = '\\';
+                bytes[length++] = 'u';
+                bytes[length++] = HEX_DIGITS[c >> 12];
+                bytes[length++] = HEX_DIGITS[(c >> 8) & 0xF];
+                bytes[length++] = HEX_DIGITS[(c >> 4) & 0xF];
+                bytes[length++] = HEX_DIGITS[c & 0xF];
+            }
+            else
+                i = putNonAscii(value, i, c);
+        }
+        bytes[length++] = '"';
+    }
+
+    /**
+     * Gets the length of a string in UTF-8.
+     */
+    static int utf8Length(String value) {
+        int count = value.length();
+        int utf8Length = count;
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                continue;
+            else if (c < 0x800)
+                utf8Length++;
+            else if (!Character.isSurrogate(c))
+                utf8Length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 2;
+                i++;
+            }
+        }
+        return utf8Length;
+    }
+
+    /**
+     * Appends a non-ASCII character, or a surrogate pair starting at it, and returns the index of
+     * the last character used.
+     */
+    private int putNonAscii(String value, int index, char c) {
+        if (c < 0x800) {
+            bytes[length++] = (byte)(0xC0 | (c >> 6));
+            bytes[length++] = (byte)(0x80 | (c & 0x3F));
+        }
+        else if (!Character.isSurrogate(c)) {
+            bytes[length++] = (byte)(0xE0 | (c >> 12));
+            bytes[length++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+            bytes[length++] = (byte)(0x80 | (c & 0x3F));
+        }
+        else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            bytes[length++] = (byte)(0xF0 | (codePoint >> 18));
+            bytes[length++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[length++] = (byte)(0x80 | (codePoint & 0x3F));
+            return index + 1;
+        }
+        else
+            bytes[length++] = '?';
+        return index;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(length + additional, bytes.length * 2));
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A channel that writes to a series of files, starting a new file when the current one reaches a
+ * size or an age, and optionally compressing them.
+ *
+ * The files are named after a base file, with the UTC time the file was started and a sequence
+ * number for files started in the same second inserted before the extension:
+ * <code>alarms.ndjson</code> becomes <code>alarms.20240601-123456-000.ndjson.gz</code>, so the
+ * names sort in the order written. A file is only started when there is something to write to
+ * it. The owner decides when the current file ends, by calling <code>roll</code> between
+ * records when <code>isRollDue</code> says so.
+ */
+public class RollingFileChannel implements WritableByteChannel {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path directory;
+    private final String baseName;
+    private final String extension;
+    private final long maxFileBytes;
+    private final long maxFileNanos;
+    private final OutputCompression compression;
+    private FileChannel file;
+    private WritableByteChannel current;
+    private Path currentPath;
+    private long startedNanos;
+    private long fileCount;
+    private boolean open = true;
+
+    /**
+     * Creates a new <code>RollingFileChannel</code> instance.
+     *
+     * @param baseFile the path the file names are derived from
+     * @param maxFileBytes the size at which a file is ended, or 0 for no limit. The size of a
+     *     compressed file counts the bytes already compressed.
+     * @param maxFileMillis the age at which a file is ended, or 0 for no limit
+     * @param compression the compression of the files
+     */
+    public RollingFileChannel(Path baseFile, long maxFileBytes, long maxFileMillis, OutputCompression compression) {
+        Path absolute = baseFile.toAbsolutePath();
+        String name = absolute.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+
+        this.directory = absolute.getParent();
+        this.baseName = dot > 0 ? name.substring(0, dot) : name;
+        this.extension = dot > 0 ? name.substring(dot) : "";
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileNanos = TimeUnit.MILLISECONDS.toNanos(maxFileMillis);
+        this.compression = compression;
+    }
+
+    /**
+     * Writes bytes to the current file, starting one if needed.
+     *
+     * @param src the bytes to write
+     * @return the number of bytes written, which is all of them
+     * @exception IOException if the file could not be started or written
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open)
+            throw new ClosedChannelException();
+        if (current == null)
+            startFile();
+
+        int length = src.remaining();
+        while (src.hasRemaining())
+            current.write(src);
+        return length;
+    }
+
+    /**
+     * Determines if the current file has reached its size or age limit.
+     *
+     * @param pendingBytes the number of bytes about to be written to it
+     * @return true if the next bytes should go to a new file
+     * @exception IOException if the file size could not be read
+     */
+    public boolean isRollDue(long pendingBytes) throws IOException {
+        if (file == null)
+            return false;
+
+        // Compressed files are measured by what has been compressed so far
+        long size = file.position() + (compression == OutputCompression.NONE ? pendingBytes : 0);
+        return (maxFileBytes > 0 && size >= maxFileBytes)
+            || (maxFileNanos > 0 && System.nanoTime() - startedNanos >= maxFileNanos);
+    }
+
+    /**
+     * Ends the current file. The next write starts a new one.
+     *
+     * @exception IOException if the file could not be closed
+     */
+    public void roll() throws IOException {
+        if (current != null) {
+            WritableByteChannel ended = current;
+            current = null;
+            file = null;
+            ended.close();
+        }
+    }
+
+    /**
+     * Gets the file being written.
+     *
+     * @return the current file, or <code>null</code> if none is started
+     */
+    public Path getCurrentFile() {
+        return current == null ? null : currentPath;
+    }
+
+    /**
+     * Gets the number of files started.
+     *
+     * @return the file count
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Ends the current file.
+     */
+    @Override
+    public void close() throws IOException {
+        open = false;
+        roll();
+    }
+
+    /**
+     * Creates the next file, with the first sequence number not yet used in the same second.
+     */
+    private void startFile() throws IOException {
+        if (directory != null)
+            Files.createDirectories(directory);
+
+        String timestamp = TIMESTAMP_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC));
+        for (int sequence = 0; ; sequence++) {
+            String name = String.format("%s.%s-%03d%s%s", baseName, timestamp, sequence, extension, compression.getFileSuffix());
+            Path path = directory == null ? Path.of(name) : directory.resolve(name);
+            try {
+                file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                currentPath = path;
+                break;
+            }
+            catch (FileAlreadyExistsException e) {
+                // Try the next sequence number
+            }
+        }
+
+        current = compression.wrap(file);
+        startedNanos = System.nanoTime();
+        fileCount++;
+    }
+}
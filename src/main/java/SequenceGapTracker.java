@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/**
+ * Estimates how many events were missed while disconnected from the bridge, from the hardware
+ * event serial numbers, which increase per panel.
+ *
+ * After a reconnect, the first serial number received from each known panel is compared with the
+ * last one received before. The numbers skipped are an upper bound on the events missed, since
+ * events excluded by the subscription filter also skip serial numbers.
+ */
+class SequenceGapTracker {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] panels = new long[64];
+    private long[] serials = new long[64];
+    private boolean[] pending = new boolean[64];
+    private int size;
+    private long missedEvents;
+    private long lastGapMissedEvents;
+
+    SequenceGapTracker() {
+        Arrays.fill(panels, EMPTY);
+    }
+
+    /**
+     * Records the serial number of a received event.
+     *
+     * @param businessEvent the received event
+     */
+    synchronized void record(BusinessEvent businessEvent) {
+        long panel = businessEvent.getLong(BusinessEvent.PANEL_ID, EMPTY);
+        long serial = businessEvent.getLong(BusinessEvent.SERIAL_NUMBER, EMPTY);
+        if (panel == EMPTY || serial == EMPTY)
+            return;
+
+        int slot = find(panel);
+        if (panels[slot] == EMPTY) {
+            panels[slot] = panel;
+            serials[slot] = serial;
+            if (++size * 2 > panels.length)
+                grow();
+            return;
+        }
+
+        if (pending[slot]) {
+            pending[slot] = false;
+            if (serial > serials[slot] + 1) {
+                missedEvents += serial - serials[slot] - 1;
+                lastGapMissedEvents += serial - serials[slot] - 1;
+            }
+        }
+        serials[slot] = serial;
+    }
+
+    /**
+     * Marks the start of a new connection, so the next serial number from each known panel is
+     * checked for a gap.
+     */
+    synchronized void markReconnected() {
+        lastGapMissedEvents = 0;
+        for (int i = 0; i < panels.length; i++)
+            pending[i] = panels[i] != EMPTY;
+    }
+
+    /**
+     * Gets the estimated number of events missed across all reconnects.
+     *
+     * @return the estimated missed events
+     */
+    synchronized long getMissedEvents() {
+        return missedEvents;
+    }
+
+    /**
+     * Gets the estimated number of events missed during the most recent reconnect, as far as the
+     * panels heard from since then tell.
+     *
+     * @return the estimated missed events
+     */
+    synchronized long getLastGapMissedEvents() {
+        return lastGapMissedEvents;
+    }
+
+    private int find(long panel) {
+        int mask = panels.length - 1;
+        int slot = Long.hashCode(panel * 0x9E3779B97F4A7C15L) & mask;
+        while (panels[slot] != EMPTY && panels[slot] != panel)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldPanels = panels;
+        long[] oldSerials = serials;
+        boolean[] oldPending = pending;
+        panels = new long[oldPanels.length * 2];
+        serials = new long[panels.length];
+        pending = new boolean[panels.length];
+        Arrays.fill(panels, EMPTY);
+
+        for (int i = 0; i < oldPanels.length; i++) {
+            if (oldPanels[i] == EMPTY)
+                continue;
+            int slot = find(oldPanels[i]);
+            panels[slot] = oldPanels[i];
+            serials[slot] = oldSerials[i];
+            pending[slot] = oldPending[i];
+        }
+    }
+}
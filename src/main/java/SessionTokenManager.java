@@ -0,0 +1,175 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps an OpenAccess session token valid for a long-running process.
+ *
+ * The manager logs in again on a background thread some time before the token expires, retrying
+ * with backoff if the login fails, and passes each new token to its listeners, such as
+ * <code>WebEventSubscriber.updateSessionToken</code>, so active subscriptions carry on without
+ * reconnecting. Once the listeners have the new token, the session of the old one is logged out.
+ */
+public class SessionTokenManager implements Closeable {
+    private final OpenAccessService service;
+    private final String username;
+    private final String password;
+    private final String directoryId;
+    private final long refreshAheadMillis;
+    private final ExponentialBackoff retryBackoff = new ExponentialBackoff(1000, 60000);
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService refreshTimer;
+    private int retryAttempt;
+    private volatile long refreshCount;
+    private volatile long failedRefreshCount;
+
+    /**
+     * Creates a new <code>SessionTokenManager</code> instance.
+     *
+     * @param service the OpenAccess service to log in to
+     * @param username the username of a user
+     * @param password the password of a user
+     * @param directoryId the authentication directory id of a user
+     * @param refreshAheadMillis how long before the token expires to log in again. Tokens that
+     *     last less than twice as long are refreshed halfway through their lifetime.
+     */
+    public SessionTokenManager(OpenAccessService service, String username, String password, String directoryId, long refreshAheadMillis) {
+        this.service = service;
+        this.username = username;
+        this.password = password;
+        this.directoryId = directoryId;
+        this.refreshAheadMillis = refreshAheadMillis;
+
+        refreshTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Logs in to OpenAccess and schedules the token refresh.
+     *
+     * @return An authenticated session token
+     * @exception IOException if there was an error handling the response
+     * @exception OpenAccessException if there was an OpenAccess error
+     */
+    public synchronized String login() throws IOException, OpenAccessException {
+        String sessionToken = service.login(username, password, directoryId);
+        scheduleRefresh();
+        return sessionToken;
+    }
+
+    /**
+     * Adds a listener that receives each refreshed session token.
+     *
+     * @param listener the listener
+     */
+    public void addTokenListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a token listener.
+     *
+     * @param listener the listener
+     */
+    public void removeTokenListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the current session token.
+     *
+     * @return the authenticated session token
+     */
+    public String getSessionToken() {
+        return service.getSessionToken();
+    }
+
+    /**
+     * Gets the number of successful token refreshes.
+     *
+     * @return the refresh count
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Gets the number of failed token refresh attempts.
+     *
+     * @return the failed refresh count
+     */
+    public long getFailedRefreshCount() {
+        return failedRefreshCount;
+    }
+
+    /**
+     * Stops refreshing the session token. The current token is not logged out.
+     */
+    @Override
+    public void close() {
+        refreshTimer.shutdownNow();
+    }
+
+    private void scheduleRefresh() {
+        Instant expiration = service.getTokenExpiration();
+        if (expiration == null) {
+            System.err.println("Warning: the OpenAccess session token expiration is unknown, so the token will not be refreshed.");
+            return;
+        }
+
+        long lifetimeMillis = expiration.toEpochMilli() - System.currentTimeMillis();
+        long delayMillis = lifetimeMillis > 2 * refreshAheadMillis ?
+            lifetimeMillis - refreshAheadMillis :
+            lifetimeMillis / 2;
+        refreshTimer.schedule(this::refresh, Math.max(delayMillis, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        String previousSessionToken;
+        String sessionToken;
+        synchronized (this) {
+            previousSessionToken = service.getSessionToken();
+            try {
+                sessionToken = service.login(username, password, directoryId);
+            }
+            catch (Exception e) {
+                failedRefreshCount++;
+                System.err.format("Error: could not refresh the OpenAccess session token: %s%n", e);
+                refreshTimer.schedule(this::refresh, retryBackoff.getDelayMillis(retryAttempt++), TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            retryAttempt = 0;
+            refreshCount++;
+            scheduleRefresh();
+        }
+
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(sessionToken);
+            }
+            catch (RuntimeException e) {
+                System.err.format("Error: could not pass on the refreshed session token: %s%n", e);
+            }
+        }
+
+        // The listeners use the new token now, so the old session can end
+        if (previousSessionToken != null && !previousSessionToken.equals(sessionToken)) {
+            try {
+                service.logout(previousSessionToken);
+            }
+            catch (Exception e) {
+                System.err.format("Warning: could not log out the replaced OpenAccess session: %s%n", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Splits a set of named shards between worker processes through leases kept as files in a shared
+ * directory, so that each shard is owned by one live worker at a time.
+ *
+ * Each worker renews a heartbeat file, <code>&lt;worker&gt;.worker</code>, and aims to own its
+ * share of the shards: the shard count divided by the number of live workers, rounded up. It
+ * claims free or expired shard leases, <code>&lt;shard&gt;.lease</code>, until it owns its share,
+ * and releases shards beyond it, so a worker that joins takes shards from the others and the
+ * shards of a worker that dies are taken over once its leases expire. Leases are read and written
+ * under a <code>FileLock</code>, and hold an expiry time, so leases on a directory shared between
+ * hosts need clocks that agree to well within the lease time.
+ *
+ * A worker that cannot renew its leases gives up its shards once they expire, even if it cannot
+ * tell the other workers. Handing a shard over can leave a short gap, as the old owner stops
+ * before the new one starts; a worker that stalls past its lease can overlap with the new owner.
+ */
+public class ShardCoordinator implements Closeable {
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final String WORKER_SUFFIX = ".worker";
+    private static final int MAX_RECORD_SIZE = 1024;
+
+    /**
+     * The contents of a lease or heartbeat file: its owner and when it expires.
+     */
+    private static class Lease {
+        final String owner;
+        final long expiresMillis;
+
+        Lease(String owner, long expiresMillis) {
+            this.owner = owner;
+            this.expiresMillis = expiresMillis;
+        }
+
+        boolean isFree(long nowMillis) {
+            return owner.isEmpty() || expiresMillis <= nowMillis;
+        }
+    }
+
+    private final Path directory;
+    private final String workerId;
+    private final List<String> shards;
+    private final long leaseMillis;
+    private final Consumer<Set<String>> listener;
+    private final ScheduledExecutorService renewTimer;
+
+    // The owned shards, each with the System.nanoTime() until which its lease is known to be held
+    private final Map<String, Long> owned = new HashMap<>();
+    private boolean closed;
+    private volatile long claimCount;
+    private volatile long lostCount;
+
+    /**
+     * Creates a new <code>ShardCoordinator</code> instance.
+     *
+     * @param directory the directory holding the lease files, shared by all workers
+     * @param workerId the name of this worker, unique among the workers
+     * @param shards the names of the shards to split, the same for all workers
+     * @param leaseMillis how long a lease lasts without being renewed. Leases are renewed three
+     *     times per lease, and the shards of a worker that dies are taken over within about this
+     *     time.
+     * @param listener receives the shards this worker owns after every renewal, on the renewal
+     *     thread
+     */
+    public ShardCoordinator(Path directory, String workerId, Collection<String> shards, long leaseMillis,
+            Consumer<Set<String>> listener) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("No shards are given");
+        for (String shard : shards) {
+            if (!shard.matches("[A-Za-z0-9_.-]+"))
+                throw new IllegalArgumentException("Shard " + shard + " is not a valid file name");
+        }
+        if (!workerId.matches("[A-Za-z0-9_.@-]+"))
+            throw new IllegalArgumentException("Worker " + workerId + " is not a valid file name");
+
+        this.directory = directory;
+        this.workerId = workerId;
+        this.shards = new ArrayList<>(new TreeSet<>(shards));
+        this.leaseMillis = leaseMillis;
+        this.listener = listener;
+
+        renewTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets a worker name made of the host name and process id, which is unique unless processes
+     * on different hosts share both.
+     *
+     * @return the default worker name
+     */
+    public static String getDefaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        }
+        catch (IOException e) {
+            host = "localhost";
+        }
+        return host.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * Claims the first shards and starts renewing the leases. The listener is called with the
+     * claimed shards before this returns.
+     *
+     * @exception IOException if the lease directory could not be created
+     */
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        renew();
+        renewTimer.scheduleWithFixedDelay(this::renew, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the name of this worker.
+     *
+     * @return the worker name
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * Gets the shards this worker owns.
+     *
+     * @return the shard names, in order
+     */
+    public synchronized Set<String> getOwnedShards() {
+        return Collections.unmodifiableSet(new TreeSet<>(owned.keySet()));
+    }
+
+    /**
+     * Gets the number of shards this worker has claimed, including ones taken over from workers
+     * that died.
+     *
+     * @return the claim count
+     */
+    public long getClaimCount() {
+        return claimCount;
+    }
+
+    /**
+     * Gets the number of shards this worker lost because their leases expired before it could
+     * renew them.
+     *
+     * @return the lost shard count
+     */
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    /**
+     * Stops renewing, and releases the leases and the heartbeat so other workers take over the
+     * shards at once. The listener is not told.
+     */
+    @Override
+    public void close() {
+        renewTimer.shutdownNow();
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+
+            for (String shard : owned.keySet())
+                release(shard);
+            owned.clear();
+            try {
+                Files.deleteIfExists(workerFile(workerId));
+            }
+            catch (IOException e) {
+                System.err.format("Error: could not remove the heartbeat of worker %s: %s%n", workerId, e);
+            }
+        }
+    }
+
+    /**
+     * Renews the heartbeat and the owned leases, then claims or releases shards to reach this
+     * worker's share. Shards beyond the share are released after the listener has stopped using
+     * them.
+     */
+    private void renew() {
+        Set<String> current;
+        List<String> surplus = new ArrayList<>();
+        synchronized (this) {
+            if (closed)
+                return;
+
+            try {
+                long nowMillis = System.currentTimeMillis();
+                update(workerFile(workerId), lease -> true);
+                int workers = countLiveWorkers(nowMillis);
+                int share = (shards.size() + workers - 1) / workers;
+
+                // A lease that expired before it was renewed is kept unless another worker took it
+                for (String shard : new ArrayList<>(owned.keySet())) {
+                    if (update(leaseFile(shard), lease -> lease.owner.equals(workerId) || lease.isFree(nowMillis)))
+                        owned.put(shard, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+                    else {
+                        owned.remove(shard);
+                        lostCount++;
+                        System.err.format("Warning: worker %s lost shard %s to another worker.%n", workerId, shard);
+                    }
+                }
+
+                // Start at a different shard on each worker, so they do not all contend for the same one
+                int start = Math.floorMod(workerId.hashCode(), shards.size());
+                for (int i = 0; i < shards.size() && owned.size() < share; i++) {
+                    String shard = shards.get((start + i) % shards.size());
+                    if (!owned.containsKey(shard) && update(leaseFile(shard), lease -> lease.isFree(nowMillis))) {
+                        owned.put(shard, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+                        claimCount++;
+                    }
+                }
+
+                List<String> ordered = new ArrayList<>(new TreeSet<>(owned.keySet()));
+                for (int i = share; i < ordered.size(); i++) {
+                    owned.remove(ordered.get(i));
+                    surplus.add(ordered.get(i));
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                System.err.format("Error: could not renew the shard leases of worker %s: %s%n", workerId, e);
+                long now = System.nanoTime();
+                owned.values().removeIf(heldUntil -> heldUntil - now <= 0);
+            }
+            current = Collections.unmodifiableSet(new TreeSet<>(owned.keySet()));
+        }
+
+        try {
+            listener.accept(current);
+        }
+        catch (RuntimeException e) {
+            System.err.format("Error: could not apply the shards %s: %s%n", current, e);
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                for (String shard : surplus)
+                    release(shard);
+            }
+        }
+    }
+
+    private int countLiveWorkers(long nowMillis) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + WORKER_SUFFIX)) {
+            for (Path file : files) {
+                Lease heartbeat = read(file);
+                if (heartbeat != null && !heartbeat.isFree(nowMillis))
+                    count++;
+            }
+        }
+        return Math.max(count, 1);
+    }
+
+    private void release(String shard) {
+        try {
+            Path file = leaseFile(shard);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (read(channel).owner.equals(workerId)) {
+                    channel.truncate(0);
+                    channel.force(false);
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.format("Error: could not release shard %s: %s%n", shard, e);
+        }
+    }
+
+    /**
+     * Locks a lease file and, if the lease passes a check, takes it for this worker for another
+     * lease time.
+     *
+     * @return true if the lease was taken
+     */
+    private boolean update(Path file, Predicate<Lease> check) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            if (!check.test(read(channel)))
+                return false;
+            write(channel, new Lease(workerId, System.currentTimeMillis() + leaseMillis));
+            return true;
+        }
+    }
+
+    private static Lease read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a lease of the form <code>owner expiry</code>, where the expiry is in milliseconds
+     * since the epoch. An empty or unreadable file is a free lease.
+     */
+    private static Lease read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_RECORD_SIZE);
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // Read up to the record size
+        }
+
+        String[] fields = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim().split(" ");
+        try {
+            return fields.length == 2 ? new Lease(fields[0], Long.parseLong(fields[1])) : new Lease("", 0);
+        }
+        catch (NumberFormatException e) {
+            return new Lease("", 0);
+        }
+    }
+
+    private static void write(FileChannel channel, Lease lease) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((lease.owner + " " + lease.expiresMillis + "\n").getBytes(StandardCharsets.UTF_8));
+        channel.truncate(0);
+        channel.position(0);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        channel.force(false);
+    }
+
+    private Path leaseFile(String shard) {
+        return directory.resolve(shard + LEASE_SUFFIX);
+    }
+
+    private Path workerFile(String worker) {
+        return directory.resolve(worker + WORKER_SUFFIX);
+    }
+}
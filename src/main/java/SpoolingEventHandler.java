@@ -0,0 +1,234 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An <code>IEventHandler</code> decorator that writes each business event to an
+ * <code>EventSpool</code> before it is handled, and delivers events to the wrapped handler from
+ * the spool on a separate thread.
+ *
+ * The delivery thread commits its offset as it goes, so after a crash the events that were
+ * spooled but not yet handled are delivered again when the handler is created on the same spool.
+ * Delivery is at least once: events handled after the last commit are delivered twice. A slow
+ * handler falls behind on disk rather than in memory. Only the delivery thread calls the handler
+ * with events: an event that cannot be spooled is retried a few times, holding up the receive
+ * thread, and then dropped and counted. All other callbacks are forwarded directly on the
+ * calling thread.
+ */
+public class SpoolingEventHandler implements IEventHandler, Closeable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final int APPEND_ATTEMPTS = 3;
+    private static final long APPEND_RETRY_DELAY_MILLIS = 100;
+
+    private final IEventHandler handler;
+    private final EventSpool spool;
+    private final EventSpool.Cursor cursor;
+    private final int commitBatchSize;
+    private final Thread deliveryThread;
+    private volatile boolean running = true;
+
+    private final AtomicLong spooledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long deliveredCount;
+
+    /**
+     * Creates a new <code>SpoolingEventHandler</code> instance and starts delivering, beginning
+     * with any events left in the spool by a previous run.
+     *
+     * @param handler the event handler that will process the events
+     * @param spool the spool to write events to
+     * @param consumer the name the delivery offset is committed under
+     * @param commitBatchSize the number of delivered events after which the offset is committed
+     */
+    public SpoolingEventHandler(IEventHandler handler, EventSpool spool, String consumer, int commitBatchSize) {
+        this.handler = handler;
+        this.spool = spool;
+        this.cursor = spool.openCursor(consumer);
+        this.commitBatchSize = Math.max(commitBatchSize, 1);
+
+        deliveryThread = new Thread(this::runDelivery, "event-spool-delivery");
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    @Override
+    public void onBusinessEvent(Map<String, Object> businessEvent) {
+        onBusinessEvent(new BusinessEvent(businessEvent));
+    }
+
+    @Override
+    public void onBusinessEvent(BusinessEvent businessEvent) {
+        // Handling the event here would race the delivery thread and skip the spooled backlog
+        for (int attempt = 1; ; attempt++) {
+            try {
+                spool.append(businessEvent);
+                spooledCount.incrementAndGet();
+                LockSupport.unpark(deliveryThread);
+                return;
+            }
+            catch (IOException e) {
+                if (attempt == APPEND_ATTEMPTS || !sleep(APPEND_RETRY_DELAY_MILLIS)) {
+                    droppedCount.incrementAndGet();
+                    System.err.format("Error: could not spool event, dropping it: %s%n", e);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onExceptionRaised(String serviceException) {
+        handler.onExceptionRaised(serviceException);
+    }
+
+    @Override
+    public void onManagementEvent(String message) {
+        handler.onManagementEvent(message);
+    }
+
+    @Override
+    public void onConnectionToMessageBusEstablished() {
+        handler.onConnectionToMessageBusEstablished();
+    }
+
+    @Override
+    public void onConnectionToMessageBusLost() {
+        handler.onConnectionToMessageBusLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeLost() {
+        handler.onConnectionToBridgeLost();
+    }
+
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        handler.onConnectionToBridgeRestored(downtimeMillis);
+    }
+
+    /**
+     * Gets the number of events spooled but not yet delivered, in bytes of the spool.
+     *
+     * @return the delivery backlog in bytes
+     */
+    public long getBacklogBytes() {
+        return spool.getWriteOffset() - cursor.getOffset();
+    }
+
+    /**
+     * Gets the number of events written to the spool.
+     *
+     * @return the number of spooled events
+     */
+    public long getSpooledCount() {
+        return spooledCount.get();
+    }
+
+    /**
+     * Gets the number of events passed to the wrapped handler, including replayed events.
+     *
+     * @return the number of delivered events
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Gets the number of events for which the wrapped handler threw an exception.
+     *
+     * @return the number of failed events
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Gets the number of events dropped because they could not be written to the spool.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops delivering, waiting a few seconds for spooled events to be handled, and commits the
+     * delivery offset. Events still in the spool are delivered by the next handler on the spool.
+     * The spool itself is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(deliveryThread);
+        try {
+            deliveryThread.join(DEFAULT_DRAIN_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (deliveryThread.isAlive())
+            deliveryThread.interrupt();
+        else
+            cursor.commit();
+    }
+
+    /**
+     * Reads events from the spool and passes them to the wrapped handler, committing the offset
+     * every batch and whenever the handler catches up.
+     */
+    private void runDelivery() {
+        int uncommittedCount = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                BusinessEvent businessEvent = cursor.next();
+                if (businessEvent == null) {
+                    if (uncommittedCount > 0) {
+                        cursor.commit();
+                        uncommittedCount = 0;
+                    }
+                    if (!running)
+                        return;
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+
+                deliver(businessEvent);
+                if (++uncommittedCount >= commitBatchSize) {
+                    cursor.commit();
+                    uncommittedCount = 0;
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.format("Error: could not read spooled events: %s%n", e);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deliver(BusinessEvent businessEvent) {
+        try {
+            handler.onBusinessEvent(businessEvent);
+        }
+        catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            System.err.format("Error: event handler failed: %s%n", e);
+        }
+        deliveredCount++;
+    }
+}
@@ -0,0 +1,751 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the OpenAccess authentication resource and event bridge, for running
+ * <code>WebEventSubscriber</code> without an OpenAccess server, such as in throughput and soak
+ * tests.
+ *
+ * The bridge speaks the SignalR 1.3 protocol used by the bundled client over long polling and
+ * server-sent events, and hosts the <code>Outbound</code> hub with its
+ * <code>CreateSubscription</code> and <code>StopSubscription</code> methods. Published events
+ * are sent to each subscription whose filter matches, as <code>OnBusinessEventReceived</code>
+ * callbacks. Events for a durable subscription are kept while it has no connection and sent when
+ * it is created again with the same id. WebSockets are not offered, since the JDK HTTP server
+ * cannot upgrade connections.
+ */
+public class StandInEventBridge implements Closeable {
+    private static final String HUB_NAME = "Outbound";
+    private static final String PROTOCOL_VERSION = "1.3";
+    private static final long DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS = 20000;
+    private static final double DISCONNECT_TIMEOUT_SECONDS = 30;
+    private static final int MAX_MESSAGES_PER_RESPONSE = 1000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100000;
+    private static final String CLOSED = new String("closed");
+    private static final long STATUS_INTERVAL_MILLIS = 10000;
+    private static final Gson GSON = new Gson();
+
+    /**
+     * A client connection negotiated with the bridge, and the hub messages waiting for it.
+     */
+    private static class Connection {
+        final String id = UUID.randomUUID().toString();
+        final String token = UUID.randomUUID().toString();
+        final BlockingQueue<String> messages;
+        final AtomicLong messageId = new AtomicLong();
+        final long keepAliveTimeoutMillis;
+        volatile Subscription subscription;
+        volatile boolean closed;
+
+        Connection(int queueCapacity, long keepAliveTimeoutMillis) {
+            messages = new LinkedBlockingQueue<>(queueCapacity);
+            this.keepAliveTimeoutMillis = keepAliveTimeoutMillis;
+        }
+    }
+
+    /**
+     * An event subscription, and for a durable subscription without a connection, the events
+     * kept for it.
+     */
+    private static class Subscription {
+        final String id;
+        volatile EventFilter filter;
+        volatile boolean durable;
+        Connection connection;
+        final ArrayDeque<String> backlog = new ArrayDeque<>();
+
+        Subscription(String id) {
+            this.id = id;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Set<String> sessionTokens = ConcurrentHashMap.newKeySet();
+    private final int queueCapacity;
+    private volatile String username;
+    private volatile String password;
+    private volatile long tokenLifetimeMillis = TimeUnit.HOURS.toMillis(1);
+    private volatile long keepAliveTimeoutMillis = DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS;
+
+    private final AtomicLong loginCount = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Runs a stand-in bridge with a load generator until stopped, printing its counters every ten
+     * seconds. The options are <code>--port</code> (default 8080), <code>--rate</code> in events
+     * per second (default 1000), <code>--payload</code> in bytes, <code>--burst</code>,
+     * <code>--panels</code>, <code>--devices</code>, <code>--disconnect-every</code> in
+     * milliseconds, <code>--keep-alive</code> in milliseconds, and <code>--username</code> and
+     * <code>--password</code>.
+     *
+     * @param args the options, each followed by its value
+     * @exception Exception if the bridge could not be started
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length)
+                throw new IllegalArgumentException("Expected an option and its value at " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        StandInEventBridge bridge = new StandInEventBridge(Integer.parseInt(options.getOrDefault("port", "8080")));
+        if (options.containsKey("username"))
+            bridge.setCredentials(options.get("username"), options.getOrDefault("password", ""));
+        if (options.containsKey("keep-alive"))
+            bridge.setKeepAliveTimeout(Long.parseLong(options.get("keep-alive")));
+
+        LoadGenerator generator = new LoadGenerator(bridge, Double.parseDouble(options.getOrDefault("rate", "1000")),
+            Integer.parseInt(options.getOrDefault("payload", "0")));
+        generator.setBurstSize(Integer.parseInt(options.getOrDefault("burst", "1")));
+        generator.setDevices(Integer.parseInt(options.getOrDefault("panels", "16")), Integer.parseInt(options.getOrDefault("devices", "8")));
+        generator.setDisconnectInterval(Long.parseLong(options.getOrDefault("disconnect-every", "0")));
+        generator.start();
+
+        System.out.format("Stand-in event bridge listening, set OPENACCESS_URL=%s%n", bridge.getServiceUrl());
+        while (true) {
+            Thread.sleep(STATUS_INTERVAL_MILLIS);
+            System.out.format("Published %d, sent %d, dropped %d; %d connections, %d subscriptions, %d connects, %d disconnects%n",
+                bridge.getPublishedCount(), bridge.getSentCount(), bridge.getDroppedCount(), bridge.getConnectionCount(),
+                bridge.getSubscriptionCount(), bridge.getConnectCount(), generator.getDisconnectCount());
+        }
+    }
+
+    /**
+     * Creates a new <code>StandInEventBridge</code> instance listening on the loopback address.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @exception IOException if the port could not be bound
+     */
+    public StandInEventBridge(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new <code>StandInEventBridge</code> instance.
+     *
+     * @param address the address to listen on
+     * @param queueCapacity the maximum number of messages held for a connection or a durable
+     *     subscription; further events are dropped
+     * @exception IOException if the address could not be bound
+     */
+    public StandInEventBridge(InetSocketAddress address, int queueCapacity) throws IOException {
+        this.queueCapacity = queueCapacity;
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/authentication", this::handleAuthentication);
+        server.createContext("/instances", this::handleInstances);
+        server.createContext("/eventbridge/", this::handleBridge);
+
+        // Polls and event streams each hold a thread while they wait
+        AtomicLong threadNumber = new AtomicLong();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stand-in-bridge-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Gets the URL to use as the OpenAccess service URL. The event bridge is at
+     * <code>eventbridge/</code> under it, as on an OpenAccess server.
+     *
+     * @return the service URL
+     */
+    public String getServiceUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Gets the event bridge URL.
+     *
+     * @return the event bridge URL
+     */
+    public String getBridgeUrl() {
+        return getServiceUrl() + "eventbridge/";
+    }
+
+    /**
+     * Requires logins to use the given credentials. By default any credentials are accepted.
+     *
+     * @param username the username
+     * @param password the password
+     */
+    public void setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Sets how long issued session tokens are reported to last.
+     *
+     * @param lifetimeMillis the token lifetime
+     */
+    public void setTokenLifetime(long lifetimeMillis) {
+        this.tokenLifetimeMillis = lifetimeMillis;
+    }
+
+    /**
+     * Sets how long clients wait without hearing from the bridge before they reconnect. Polls are
+     * answered and idle event streams get a keep-alive well within this time. Clients only notice
+     * a dropped connection when it passes, so soak tests that drop connections often should
+     * shorten it.
+     *
+     * @param timeoutMillis the keep-alive timeout, applied to connections negotiated afterwards
+     */
+    public void setKeepAliveTimeout(long timeoutMillis) {
+        this.keepAliveTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Issues a session token without a login request, for clients that skip authentication.
+     *
+     * @return the session token
+     */
+    public String createSessionToken() {
+        String sessionToken = UUID.randomUUID().toString();
+        sessionTokens.add(sessionToken);
+        return sessionToken;
+    }
+
+    /**
+     * Publishes a business event to every subscription whose filter matches it.
+     *
+     * @param businessEventJson the event properties as a JSON object
+     * @return the number of subscriptions the event was sent or kept for
+     */
+    public int publish(String businessEventJson) {
+        publishedCount.incrementAndGet();
+        BusinessEvent businessEvent = BusinessEvent.parse(businessEventJson);
+        String message = "{\"H\":\"" + HUB_NAME + "\",\"M\":\"OnBusinessEventReceived\",\"A\":[" + businessEventJson + "]}";
+
+        int matched = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            EventFilter filter = subscription.filter;
+            if (filter != null && !filter.matches(businessEvent))
+                continue;
+
+            synchronized (subscription) {
+                if (subscription.connection != null)
+                    enqueue(subscription.connection, message);
+                else if (subscription.backlog.size() < queueCapacity)
+                    subscription.backlog.add(message);
+                else
+                    droppedCount.incrementAndGet();
+            }
+            matched++;
+        }
+        return matched;
+    }
+
+    /**
+     * Tells every connected client that the bridge lost or regained its message bus connection.
+     *
+     * @param connected whether the message bus is connected
+     */
+    public void setMessageBusConnected(boolean connected) {
+        String method = connected ? "OnConnectionToMessageBusEstablished" : "OnConnectionToMessageBusLost";
+        String message = "{\"H\":\"" + HUB_NAME + "\",\"M\":\"" + method + "\",\"A\":[]}";
+        for (Connection connection : connections.values())
+            enqueue(connection, message);
+    }
+
+    /**
+     * Drops every client connection without warning, as a bridge restart or network failure
+     * would. Clients see their poll or event stream fail; durable subscriptions keep their events
+     * until they are created again.
+     *
+     * @return the number of connections dropped
+     */
+    public int dropConnections() {
+        int dropped = 0;
+        for (Connection connection : new ArrayList<>(connections.values())) {
+            closeConnection(connection);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * Gets the number of clients connected.
+     *
+     * @return the connection count
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Gets the number of subscriptions, including durable subscriptions without a connection.
+     *
+     * @return the subscription count
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Gets the number of successful logins.
+     *
+     * @return the login count
+     */
+    public long getLoginCount() {
+        return loginCount.get();
+    }
+
+    /**
+     * Gets the number of transport connections made, including reconnections.
+     *
+     * @return the connect count
+     */
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * Gets the number of events published.
+     *
+     * @return the published count
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Gets the number of hub messages sent to clients.
+     *
+     * @return the sent count
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * Gets the number of events dropped because a client or durable subscription fell too far
+     * behind.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops the server and drops all connections.
+     */
+    @Override
+    public void close() {
+        dropConnections();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void enqueue(Connection connection, String message) {
+        if (!connection.messages.offer(message))
+            droppedCount.incrementAndGet();
+    }
+
+    private void closeConnection(Connection connection) {
+        if (!connections.remove(connection.token, connection))
+            return;
+        connection.closed = true;
+
+        Subscription subscription = connection.subscription;
+        if (subscription != null)
+            detach(subscription, connection);
+
+        // Wake a waiting poll or event stream
+        connection.messages.clear();
+        connection.messages.offer(CLOSED);
+    }
+
+    /**
+     * Detaches a subscription from its connection. A durable subscription keeps the events not
+     * yet sent; others are removed.
+     */
+    private void detach(Subscription subscription, Connection connection) {
+        synchronized (subscription) {
+            if (subscription.connection != connection)
+                return;
+            subscription.connection = null;
+            if (!subscription.durable) {
+                subscriptions.remove(subscription.id, subscription);
+                return;
+            }
+
+            List<String> unsent = new ArrayList<>();
+            connection.messages.drainTo(unsent);
+            for (String message : unsent) {
+                if (message != CLOSED && message.contains("OnBusinessEventReceived"))
+                    subscription.backlog.add(message);
+            }
+        }
+    }
+
+    private void handleAuthentication(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method)) {
+                JsonObject request = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(),
+                    StandardCharsets.UTF_8)).getAsJsonObject();
+                String requestUsername = getString(request, "user_name");
+                String requestPassword = getString(request, "password");
+                if (username != null && (!username.equals(requestUsername) || !password.equals(requestPassword))) {
+                    sendError(exchange, 401, "openaccess.general.invalidcredentials", "Invalid username or password");
+                    return;
+                }
+
+                String sessionToken = createSessionToken();
+                loginCount.incrementAndGet();
+                JsonObject response = new JsonObject();
+                response.addProperty("session_token", sessionToken);
+                response.addProperty("token_expiration_time", Instant.now().plusMillis(tokenLifetimeMillis).toString());
+                sendJson(exchange, 200, response.toString());
+            }
+            else if ("DELETE".equals(method)) {
+                String sessionToken = exchange.getRequestHeaders().getFirst("session-token");
+                if (sessionToken != null)
+                    sessionTokens.remove(sessionToken);
+                sendJson(exchange, 200, "{}");
+            }
+            else
+                exchange.sendResponseHeaders(405, -1);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleInstances(HttpExchange exchange) throws IOException {
+        try {
+            // No instances are defined, so lookups find nothing
+            sendJson(exchange, 200, "{\"item_list\":[],\"total_items\":0,\"page_number\":1,\"page_size\":100,\"total_pages\":0}");
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBridge(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String action = path.substring(path.lastIndexOf('/') + 1);
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if ("negotiate".equals(action)) {
+                negotiate(exchange);
+                return;
+            }
+            if ("ping".equals(action)) {
+                sendJson(exchange, 200, "{\"Response\":\"pong\"}");
+                return;
+            }
+
+            String transport = query.getOrDefault("transport", "");
+            Connection connection = connections.get(query.getOrDefault("connectionToken", ""));
+            if (connection == null) {
+                if ("reconnect".equals(action) || "poll".equals(action))
+                    sendDisconnect(exchange, transport);
+                else
+                    exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            switch (action) {
+                case "connect":
+                case "reconnect":
+                    connectCount.incrementAndGet();
+                    if ("serverSentEvents".equals(transport))
+                        streamEvents(exchange, connection);
+                    else if ("longPolling".equals(transport)) {
+                        if ("connect".equals(action))
+                            sendJson(exchange, 200, "{\"C\":\"" + connection.messageId.get() + "\",\"S\":1,\"M\":[]}");
+                        else
+                            poll(exchange, connection);
+                    }
+                    else
+                        exchange.sendResponseHeaders(400, -1);
+                    break;
+                case "poll":
+                    poll(exchange, connection);
+                    break;
+                case "send":
+                    send(exchange, connection);
+                    break;
+                case "abort":
+                    closeConnection(connection);
+                    exchange.sendResponseHeaders(200, -1);
+                    break;
+                default:
+                    exchange.sendResponseHeaders(404, -1);
+                    break;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void negotiate(HttpExchange exchange) throws IOException {
+        Connection connection = new Connection(queueCapacity, keepAliveTimeoutMillis);
+        connections.put(connection.token, connection);
+
+        JsonObject response = new JsonObject();
+        response.addProperty("Url", "/eventbridge");
+        response.addProperty("ConnectionToken", connection.token);
+        response.addProperty("ConnectionId", connection.id);
+        response.addProperty("KeepAliveTimeout", connection.keepAliveTimeoutMillis / 1000.0);
+        response.addProperty("DisconnectTimeout", DISCONNECT_TIMEOUT_SECONDS);
+        response.addProperty("TryWebSockets", false);
+        response.addProperty("ProtocolVersion", PROTOCOL_VERSION);
+        sendJson(exchange, 200, response.toString());
+    }
+
+    /**
+     * Tells a client reconnecting to a dropped connection that the connection is gone, as a
+     * SignalR server does, so that it closes the connection and starts a new one.
+     */
+    private void sendDisconnect(HttpExchange exchange, String transport) throws IOException {
+        if ("serverSentEvents".equals(transport)) {
+            byte[] body = "data: initialized\n\ndata: {\"D\":1}\n\n".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        else
+            sendJson(exchange, 200, "{\"D\":1}");
+    }
+
+    /**
+     * Answers a long poll with the waiting messages, waiting for the first one up to the poll
+     * timeout, half the keep-alive timeout. A dropped connection fails the poll; the client does
+     * not act on the failure, but reconnects when the keep-alive timeout passes.
+     */
+    private void poll(HttpExchange exchange, Connection connection) throws IOException, InterruptedException {
+        List<String> batch = new ArrayList<>();
+        String first = connection.messages.poll(connection.keepAliveTimeoutMillis / 2, TimeUnit.MILLISECONDS);
+        if (first != null) {
+            batch.add(first);
+            connection.messages.drainTo(batch, MAX_MESSAGES_PER_RESPONSE - 1);
+        }
+        if (batch.remove(CLOSED) || connection.closed) {
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+
+        sendJson(exchange, 200, formatMessages(connection, batch));
+    }
+
+    /**
+     * Streams messages as server-sent events until the connection is dropped or the client goes
+     * away, with an empty message as a keep-alive when idle.
+     */
+    private void streamEvents(HttpExchange exchange, Connection connection) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        out.write("data: initialized\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        List<String> batch = new ArrayList<>();
+        try {
+            while (!connection.closed) {
+                String first = connection.messages.poll(connection.keepAliveTimeoutMillis / 3, TimeUnit.MILLISECONDS);
+                if (first == CLOSED)
+                    break;
+
+                batch.clear();
+                if (first != null) {
+                    batch.add(first);
+                    connection.messages.drainTo(batch, MAX_MESSAGES_PER_RESPONSE - 1);
+                    if (batch.remove(CLOSED))
+                        break;
+                }
+                String data = batch.isEmpty() ? "{}" : formatMessages(connection, batch);
+                out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // The client went away
+            closeConnection(connection);
+        }
+    }
+
+    private String formatMessages(Connection connection, List<String> batch) {
+        long messageId = connection.messageId.addAndGet(batch.size());
+        StringBuilder response = new StringBuilder(64 + batch.size() * 512);
+        response.append("{\"C\":\"").append(messageId).append("\",\"M\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0)
+                response.append(',');
+            response.append(batch.get(i));
+        }
+        response.append("]}");
+        sentCount.addAndGet(batch.size());
+        return response.toString();
+    }
+
+    /**
+     * Invokes a hub method sent by the client and answers with its result.
+     */
+    private void send(HttpExchange exchange, Connection connection) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String data = parseQuery(body).get("data");
+        if (data == null) {
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+
+        JsonObject invocation = JsonParser.parseString(data).getAsJsonObject();
+        String method = getString(invocation, "M");
+        JsonArray arguments = invocation.has("A") ? invocation.getAsJsonArray("A") : new JsonArray();
+        JsonObject response = new JsonObject();
+        response.add("I", invocation.get("I"));
+        try {
+            if ("CreateSubscription".equals(method))
+                response.addProperty("R", createSubscription(connection, arguments));
+            else if ("StopSubscription".equals(method))
+                stopSubscription(connection);
+            else
+                throw new IllegalArgumentException("'" + method + "' method could not be resolved");
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            response.addProperty("E", e.getMessage());
+        }
+        sendJson(exchange, 200, response.toString());
+    }
+
+    /**
+     * Creates or resumes a subscription for a connection. Events kept for a durable subscription
+     * are sent first.
+     *
+     * @return the subscription id
+     */
+    private String createSubscription(Connection connection, JsonArray arguments) {
+        if (arguments.size() < 2 || !arguments.get(0).isJsonObject() || !arguments.get(1).isJsonObject())
+            throw new IllegalArgumentException("CreateSubscription takes the connection info and the subscription");
+
+        JsonObject connectionInfo = arguments.get(0).getAsJsonObject();
+        if (!sessionTokens.contains(getString(connectionInfo, "SessionToken")))
+            throw new IllegalStateException("The session token is not valid");
+
+        EventSubscription details = GSON.fromJson(arguments.get(1), EventSubscription.class);
+        EventFilter filter = details.filter == null || details.filter.trim().isEmpty() ? null : EventFilter.compile(details.filter);
+        String id = details.id != null ? details.id : UUID.randomUUID().toString();
+
+        // Renewing over the same connection replaces the details without losing events
+        Subscription previous = connection.subscription;
+        if (previous != null && !previous.id.equals(id))
+            detach(previous, connection);
+
+        Subscription subscription = subscriptions.computeIfAbsent(id, Subscription::new);
+        synchronized (subscription) {
+            subscription.filter = filter;
+            subscription.durable = details.is_durable;
+            if (subscription.connection != connection) {
+                Connection replaced = subscription.connection;
+                subscription.connection = connection;
+                if (replaced != null && replaced != connection)
+                    closeConnection(replaced);
+
+                String message;
+                while ((message = subscription.backlog.poll()) != null)
+                    enqueue(connection, message);
+            }
+        }
+        connection.subscription = subscription;
+        return id;
+    }
+
+    private void stopSubscription(Connection connection) {
+        Subscription subscription = connection.subscription;
+        if (subscription == null)
+            return;
+
+        connection.subscription = null;
+        synchronized (subscription) {
+            if (subscription.connection == connection) {
+                subscription.connection = null;
+                subscriptions.remove(subscription.id, subscription);
+            }
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        JsonObject response = new JsonObject();
+        response.add("error", error);
+        sendJson(exchange, status, response.toString());
+    }
+
+    private static String getString(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty())
+            return parameters;
+
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
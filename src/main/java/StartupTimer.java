@@ -0,0 +1,94 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long startup takes, from the start of the JVM to the first event received, and the
+ * time spent in each step on the way, such as logging in and connecting to the bridge.
+ *
+ * Steps that run at the same time are timed separately, so the steps can add up to more than the
+ * total.
+ */
+public class StartupTimer {
+    /**
+     * A timed step of the startup.
+     */
+    private static class Step {
+        final String name;
+        final long millis;
+
+        Step(String name, long millis) {
+            this.name = name;
+            this.millis = millis;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private final AtomicBoolean firstEventReceived = new AtomicBoolean();
+    private volatile long timeToFirstEventMillis = -1;
+
+    /**
+     * Creates a new <code>StartupTimer</code> instance, recording the time the JVM took to start
+     * as the first step. Create it first thing in <code>main</code>.
+     */
+    public StartupTimer() {
+        steps.add(new Step("jvm", getUptimeMillis()));
+    }
+
+    /**
+     * Gets the time since the JVM started.
+     *
+     * @return the uptime in milliseconds
+     */
+    public static long getUptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * Records that a step of the startup took some time.
+     *
+     * @param name the name of the step
+     * @param startNanos the <code>System.nanoTime()</code> at which the step started
+     */
+    public synchronized void record(String name, long startNanos) {
+        steps.add(new Step(name, (System.nanoTime() - startNanos) / 1000000));
+    }
+
+    /**
+     * Records that the first event was received and reports the startup time. Later calls are
+     * ignored.
+     */
+    public void onFirstEvent() {
+        if (firstEventReceived.get() || !firstEventReceived.compareAndSet(false, true))
+            return;
+
+        timeToFirstEventMillis = getUptimeMillis();
+        System.out.format("Received the first event %d ms after start (%s).%n", timeToFirstEventMillis, this);
+    }
+
+    /**
+     * Gets the time from the start of the JVM to the first event received.
+     *
+     * @return the time in milliseconds, or -1 if no event was received yet
+     */
+    public long getTimeToFirstEventMillis() {
+        return timeToFirstEventMillis;
+    }
+
+    /**
+     * Lists the timed steps, such as <code>login 310 ms, bridge connection 280 ms</code>.
+     *
+     * @return the steps and their times
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Step step : steps) {
+            if (builder.length() > 0)
+                builder.append(", ");
+            builder.append(step.name).append(' ').append(step.millis).append(" ms");
+        }
+        return builder.toString();
+    }
+}
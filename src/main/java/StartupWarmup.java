@@ -0,0 +1,122 @@
+import microsoft.aspnet.signalr.client.hubs.HubConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Loads and initializes the classes used on the way to the first event before they are needed,
+ * on a background thread while the process logs in: the TLS context and trust store, the JSON
+ * parsing of events, the subscription filters, the output formats and the SignalR client.
+ *
+ * Nothing is sent over the network and no event reaches a real handler. The same steps are the
+ * training run for a class data sharing archive, so the archive holds the classes of the startup
+ * path.
+ */
+public class StartupWarmup implements Runnable {
+    private static final String SAMPLE_EVENT_JSON = "{"
+        + "\"business_event_class\":\"hardware_event\","
+        + "\"version\":\"1.0\","
+        + "\"description\":\"Access Granted\","
+        + "\"timestamp\":\"2023-06-01T12:34:56.789-07:00\","
+        + "\"panel_id\":12,"
+        + "\"device_id\":3,"
+        + "\"serial_number\":1048576,"
+        + "\"event_type\":0,"
+        + "\"event_subtype\":20,"
+        + "\"source\":\"Main Entrance Reader\""
+        + "}";
+
+    private final String bridgeUrl;
+    private final TransportMode transportMode;
+    private final List<OutputFormat> formats;
+    private final List<String> filters;
+
+    /**
+     * Creates a new <code>StartupWarmup</code> instance.
+     *
+     * @param bridgeUrl the event bridge URL
+     * @param transportMode the transport used to receive events from the bridge
+     * @param formats the output formats events are written in
+     * @param filters the subscription and route filters
+     */
+    public StartupWarmup(String bridgeUrl, TransportMode transportMode, Collection<OutputFormat> formats, Collection<String> filters) {
+        this.bridgeUrl = bridgeUrl;
+        this.transportMode = transportMode;
+        this.formats = new ArrayList<>(formats);
+        this.filters = new ArrayList<>(filters);
+    }
+
+    /**
+     * Starts warming up on a background thread.
+     *
+     * @return the warm-up thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(this, "startup-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Warms up on the calling thread. A step that fails is reported and skipped, as it fails
+     * again where it is really used.
+     */
+    @Override
+    public void run() {
+        try {
+            // Loads the TLS provider and the trust store, which the login and the bridge connection share
+            SSLContext.getDefault().createSSLEngine();
+        }
+        catch (Exception e) {
+            System.err.format("Warning: could not warm up TLS: %s%n", e);
+        }
+
+        try {
+            BusinessEvent businessEvent = BusinessEvent.parse(SAMPLE_EVENT_JSON);
+            businessEvent.getTimestampMillis();
+            for (String filter : filters) {
+                if (filter != null)
+                    EventFilter.compile(filter).matches(businessEvent);
+            }
+            for (OutputFormat format : formats) {
+                ChannelOutputEventHandler handler = format.createHandler(new DiscardingChannel(), 4096, 0);
+                handler.onBusinessEvent(businessEvent);
+                handler.close();
+            }
+
+            // Creating the connection loads the client without connecting
+            HubConnection connection = new HubConnection(bridgeUrl, false);
+            connection.createHubProxy("Outbound");
+            transportMode.createTransport(connection.getLogger());
+        }
+        catch (Exception e) {
+            System.err.format("Warning: could not warm up the event pipeline: %s%n", e);
+        }
+    }
+
+    /**
+     * A channel that discards the bytes written to it.
+     */
+    private static class DiscardingChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -46,6 +46,16 @@ class StreamOutputEventHandler implements IEventHandler {
     public void onConnectionToMessageBusLost() {
         out.println("Connection to message bus lost.");
     }
+    
+    @Override
+    public void onConnectionToBridgeLost() {
+        out.println("Connection to event bridge lost. Reconnecting...");
+    }
+    
+    @Override
+    public void onConnectionToBridgeRestored(long downtimeMillis) {
+        out.format("Connection to event bridge restored after %d ms.%n", downtimeMillis);
+    }
 
     /**
      * Converts an even property value to an appropriate string representation.
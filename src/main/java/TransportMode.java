@@ -0,0 +1,85 @@
+import microsoft.aspnet.signalr.client.Logger;
+import microsoft.aspnet.signalr.client.transport.AutomaticTransport;
+import microsoft.aspnet.signalr.client.transport.ClientTransport;
+import microsoft.aspnet.signalr.client.transport.LongPollingTransport;
+import microsoft.aspnet.signalr.client.transport.ServerSentEventsTransport;
+import microsoft.aspnet.signalr.client.transport.WebsocketTransport;
+
+import java.util.Locale;
+
+/**
+ * The SignalR transports that can be used to receive events from the event bridge.
+ */
+public enum TransportMode {
+    /**
+     * A single persistent WebSocket connection. Events are pushed without a round trip per batch.
+     */
+    WEBSOCKETS,
+
+    /**
+     * A single streaming HTTP response using server-sent events.
+     */
+    SERVER_SENT_EVENTS,
+
+    /**
+     * A new HTTP request for every batch of events.
+     */
+    LONG_POLLING,
+
+    /**
+     * WebSockets when the bridge supports them, falling back to server-sent events and then long
+     * polling.
+     */
+    AUTOMATIC;
+
+    /**
+     * Creates a new SignalR client transport for this mode.
+     *
+     * @param logger the logger of the connection that will use the transport
+     * @return a new client transport
+     */
+    public ClientTransport createTransport(Logger logger) {
+        switch (this) {
+            case WEBSOCKETS:
+                return new WebsocketTransport(logger);
+            case SERVER_SENT_EVENTS:
+                return new ServerSentEventsTransport(logger);
+            case LONG_POLLING:
+                return new LongPollingTransport(logger);
+            default:
+                return new AutomaticTransport(logger);
+        }
+    }
+
+    /**
+     * Parses a transport mode setting. Accepts the enum names as well as the short names
+     * <code>websocket</code>, <code>sse</code>, <code>longpolling</code> and <code>auto</code>,
+     * ignoring case.
+     *
+     * @param value the setting value, or <code>null</code> for the default
+     * @param defaultMode the mode to use when no value is given
+     * @return the parsed transport mode
+     * @exception IllegalArgumentException if the value is not a known transport mode
+     */
+    public static TransportMode parse(String value, TransportMode defaultMode) {
+        if (value == null || value.trim().isEmpty())
+            return defaultMode;
+
+        String name = value.trim().toLowerCase(Locale.ROOT).replace("-", "").replace("_", "");
+        switch (name) {
+            case "websocket":
+            case "websockets":
+                return WEBSOCKETS;
+            case "sse":
+            case "serversentevents":
+                return SERVER_SENT_EVENTS;
+            case "longpolling":
+                return LONG_POLLING;
+            case "auto":
+            case "automatic":
+                return AUTOMATIC;
+            default:
+                throw new IllegalArgumentException("Unknown transport mode: " + value);
+        }
+    }
+}
@@ -1,16 +1,26 @@
+import microsoft.aspnet.signalr.client.ConnectionState;
 import microsoft.aspnet.signalr.client.LogLevel;
 import microsoft.aspnet.signalr.client.Logger;
 import microsoft.aspnet.signalr.client.hubs.HubConnection;
 import microsoft.aspnet.signalr.client.hubs.HubProxy;
 
-import java.util.Map;
-import microsoft.aspnet.signalr.client.transport.LongPollingTransport;
-import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A wrapper for the OpenAccess event bridge. Supports subscribing for and receiving events.
+ *
+ * While receiving, a lost connection is rebuilt and the subscription is created again with the
+ * same id, retrying with capped exponential backoff and jitter. The connection is also rebuilt if
+ * the bridge reports that it lost the message bus and does not recover within a timeout.
  */
-public class WebEventSubscriber implements Closeable {
+public class WebEventSubscriber implements IEventSubscriber {
+    private static final long RECONNECT_TIMEOUT_MILLIS = 30000;
+
     /**
      * Represents the connection info passed to the event bridge.
      */
@@ -27,9 +37,23 @@ public class WebEventSubscriber implements Closeable {
     private String bridgeUrl;
     private HubConnection connection;
     private HubProxy proxy;
-    private ConnectionInfo connectionInfo;
-    private EventSubscription subscription;
+    private volatile ConnectionInfo connectionInfo;
+    private volatile EventSubscription subscription;
     private IEventHandler handler;
+    private TransportMode transportMode;
+    private ExponentialBackoff reconnectBackoff = new ExponentialBackoff(500, 30000);
+    private long messageBusRecoveryTimeoutMillis = 60000;
+    private final Object timerLock = new Object();
+    private ScheduledExecutorService reconnectTimer;
+    private ScheduledFuture<?> messageBusWatchdog;
+    private final AtomicBoolean reconnectPending = new AtomicBoolean();
+    private volatile boolean receiving;
+    private int reconnectAttempt;
+    private long disconnectedNanos;
+    private final AtomicLong reconnectCount = new AtomicLong();
+    private volatile long lastReconnectMillis;
+    private final SequenceGapTracker gapTracker = new SequenceGapTracker();
+    private volatile Runnable firstEventListener;
 
     /**
      * Creates a new <code>WebEventSubscriber</code> instance.
@@ -41,10 +65,96 @@ public class WebEventSubscriber implements Closeable {
      * @param handler the event handler that will process events from the bridge
      */
     public WebEventSubscriber(String url, String sessionToken, String applicationId, EventSubscription subscription, IEventHandler handler) {
+        this(url, sessionToken, applicationId, subscription, handler, TransportMode.LONG_POLLING);
+    }
+
+    /**
+     * Creates a new <code>WebEventSubscriber</code> instance that uses the given SignalR transport.
+     *
+     * @param url the OpenAccess event bridge URL
+     * @param sessionToken an authenticated OpenAccess session token, or <code>null</code> to
+     *     connect while logging in and pass the token to <code>updateSessionToken</code> before
+     *     <code>startReceiving</code>
+     * @param applicationId the OpenAccess application id
+     * @param subscription the subscription details
+     * @param handler the event handler that will process events from the bridge
+     * @param transportMode the transport used to receive events from the bridge
+     */
+    public WebEventSubscriber(String url, String sessionToken, String applicationId, EventSubscription subscription, IEventHandler handler, TransportMode transportMode) {
         this.bridgeUrl = url;
         connectionInfo = new ConnectionInfo(sessionToken, applicationId);
         this.subscription = subscription;
         this.handler = handler;
+        this.transportMode = transportMode;
+    }
+
+    /**
+     * Gets the transport used to receive events from the bridge.
+     *
+     * @return the transport mode
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Sets the delays between attempts to reconnect to the bridge.
+     *
+     * @param initialDelayMillis the delay before the first attempt
+     * @param maxDelayMillis the longest delay between attempts
+     */
+    public void setReconnectBackoff(long initialDelayMillis, long maxDelayMillis) {
+        reconnectBackoff = new ExponentialBackoff(initialDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Sets how long the bridge may be without its message bus before the connection is rebuilt.
+     *
+     * @param timeoutMillis the timeout, or 0 to wait for the bridge indefinitely
+     */
+    public void setMessageBusRecoveryTimeout(long timeoutMillis) {
+        messageBusRecoveryTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets a listener called once, on the receiving thread, when the first event arrives.
+     *
+     * @param listener the listener
+     */
+    @Override
+    public void setFirstEventListener(Runnable listener) {
+        firstEventListener = listener;
+    }
+
+    /**
+     * Gets the number of times the connection was rebuilt.
+     *
+     * @return the reconnect count
+     */
+    @Override
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+
+    /**
+     * Gets how long the most recent reconnect took, from losing the connection to resubscribing.
+     *
+     * @return the downtime in milliseconds, or 0 if there was no reconnect
+     */
+    public long getLastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    /**
+     * Gets an estimate of the events missed while reconnecting, from gaps in the serial numbers
+     * of each panel. Events excluded by the subscription filter also leave gaps, so this is an
+     * upper bound.
+     *
+     * @return the estimated number of missed events
+     */
+    @Override
+    public long getMissedEventEstimate() {
+        return gapTracker.getMissedEvents();
     }
 
     /**
@@ -54,65 +164,361 @@ public class WebEventSubscriber implements Closeable {
      */
     public HubProxy getEventBridgeProxy() throws Exception {
         if (proxy == null) {
-            connection = createHubConnectionWithoutLogging();
+            attach(createHubConnectionWithoutLogging());
 
-            proxy = connection.createHubProxy("Outbound");
+            // Start the connection; the client never completes the start if the bridge is unreachable
+            connection.start(transportMode.createTransport(connection.getLogger())).get(RECONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
 
-            proxy.subscribe(new Object() {
-                @SuppressWarnings("unused")
-                public void OnBusinessEventReceived(Map<String, Object> businessEvent) {
-                    handler.onBusinessEvent(businessEvent);
-                }
+        return proxy;
+    }
 
-                public void OnExceptionRaised(String serviceException) {
-                    handler.onExceptionRaised(serviceException);
-                }
+    /**
+     * Creates the event bridge proxy on a connection and subscribes to the bridge callbacks,
+     * without starting the connection.
+     *
+     * @param connection the connection to the event bridge
+     * @return The event bridge proxy
+     */
+    HubProxy attach(HubConnection connection) {
+        this.connection = connection;
+        proxy = connection.createHubProxy("Outbound");
+        connection.closed(() -> onConnectionClosed(connection));
 
-                public void OnManagementEvent(String message) {
-                    handler.onManagementEvent(message);
-                }
+        // Business events skip the reflective conversion to a map; handlers read the JSON payload
+        proxy.subscribe("OnBusinessEventReceived").addReceivedHandler(arguments -> {
+            BusinessEvent businessEvent = new BusinessEvent(arguments[0].getAsJsonObject());
+            gapTracker.record(businessEvent);
+            Runnable listener = firstEventListener;
+            if (listener != null) {
+                firstEventListener = null;
+                listener.run();
+            }
+            handler.onBusinessEvent(businessEvent);
+        });
 
-                public void OnConnectionToMessageBusEstablished() {
-                    handler.onConnectionToMessageBusEstablished();
-                }
+        proxy.subscribe(new Object() {
+            @SuppressWarnings("unused")
+            public void OnExceptionRaised(String serviceException) {
+                handler.onExceptionRaised(serviceException);
+            }
 
-                public void OnConnectionToMessageBusLost() {
-                    handler.onConnectionToMessageBusLost();
-                }
-            });
+            public void OnManagementEvent(String message) {
+                handler.onManagementEvent(message);
+            }
 
-            // Start the connection
-            connection.start(new LongPollingTransport(connection.getLogger())).get();
-        }
+            public void OnConnectionToMessageBusEstablished() {
+                cancelMessageBusWatchdog();
+                handler.onConnectionToMessageBusEstablished();
+            }
+
+            public void OnConnectionToMessageBusLost() {
+                startMessageBusWatchdog();
+                handler.onConnectionToMessageBusLost();
+            }
+        });
 
         return proxy;
     }
 
     /**
-     * Starts receiving events from the event bridge.
+     * Connects to the event bridge without creating the subscription. The connection needs no
+     * session token, so it can be set up while logging in, leaving <code>startReceiving</code> to
+     * create the subscription. A connection that fails is closed, so <code>startReceiving</code>
+     * connects again.
+     *
+     * @exception Exception if the connection to the bridge could not be started
+     */
+    @Override
+    public synchronized void connect() throws Exception {
+        try {
+            getEventBridgeProxy();
+        }
+        catch (Exception e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts receiving events from the event bridge, connecting first unless
+     * <code>connect</code> did.
+     */
+    @Override
+    public synchronized void startReceiving() throws Exception {
+        reconnectPending.set(false);
+        createSubscription(getEventBridgeProxy(), connectionInfo, subscription);
+        receiving = true;
+    }
+
+    /**
+     * Replaces the session token used with the event bridge. While receiving, the subscription is
+     * created again with the new token over the current connection, keeping its id; if that
+     * fails, the connection is rebuilt.
+     *
+     * @param sessionToken the new authenticated OpenAccess session token
+     */
+    @Override
+    public void updateSessionToken(String sessionToken) {
+        synchronized (this) {
+            connectionInfo = new ConnectionInfo(sessionToken, connectionInfo.ApplicationId);
+        }
+        renewSubscription("the new session token");
+    }
+
+    /**
+     * Replaces the subscription details, such as the filter, keeping the subscription id. While
+     * receiving, the subscription is created again with the new details over the current
+     * connection, so no events are lost to a reconnect; if that fails, the connection is rebuilt.
+     *
+     * @param subscription the new subscription details
      */
-    public void startReceiving() throws Exception {
-        Object result = getEventBridgeProxy().invoke("CreateSubscription", connectionInfo, subscription).get();
+    @Override
+    public void updateSubscription(EventSubscription subscription) {
+        synchronized (this) {
+            if (subscription.id == null)
+                subscription.id = this.subscription.id;
+            this.subscription = subscription;
+        }
+        renewSubscription("the new subscription details");
     }
 
     /**
-     * Stops receiving events from the event bridge.
+     * Stops receiving events from the event bridge over the current connection, waiting at most
+     * the reconnect timeout, and closes the connection. No connection is opened to stop a
+     * subscription while reconnecting.
      */
+    @Override
     public void stopReceiving() throws Exception {
-        getEventBridgeProxy().invoke("StopSubscription").get();
-        close();
+        stopReceiving(RECONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Closes the event bridge connection.
+     * Stops receiving events from the event bridge, waiting at most the given time for the bridge
+     * to stop the subscription. The connection is closed either way, and the bridge is not asked
+     * to stop a subscription that was never created.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the bridge stopped the subscription before the timeout
      */
     @Override
-    public void close() {
+    public boolean stopReceiving(long timeout, TimeUnit unit) {
+        HubProxy currentProxy;
+        boolean wasReceiving;
+        synchronized (this) {
+            wasReceiving = receiving;
+            receiving = false;
+            currentProxy = proxy;
+        }
+
+        try {
+            if (currentProxy == null || !wasReceiving)
+                return false;
+            currentProxy.invoke("StopSubscription").get(timeout, unit);
+            return true;
+        }
+        catch (Exception e) {
+            System.err.format("Error: could not stop the subscription: %s%n", e);
+            return false;
+        }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the event bridge connection and stops reconnecting.
+     */
+    @Override
+    public synchronized void close() {
+        receiving = false;
+        synchronized (timerLock) {
+            if (reconnectTimer != null) {
+                reconnectTimer.shutdownNow();
+                reconnectTimer = null;
+                messageBusWatchdog = null;
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * Creates the subscription again over the current connection while receiving, rebuilding the
+     * connection if that fails.
+     *
+     * @param reason what changed, for the error message
+     */
+    private void renewSubscription(String reason) {
+        HubProxy currentProxy;
+        HubConnection currentConnection;
+        ConnectionInfo currentInfo;
+        EventSubscription currentSubscription;
+        synchronized (this) {
+            if (!receiving || reconnectPending.get() || proxy == null)
+                return;
+            currentProxy = proxy;
+            currentConnection = connection;
+            currentInfo = connectionInfo;
+            currentSubscription = subscription;
+        }
+
+        try {
+            createSubscription(currentProxy, currentInfo, currentSubscription);
+        }
+        catch (Exception e) {
+            System.err.format("Error: could not renew the subscription with %s: %s%n", reason, e);
+            onConnectionClosed(currentConnection);
+        }
+    }
+
+    /**
+     * Creates or resumes the subscription over a connection. The id the bridge assigns to a new
+     * subscription is kept, so later calls resume it rather than creating another.
+     */
+    private void createSubscription(HubProxy target, ConnectionInfo info, EventSubscription details) throws Exception {
+        String id = target.invoke(String.class, "CreateSubscription", info, details).get(RECONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (id == null)
+            return;
+
+        synchronized (this) {
+            if (details.id == null)
+                details.id = id;
+            if (subscription.id == null)
+                subscription.id = id;
+        }
+    }
+
+    private void disconnect() {
         if (connection != null) {
-            connection.stop();
+            HubConnection closing = connection;
             connection = null;
             proxy = null;
+            closing.stop();
+        }
+    }
+
+    /**
+     * Called by the SignalR client when a connection closes. Only the current connection of a
+     * subscriber that is receiving is rebuilt; connections closed on purpose are ignored.
+     */
+    private void onConnectionClosed(HubConnection closedConnection) {
+        if (!receiving || closedConnection != connection || !reconnectPending.compareAndSet(false, true))
+            return;
+
+        disconnectedNanos = System.nanoTime();
+        handler.onConnectionToBridgeLost();
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (!receiving) {
+            reconnectPending.set(false);
+            return;
+        }
+
+        synchronized (timerLock) {
+            long delayMillis = reconnectBackoff.getDelayMillis(reconnectAttempt++);
+            getTimer().schedule(this::reconnect, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replaces the connection and creates the subscription again with the same id, so the bridge
+     * resumes the existing subscription.
+     */
+    private void reconnect() {
+        HubConnection newConnection;
+        HubProxy newProxy;
+        synchronized (this) {
+            if (!receiving) {
+                reconnectPending.set(false);
+                return;
+            }
+            disconnect();
+            newConnection = createHubConnectionWithoutLogging();
+            newProxy = attach(newConnection);
+        }
+
+        // Connect without holding the lock, so close is not blocked by an unreachable bridge
+        try {
+            newConnection.start(transportMode.createTransport(newConnection.getLogger())).get(RECONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            createSubscription(newProxy, connectionInfo, subscription);
+        }
+        catch (Exception e) {
+            System.err.format("Error: could not reconnect to the event bridge: %s%n", e);
+            synchronized (this) {
+                if (connection == newConnection)
+                    disconnect();
+            }
+            scheduleReconnect();
+            return;
+        }
+
+        synchronized (this) {
+            if (connection != newConnection) {
+                reconnectPending.set(false);
+                return;
+            }
+            lastReconnectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedNanos);
+            reconnectCount.incrementAndGet();
+            gapTracker.markReconnected();
+        }
+
+        synchronized (timerLock) {
+            reconnectAttempt = 0;
+        }
+        reconnectPending.set(false);
+        handler.onConnectionToBridgeRestored(lastReconnectMillis);
+
+        // A close while the reconnect was pending was ignored, so check the connection is still up
+        if (newConnection.getState() == ConnectionState.Disconnected)
+            onConnectionClosed(newConnection);
+    }
+
+    /**
+     * Rebuilds the connection if the bridge does not get its message bus back within the
+     * recovery timeout.
+     */
+    private void startMessageBusWatchdog() {
+        if (!receiving || messageBusRecoveryTimeoutMillis <= 0)
+            return;
+
+        HubConnection watchedConnection = connection;
+        synchronized (timerLock) {
+            if (messageBusWatchdog == null) {
+                messageBusWatchdog = getTimer().schedule(() -> onMessageBusRecoveryTimeout(watchedConnection),
+                    messageBusRecoveryTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void cancelMessageBusWatchdog() {
+        synchronized (timerLock) {
+            if (messageBusWatchdog != null) {
+                messageBusWatchdog.cancel(false);
+                messageBusWatchdog = null;
+            }
+        }
+    }
+
+    private void onMessageBusRecoveryTimeout(HubConnection watchedConnection) {
+        synchronized (timerLock) {
+            messageBusWatchdog = null;
+        }
+        System.err.println("Error: the event bridge did not recover its message bus connection. Reconnecting.");
+        onConnectionClosed(watchedConnection);
+    }
+
+    private ScheduledExecutorService getTimer() {
+        if (reconnectTimer == null) {
+            reconnectTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "event-bridge-reconnect");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return reconnectTimer;
     }
 
     /**